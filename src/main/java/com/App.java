@@ -2,8 +2,12 @@ package com;
 
 import com.cli.CliRunner;
 import com.server.ServerApp;
+import com.server.ServerConfig;
 import com.client.ClientApp;
 import com.client.network.HealthChecker;
+import com.common.Serializer;
+import com.common.WireCodec;
+import com.common.BinaryCodec;
 
 /**
  * Main entry point for the Music Band Collection application.
@@ -19,8 +23,14 @@ import com.client.network.HealthChecker;
  *   java -jar app.jar                    # CLI mode
  *   java -jar app.jar --server           # Start server on port 8080
  *   java -jar app.jar --server --port 9000 # Start server on port 9000
+ *   java -jar app.jar --server --max-frame-size 33554432 # Allow 32 MB frames
+ *   java -jar app.jar --server --scheduler virtual        # Virtual thread per request
+ *   java -jar app.jar --server --scheduler bounded --workers 8 --queue-limit 512
+ *   java -jar app.jar --server --io-threads 4 --backlog 2048
+ *   java -jar app.jar --server --codec java  # Only Java serialization on the wire
  *   java -jar app.jar --client           # Connect to localhost:8080
  *   java -jar app.jar --client --host server1 --port 8080
+ *   java -jar app.jar --client --codec java  # Skip the binary codec handshake
  *   java -jar app.jar --check-health     # Check server health
  */
 public class App {
@@ -49,19 +59,8 @@ public class App {
         switch (mode) {
             case "--server": {
                 // Server mode - start the server
-                int port = DEFAULT_PORT;
-                
-                // Parse --port argument if present
-                for (int i = 1; i < args.length; i++) {
-                    if (args[i].equals("--port") && i + 1 < args.length) {
-                        try {
-                            port = Integer.parseInt(args[++i]);
-                        } catch (NumberFormatException e) {
-                            System.err.println("Invalid port: " + args[i]);
-                        }
-                    }
-                }
-                ServerApp.start(port);
+                // Parses --port, --max-frame-size and other server flags
+                ServerApp.start(ServerConfig.fromArgs(args));
                 break;
             }
 
@@ -69,8 +68,10 @@ public class App {
                 // Client mode - connect to server
                 String host = DEFAULT_HOST;
                 int port = DEFAULT_PORT;
+                int maxFrameSize = Serializer.DEFAULT_MAX_FRAME_SIZE;
+                WireCodec codec = BinaryCodec.INSTANCE;
                 
-                // Parse --host and --port arguments
+                // Parse --host, --port, --max-frame-size and --codec arguments
                 for (int i = 1; i < args.length; i++) {
                     if (args[i].equals("--host") && i + 1 < args.length) {
                         host = args[++i];
@@ -80,9 +81,21 @@ public class App {
                         } catch (NumberFormatException e) {
                             System.err.println("Invalid port: " + args[i]);
                         }
+                    } else if (args[i].equals("--max-frame-size") && i + 1 < args.length) {
+                        try {
+                            maxFrameSize = Integer.parseInt(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Invalid frame size: " + args[i]);
+                        }
+                    } else if (args[i].equals("--codec") && i + 1 < args.length) {
+                        try {
+                            codec = WireCodec.forName(args[++i]);
+                        } catch (IllegalArgumentException e) {
+                            System.err.println(e.getMessage());
+                        }
                     }
                 }
-                ClientApp.start(host, port);
+                ClientApp.start(host, port, maxFrameSize, codec);
                 break;
             }
 
@@ -113,8 +126,8 @@ public class App {
                 // Unknown mode - print usage information
                 System.out.println("Usage:");
                 System.out.println("  java -jar app.jar                    # Run in CLI mode");
-                System.out.println("  java -jar app.jar --server [--port]  # Start server");
-                System.out.println("  java -jar app.jar --client [--host] [--port] # Connect to server");
+                System.out.println("  java -jar app.jar --server [--port] [--max-frame-size] [--scheduler bounded|work-stealing|virtual] [--workers] [--queue-limit] [--io-threads] [--backlog] [--recv-buffer] [--send-buffer] [--max-in-flight] [--write-high-water] [--slow-consumer drop-notifications|disconnect] [--response-cache] [--db-pool-min] [--db-pool-max] [--load-threads] [--history-queue] [--history-batch] [--history-flush] [--reconcile-interval] [--persistence write-through|write-behind] [--journal] [--flush-interval] [--codec binary|java]  # Start server");
+                System.out.println("  java -jar app.jar --client [--host] [--port] [--max-frame-size] [--codec binary|java] # Connect to server");
                 System.out.println("  java -jar app.jar --check-health [--host] [--port] # Check server health");
                 System.exit(1);
             }
@@ -15,6 +15,8 @@ import com.utils.CollectionFileManager;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Entry point for the client application.
@@ -30,6 +32,8 @@ import java.util.*;
  * Special commands:
  * - exit: Disconnect and quit
  * - health: Check server status
+ * - subscribe / unsubscribe: Keep a local copy of the collection
+ *   updated by the server's change events
  */
 public class ClientApp {
     /** Default server hostname */
@@ -38,10 +42,23 @@ public class ClientApp {
     /** Default server port */
     private static final int DEFAULT_PORT = 8080;
     
+    /** Script commands that change the collection - pipelining stops around them */
+    private static final Set<String> MODIFYING_SCRIPT_COMMANDS = new HashSet<>(Arrays.asList(
+        "add", "add_if_min", "update", "clear", "remove_by_id", "remove_greater", "remove_any_by_best_album"));
+
+    /** Local copy of the collection, filled while subscribed */
+    private static final CollectionReplica replica = new CollectionReplica();
+
+    /** Changes received since the last prompt, printed after each command */
+    private static final Queue<String> receivedChanges = new java.util.concurrent.ConcurrentLinkedQueue<>();
+
     /** Current logged-in user */
     private static String currentLogin = null;
     private static String currentPasswordHash = null;
 
+    /** Session token from the last login, null if the server did not send one */
+    private static String sessionToken = null;
+
     /**
      * Starts the client application.
      * 
@@ -49,10 +66,34 @@ public class ClientApp {
      * @param port Server port to connect to
      */
     public static void start(String host, int port) {
+        start(host, port, com.common.Serializer.DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Starts the client application with a custom frame size limit.
+     * 
+     * @param host Server hostname to connect to
+     * @param port Server port to connect to
+     * @param maxFrameSize Largest request or response frame in bytes
+     */
+    public static void start(String host, int port, int maxFrameSize) {
+        start(host, port, maxFrameSize, com.common.BinaryCodec.INSTANCE);
+    }
+
+    /**
+     * Starts the client application with a custom frame size limit and codec.
+     * 
+     * @param host Server hostname to connect to
+     * @param port Server port to connect to
+     * @param maxFrameSize Largest request or response frame in bytes
+     * @param codec Wire codec to offer the server
+     */
+    public static void start(String host, int port, int maxFrameSize, com.common.WireCodec codec) {
         System.out.println("Connecting to MusicBand Server at " + host + ":" + port + "...");
         
         // Create the async client
-        AsyncClient client = new AsyncClient(host, port);
+        AsyncClient client = new AsyncClient(host, port, maxFrameSize);
+        client.setPreferredCodec(codec);
         
         try {
             // Connect to server
@@ -134,6 +175,15 @@ public class ClientApp {
                 } else {
                     System.err.println("Error: " + response.getError());
                 }
+                
+                // Show notifications that other clients' changes pushed to us
+                String pushed;
+                while ((pushed = client.pollNotification()) != null) {
+                    System.out.println("[Notification] " + pushed);
+                }
+                while ((pushed = receivedChanges.poll()) != null) {
+                    System.out.println("[Change] " + pushed);
+                }
             }
             
         } catch (Exception e) {
@@ -285,6 +335,18 @@ public class ClientApp {
                 
             case "execute_script":
                 return handleExecuteScript(client, input);
+
+            case "show":
+                if (parts.length > 1) {
+                    return handleShowPages(client, parts);
+                }
+                return handleCommandWithArgs(client, cmd, parts);
+
+            case "subscribe":
+                return handleSubscribe(client);
+
+            case "unsubscribe":
+                return client.unsubscribe();
                 
             default:
                 // Commands with arguments - parse them and send to server
@@ -292,6 +354,56 @@ public class ClientApp {
         }
     }
     
+    /**
+     * Subscribes to collection changes.
+     * Every event updates the local replica and is printed after the next command.
+     */
+    private static Response handleSubscribe(AsyncClient client) throws Exception {
+        Response resp = client.subscribe(event -> {
+            replica.accept(event);
+            receivedChanges.add(event.describe());
+        });
+        if (resp.isSuccess()) {
+            resp.setResult(resp.getResult() + " (" + replica.size() + " bands in local copy)");
+        }
+        return resp;
+    }
+
+    /**
+     * Shows the collection in pages: "show <n> [name]" asks for n bands at
+     * a time (starting at name) and prints each page as soon as it arrives,
+     * so a large collection never has to fit in one response.
+     *
+     * @return The last page (printed by the caller like any response)
+     */
+    @SuppressWarnings("unchecked")
+    private static Response handleShowPages(AsyncClient client, String[] parts) throws Exception {
+        int limit;
+        try {
+            limit = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return Response.error("Usage: show [<page size> [<name>]]");
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("limit", limit);
+        if (parts.length > 2) {
+            args.put("from", String.join(" ", Arrays.copyOfRange(parts, 2, parts.length)));
+        }
+        while (true) {
+            Request request = new Request(RequestType.COMMAND, "show");
+            request.setArgs(new HashMap<>(args));
+            Response resp = client.send(request);
+            if (!resp.isSuccess() || !(resp.getData() instanceof Map)) {
+                return resp;
+            }
+            // Not the last page - print it and ask for the one after its last band
+            System.out.println(resp.getResult());
+            Map<String, Object> next = (Map<String, Object>) resp.getData();
+            args.put("from", next.get("from"));
+            args.put("after", next.get("after"));
+        }
+    }
+
     private static Response handleRegister(AsyncClient client, String[] parts) throws Exception {
         if (parts.length < 3) {
             return Response.error("Usage: register <login> <password>");
@@ -312,6 +424,7 @@ public class ClientApp {
         if (resp.isSuccess()) {
             currentLogin = login;
             currentPasswordHash = com.server.DatabaseManager.hashPassword(password);
+            sessionToken = resp.getData() instanceof String ? (String) resp.getData() : null;
         }
         return resp;
     }
@@ -336,6 +449,7 @@ public class ClientApp {
         if (resp.isSuccess()) {
             currentLogin = login;
             currentPasswordHash = com.server.DatabaseManager.hashPassword(password);
+            sessionToken = resp.getData() instanceof String ? (String) resp.getData() : null;
         }
         return resp;
     }
@@ -399,6 +513,18 @@ public class ClientApp {
                     return Response.error("Invalid ID: " + parts[1]);
                 }
                 break;
+
+            case "range_by_id":
+                if (parts.length < 3) {
+                    return Response.error("Usage: range_by_id <low> <high>");
+                }
+                try {
+                    args.put("low", Long.parseLong(parts[1]));
+                    args.put("high", Long.parseLong(parts[2]));
+                } catch (NumberFormatException e) {
+                    return Response.error("Invalid ID range: " + parts[1] + " " + parts[2]);
+                }
+                break;
                 
             default:
                 // No arguments needed - just send the command
@@ -409,15 +535,26 @@ public class ClientApp {
         request.setArgs(args);
         
         if (currentLogin != null && currentPasswordHash != null) {
-            request.setLogin(currentLogin);
-            request.setPassword(currentPasswordHash);
-            args.put("login", currentLogin);
-            args.put("passwordHash", currentPasswordHash);
+            addCredentials(args);
         }
         
         return client.send(request);
     }
 
+    /**
+     * Adds the logged-in user's credentials to request args: the session
+     * token if the server gave one at login, otherwise the login and
+     * password hash (older servers).
+     */
+    private static void addCredentials(Map<String, Object> args) {
+        if (sessionToken != null) {
+            args.put("session", sessionToken);
+        } else {
+            args.put("login", currentLogin);
+            args.put("passwordHash", currentPasswordHash);
+        }
+    }
+
     /**
      * Handles the add command.
      * Prompts user for all band fields locally, builds SQL, sends to server.
@@ -430,12 +567,9 @@ public class ClientApp {
         
         Request request = new Request(RequestType.COMMAND, "add");
         request.setData(band);
-        request.setLogin(currentLogin);
-        request.setPassword(currentPasswordHash);
         
         Map<String, Object> args = new HashMap<>();
-        args.put("login", currentLogin);
-        args.put("passwordHash", currentPasswordHash);
+        addCredentials(args);
         request.setArgs(args);
         
         return client.send(request);
@@ -474,12 +608,9 @@ public class ClientApp {
         
         Request request = new Request(RequestType.COMMAND, "add_if_min");
         request.setData(band);
-        request.setLogin(currentLogin);
-        request.setPassword(currentPasswordHash);
         
         Map<String, Object> args = new HashMap<>();
-        args.put("login", currentLogin);
-        args.put("passwordHash", currentPasswordHash);
+        addCredentials(args);
         request.setArgs(args);
         
         return client.send(request);
@@ -528,8 +659,7 @@ public class ClientApp {
         Map<String, Object> args = new HashMap<>();
         args.put("id", id);
         args.put("band", updatedBand);
-        args.put("login", currentLogin);
-        args.put("passwordHash", currentPasswordHash);
+        addCredentials(args);
         
         Request request = new Request(RequestType.COMMAND, "update");
         request.setData(updatedBand);
@@ -576,6 +706,12 @@ public class ClientApp {
     /**
      * Handles the execute_script command.
      * Reads script file locally and sends commands to server with proper data.
+     * 
+     * Read-only commands are pipelined: they are sent without waiting for
+     * the previous answer, and the results are collected in script order
+     * at the end. Before and after a command that changes the collection,
+     * the script waits for everything sent so far, so later lines still
+     * see the effect of earlier ones.
      */
     private static Response handleExecuteScript(AsyncClient client, String input) throws Exception {
         if (!input.contains(" ")) {
@@ -602,7 +738,7 @@ public class ClientApp {
             return Response.error("Script file not found: " + e.getMessage());
         }
         
-        StringBuilder results = new StringBuilder();
+        List<CompletableFuture<String>> outputs = new ArrayList<>();
         int i = 0;
         
         while (i < allLines.size()) {
@@ -611,17 +747,21 @@ public class ClientApp {
             String cmd = parts[0].toLowerCase();
             boolean hasArgument = parts.length > 1;
             String argument = hasArgument ? parts[1] : null;
+            boolean modifying = MODIFYING_SCRIPT_COMMANDS.contains(cmd);
+            if (modifying) {
+                awaitAll(outputs);
+            }
             
             try {
                 switch (cmd) {
                     case "show":
-                        results.append("Line ").append(i + 1).append(": ").append(executeShow(client)).append("\n");
+                        addLine(outputs, i + 1, executeShow(client));
                         i++;
                         break;
                         
                     case "add":
                         if (i + 8 > allLines.size()) {
-                            results.append("Line ").append(i + 1).append(": ").append("Error: add command requires 8 input lines\n");
+                            addLine(outputs, i + 1, "Error: add command requires 8 input lines");
                         } else {
                             List<String> addInputs = new ArrayList<>();
                             for (int j = 0; j < 8; j++) {
@@ -630,16 +770,15 @@ public class ClientApp {
                             MusicBand band = parseBandFromInputs(addInputs);
                             
                             if (currentLogin == null) {
-                                results.append("Line ").append(i + 1).append(": ").append("Error: Please login first using 'login <login> <password>'\n");
+                                addLine(outputs, i + 1, "Error: Please login first using 'login <login> <password>'");
                             } else {
                                 Map<String, Object> args = new HashMap<>();
-                                args.put("login", currentLogin);
-                                args.put("passwordHash", currentPasswordHash);
+                                addCredentials(args);
                                 Request addRequest = new Request(RequestType.COMMAND, "add");
                                 addRequest.setData(band);
                                 addRequest.setArgs(args);
                                 Response resp = client.send(addRequest);
-                                results.append("Line ").append(i + 1).append(": ").append(resp.isSuccess() ? resp.getResult() : resp.getError()).append("\n");
+                                addLine(outputs, i + 1, resp.isSuccess() ? resp.getResult() : resp.getError());
                             }
                         }
                         i += 1 + 8;
@@ -647,7 +786,7 @@ public class ClientApp {
                         
                     case "add_if_min":
                         if (i + 9 > allLines.size()) {
-                            results.append("Line ").append(i + 1).append(": ").append("Error: add_if_min command requires 9 input lines\n");
+                            addLine(outputs, i + 1, "Error: add_if_min command requires 9 input lines");
                         } else {
                             try {
                                 long id = Long.parseLong(allLines.get(i + 1));
@@ -659,19 +798,18 @@ public class ClientApp {
                                 band.setId(id);
                                 
                                 if (currentLogin == null) {
-                                    results.append("Line ").append(i + 1).append(": ").append("Error: Please login first\n");
+                                    addLine(outputs, i + 1, "Error: Please login first");
                                 } else {
                                     Map<String, Object> args = new HashMap<>();
-                                    args.put("login", currentLogin);
-                                    args.put("passwordHash", currentPasswordHash);
+                                    addCredentials(args);
                                     Request addRequest = new Request(RequestType.COMMAND, "add_if_min");
                                     addRequest.setData(band);
                                     addRequest.setArgs(args);
                                     Response resp = client.send(addRequest);
-                                    results.append("Line ").append(i + 1).append(": ").append(resp.isSuccess() ? resp.getResult() : resp.getError()).append("\n");
+                                    addLine(outputs, i + 1, resp.isSuccess() ? resp.getResult() : resp.getError());
                                 }
                             } catch (NumberFormatException e) {
-                                results.append("Line ").append(i + 1).append(": ").append("Error: Invalid ID for add_if_min\n");
+                                addLine(outputs, i + 1, "Error: Invalid ID for add_if_min");
                             }
                         }
                         i += 1 + 9;
@@ -682,7 +820,7 @@ public class ClientApp {
                             try {
                                 Long id = Long.parseLong(parts[2]);
                                 if (i + 10 > allLines.size()) {
-                                    results.append("Line ").append(i + 1).append(": ").append("Error: update id command requires 10 input lines\n");
+                                    addLine(outputs, i + 1, "Error: update id command requires 10 input lines");
                                 } else {
                                     List<String> updateInputs = new ArrayList<>();
                                     for (int j = 0; j < 9; j++) {
@@ -692,48 +830,47 @@ public class ClientApp {
                                     band.setId(id);
                                     
                                     if (currentLogin == null) {
-                                        results.append("Line ").append(i + 1).append(": ").append("Error: Please login first\n");
+                                        addLine(outputs, i + 1, "Error: Please login first");
                                     } else {
                                         Map<String, Object> args = new HashMap<>();
                                         args.put("id", id);
                                         args.put("band", band);
-                                        args.put("login", currentLogin);
-                                        args.put("passwordHash", currentPasswordHash);
+                                        addCredentials(args);
                                         Request updateRequest = new Request(RequestType.COMMAND, "update");
                                         updateRequest.setData(band);
                                         updateRequest.setArgs(args);
                                         Response resp = client.send(updateRequest);
-                                        results.append("Line ").append(i + 1).append(": ").append(resp.isSuccess() ? resp.getResult() : resp.getError()).append("\n");
+                                        addLine(outputs, i + 1, resp.isSuccess() ? resp.getResult() : resp.getError());
                                     }
                                 }
                                 i += 1 + 10;
                             } catch (NumberFormatException e) {
-                                results.append("Line ").append(i + 1).append(": ").append("Error: Invalid ID in update id command.\n");
+                                addLine(outputs, i + 1, "Error: Invalid ID in update id command.");
                                 i++;
                             }
                         } else {
-                            results.append("Line ").append(i + 1).append(": ").append("Error: update command requires 'id <id>' format.\n");
+                            addLine(outputs, i + 1, "Error: update command requires 'id <id>' format.");
                             i++;
                         }
                         break;
                         
                     case "info":
-                        results.append("Line ").append(i + 1).append(": ").append(executeInfo(client)).append("\n");
+                        addLine(outputs, i + 1, executeInfo(client));
                         i++;
                         break;
                         
                     case "history":
-                        results.append("Line ").append(i + 1).append(": ").append(executeHistory(client)).append("\n");
+                        addLine(outputs, i + 1, executeHistory(client));
                         i++;
                         break;
                         
                     case "clear":
-                        results.append("Line ").append(i + 1).append(": ").append(executeClear(client)).append("\n");
+                        addLine(outputs, i + 1, executeClear(client));
                         i++;
                         break;
                         
                     case "save":
-                        results.append("Line ").append(i + 1).append(": ").append(executeSave(client)).append("\n");
+                        addLine(outputs, i + 1, executeSave(client));
                         i++;
                         break;
                         
@@ -741,21 +878,21 @@ public class ClientApp {
                         if (hasArgument) {
                             try {
                                 Long id = Long.parseLong(argument);
-                                results.append("Line ").append(i + 1).append(": ").append(executeRemoveById(client, id)).append("\n");
+                                addLine(outputs, i + 1, executeRemoveById(client, id));
                             } catch (NumberFormatException e) {
-                                results.append("Line ").append(i + 1).append(": ").append("Error: Invalid ID argument for remove_by_id command.\n");
+                                addLine(outputs, i + 1, "Error: Invalid ID argument for remove_by_id command.");
                             }
                         } else if (i + 1 < allLines.size()) {
                             try {
                                 Long id = Long.parseLong(allLines.get(i + 1));
-                                results.append("Line ").append(i + 1).append(": ").append(executeRemoveById(client, id)).append("\n");
+                                addLine(outputs, i + 1, executeRemoveById(client, id));
                                 i++;
                             } catch (NumberFormatException e) {
-                                results.append("Line ").append(i + 1).append(": ").append("Error: Invalid ID argument for remove_by_id command.\n");
+                                addLine(outputs, i + 1, "Error: Invalid ID argument for remove_by_id command.");
                                 i++;
                             }
                         } else {
-                            results.append("Line ").append(i + 1).append(": ").append("Error: remove_by_id command requires an argument.\n");
+                            addLine(outputs, i + 1, "Error: remove_by_id command requires an argument.");
                         }
                         i++;
                         break;
@@ -764,21 +901,21 @@ public class ClientApp {
                         if (hasArgument) {
                             try {
                                 Long id = Long.parseLong(argument);
-                                results.append("Line ").append(i + 1).append(": ").append(executeRemoveGreater(client, id)).append("\n");
+                                addLine(outputs, i + 1, executeRemoveGreater(client, id));
                             } catch (NumberFormatException e) {
-                                results.append("Line ").append(i + 1).append(": ").append("Error: Invalid ID argument for remove_greater command.\n");
+                                addLine(outputs, i + 1, "Error: Invalid ID argument for remove_greater command.");
                             }
                         } else if (i + 1 < allLines.size()) {
                             try {
                                 Long id = Long.parseLong(allLines.get(i + 1));
-                                results.append("Line ").append(i + 1).append(": ").append(executeRemoveGreater(client, id)).append("\n");
+                                addLine(outputs, i + 1, executeRemoveGreater(client, id));
                                 i++;
                             } catch (NumberFormatException e) {
-                                results.append("Line ").append(i + 1).append(": ").append("Error: Invalid ID argument for remove_greater command.\n");
+                                addLine(outputs, i + 1, "Error: Invalid ID argument for remove_greater command.");
                                 i++;
                             }
                         } else {
-                            results.append("Line ").append(i + 1).append(": ").append("Error: remove_greater command requires an argument.\n");
+                            addLine(outputs, i + 1, "Error: remove_greater command requires an argument.");
                         }
                         i++;
                         break;
@@ -786,12 +923,12 @@ public class ClientApp {
                     case "remove_any_by_best_album":
                         if (hasArgument) {
                             String album = commandLine.substring(commandLine.indexOf(" ") + 1);
-                            results.append("Line ").append(i + 1).append(": ").append(executeRemoveByBestAlbum(client, album)).append("\n");
+                            addLine(outputs, i + 1, executeRemoveByBestAlbum(client, album));
                         } else if (i + 1 < allLines.size()) {
-                            results.append("Line ").append(i + 1).append(": ").append(executeRemoveByBestAlbum(client, allLines.get(i + 1))).append("\n");
+                            addLine(outputs, i + 1, executeRemoveByBestAlbum(client, allLines.get(i + 1)));
                             i++;
                         } else {
-                            results.append("Line ").append(i + 1).append(": ").append("Error: remove_any_by_best_album command requires an argument.\n");
+                            addLine(outputs, i + 1, "Error: remove_any_by_best_album command requires an argument.");
                         }
                         i++;
                         break;
@@ -800,53 +937,91 @@ public class ClientApp {
                         if (hasArgument) {
                             try {
                                 Integer count = Integer.parseInt(argument);
-                                results.append("Line ").append(i + 1).append(": ").append(executeCountByParticipants(client, count)).append("\n");
+                                addLine(outputs, i + 1, executeCountByParticipants(client, count));
                             } catch (NumberFormatException e) {
-                                results.append("Line ").append(i + 1).append(": ").append("Error: Invalid argument for count_by_number_of_participants command.\n");
+                                addLine(outputs, i + 1, "Error: Invalid argument for count_by_number_of_participants command.");
                             }
                         } else if (i + 1 < allLines.size()) {
                             try {
                                 Integer count = Integer.parseInt(allLines.get(i + 1));
-                                results.append("Line ").append(i + 1).append(": ").append(executeCountByParticipants(client, count)).append("\n");
+                                addLine(outputs, i + 1, executeCountByParticipants(client, count));
                                 i++;
                             } catch (NumberFormatException e) {
-                                results.append("Line ").append(i + 1).append(": ").append("Error: Invalid argument for count_by_number_of_participants command.\n");
+                                addLine(outputs, i + 1, "Error: Invalid argument for count_by_number_of_participants command.");
                                 i++;
                             }
                         } else {
-                            results.append("Line ").append(i + 1).append(": ").append("Error: count_by_number_of_participants command requires an argument.\n");
+                            addLine(outputs, i + 1, "Error: count_by_number_of_participants command requires an argument.");
                         }
                         i++;
                         break;
                         
                     case "average_of_number_of_participants":
-                        results.append("Line ").append(i + 1).append(": ").append(executeAverageParticipants(client)).append("\n");
+                        addLine(outputs, i + 1, executeAverageParticipants(client));
                         i++;
                         break;
                         
                     case "execute_script":
-                        results.append("Line ").append(i + 1).append(": ").append("Error: Nested execute_script is not supported in client-server mode.\n");
+                        addLine(outputs, i + 1, "Error: Nested execute_script is not supported in client-server mode.");
                         i++;
                         break;
                         
                     case "help":
-                        results.append("Line ").append(i + 1).append(": ").append(executeHelp(client)).append("\n");
+                        addLine(outputs, i + 1, executeHelp(client));
                         i++;
                         break;
                         
                     default:
-                        results.append("Line ").append(i + 1).append(": ").append("Unknown command: " + cmd).append("\n");
+                        addLine(outputs, i + 1, "Unknown command: " + cmd);
                         i++;
                         break;
                 }
             } catch (Exception e) {
-                results.append("Line ").append(i + 1).append(": ").append("Error: " + e.getMessage()).append("\n");
+                addLine(outputs, i + 1, "Error: " + e.getMessage());
                 i++;
             }
+            if (modifying) {
+                awaitAll(outputs);
+            }
         }
         
+        awaitAll(outputs);
+        StringBuilder results = new StringBuilder();
+        for (CompletableFuture<String> output : outputs) {
+            results.append(output.join());
+        }
         return Response.success("Script executed. Results:\n" + results.toString());
     }
+
+    /**
+     * Adds a finished result line to the script output.
+     */
+    private static void addLine(List<CompletableFuture<String>> outputs, int line, String text) {
+        outputs.add(CompletableFuture.completedFuture("Line " + line + ": " + text + "\n"));
+    }
+
+    /**
+     * Adds a result line whose text arrives later (a pipelined request).
+     * A failed request shows up as an error line instead of aborting the script.
+     */
+    private static void addLine(List<CompletableFuture<String>> outputs, int line, CompletableFuture<String> text) {
+        outputs.add(text.handle((result, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+                result = "Error: " + cause.getMessage();
+            }
+            return "Line " + line + ": " + result + "\n";
+        }));
+    }
+
+    /**
+     * Waits until every request sent so far has been answered.
+     * The futures from addLine never complete exceptionally.
+     */
+    private static void awaitAll(List<CompletableFuture<String>> outputs) {
+        CompletableFuture.allOf(outputs.toArray(new CompletableFuture<?>[0])).join();
+    }
     
     private static MusicBand parseBandFromInputs(List<String> inputs) {
         MusicBand band = new MusicBand();
@@ -880,7 +1055,7 @@ public class ClientApp {
         return band;
     }
     
-    private static String executeShow(AsyncClient client) throws Exception {
+    private static CompletableFuture<String> executeShow(AsyncClient client) {
         String sql = "SELECT * FROM music_bands ORDER BY name";
         Map<String, Object> args = new HashMap<>();
         args.put("sql", sql);
@@ -890,27 +1065,28 @@ public class ClientApp {
         Request request = new Request(RequestType.COMMAND, "show");
         request.setArgs(args);
         
-        Response resp = client.send(request);
-        if (!resp.isSuccess()) {
-            return resp.getError();
-        }
-        
-        String result = resp.getResult();
-        if (result == null || result.equals("EMPTY_RESULT")) {
-            return "Collection is empty";
-        }
-        
-        StringBuilder sb = new StringBuilder();
-        String[] bands = result.split(";");
-        for (String bandData : bands) {
-            if (bandData.trim().isEmpty()) continue;
-            MusicBand band = parseBandFromSqlResult(bandData);
-            sb.append(band.toString());
-        }
-        return sb.toString();
+        return client.sendAsync(request).thenApply(resp -> {
+            if (!resp.isSuccess()) {
+                return resp.getError();
+            }
+            
+            String result = resp.getResult();
+            if (result == null || result.equals("EMPTY_RESULT")) {
+                return "Collection is empty";
+            }
+            
+            StringBuilder sb = new StringBuilder();
+            String[] bands = result.split(";");
+            for (String bandData : bands) {
+                if (bandData.trim().isEmpty()) continue;
+                MusicBand band = parseBandFromSqlResult(bandData);
+                sb.append(band.toString());
+            }
+            return sb.toString();
+        });
     }
     
-    private static String executeInfo(AsyncClient client) throws Exception {
+    private static CompletableFuture<String> executeInfo(AsyncClient client) {
         String sql = "SELECT COUNT(*) as count FROM music_bands";
         Map<String, Object> args = new HashMap<>();
         args.put("sql", sql);
@@ -920,24 +1096,24 @@ public class ClientApp {
         Request request = new Request(RequestType.COMMAND, "info");
         request.setArgs(args);
         
-        Response resp = client.send(request);
-        if (!resp.isSuccess()) {
-            return resp.getError();
-        }
-        
-        String countStr = resp.getResult();
-        return "Collection type: MusicBand\n" +
-               "Database: PostgreSQL\n" +
-               "Number of elements: " + countStr;
+        return client.sendAsync(request).thenApply(resp -> {
+            if (!resp.isSuccess()) {
+                return resp.getError();
+            }
+            
+            String countStr = resp.getResult();
+            return "Collection type: MusicBand\n" +
+                   "Database: PostgreSQL\n" +
+                   "Number of elements: " + countStr;
+        });
     }
     
-    private static String executeHistory(AsyncClient client) throws Exception {
+    private static CompletableFuture<String> executeHistory(AsyncClient client) {
         Request request = new Request(RequestType.COMMAND, "history");
-        Response resp = client.send(request);
-        return resp.isSuccess() ? resp.getResult() : resp.getError();
+        return client.sendAsync(request).thenApply(resp -> resp.isSuccess() ? resp.getResult() : resp.getError());
     }
     
-    private static String executeClear(AsyncClient client) throws Exception {
+    private static CompletableFuture<String> executeClear(AsyncClient client) {
         String sql = "DELETE FROM music_bands";
         Map<String, Object> args = new HashMap<>();
         args.put("sql", sql);
@@ -947,21 +1123,19 @@ public class ClientApp {
         Request request = new Request(RequestType.COMMAND, "clear");
         request.setArgs(args);
         
-        Response resp = client.send(request);
-        return resp.isSuccess() ? resp.getResult() : resp.getError();
+        return client.sendAsync(request).thenApply(resp -> resp.isSuccess() ? resp.getResult() : resp.getError());
     }
     
-    private static String executeSave(AsyncClient client) throws Exception {
-        return "Data is automatically persisted to PostgreSQL database";
+    private static CompletableFuture<String> executeSave(AsyncClient client) {
+        return CompletableFuture.completedFuture("Data is automatically persisted to PostgreSQL database");
     }
     
-    private static String executeHelp(AsyncClient client) throws Exception {
+    private static CompletableFuture<String> executeHelp(AsyncClient client) {
         Request request = new Request(RequestType.COMMAND, "help");
-        Response resp = client.send(request);
-        return resp.isSuccess() ? resp.getResult() : resp.getError();
+        return client.sendAsync(request).thenApply(resp -> resp.isSuccess() ? resp.getResult() : resp.getError());
     }
     
-    private static String executeRemoveById(AsyncClient client, Long id) throws Exception {
+    private static CompletableFuture<String> executeRemoveById(AsyncClient client, Long id) {
         String sql = "DELETE FROM music_bands WHERE id = " + id;
         Map<String, Object> args = new HashMap<>();
         args.put("sql", sql);
@@ -971,11 +1145,10 @@ public class ClientApp {
         Request request = new Request(RequestType.COMMAND, "remove_by_id");
         request.setArgs(args);
         
-        Response resp = client.send(request);
-        return resp.isSuccess() ? resp.getResult() : resp.getError();
+        return client.sendAsync(request).thenApply(resp -> resp.isSuccess() ? resp.getResult() : resp.getError());
     }
     
-    private static String executeRemoveGreater(AsyncClient client, Long id) throws Exception {
+    private static CompletableFuture<String> executeRemoveGreater(AsyncClient client, Long id) {
         String sql = "DELETE FROM music_bands WHERE id > " + id;
         Map<String, Object> args = new HashMap<>();
         args.put("sql", sql);
@@ -985,11 +1158,10 @@ public class ClientApp {
         Request request = new Request(RequestType.COMMAND, "remove_greater");
         request.setArgs(args);
         
-        Response resp = client.send(request);
-        return resp.isSuccess() ? resp.getResult() : resp.getError();
+        return client.sendAsync(request).thenApply(resp -> resp.isSuccess() ? resp.getResult() : resp.getError());
     }
     
-    private static String executeRemoveByBestAlbum(AsyncClient client, String album) throws Exception {
+    private static CompletableFuture<String> executeRemoveByBestAlbum(AsyncClient client, String album) {
         String sql = "DELETE FROM music_bands WHERE album_name = '" + album.replace("'", "''") + "'";
         Map<String, Object> args = new HashMap<>();
         args.put("sql", sql);
@@ -999,11 +1171,10 @@ public class ClientApp {
         Request request = new Request(RequestType.COMMAND, "remove_any_by_best_album");
         request.setArgs(args);
         
-        Response resp = client.send(request);
-        return resp.isSuccess() ? resp.getResult() : resp.getError();
+        return client.sendAsync(request).thenApply(resp -> resp.isSuccess() ? resp.getResult() : resp.getError());
     }
     
-    private static String executeCountByParticipants(AsyncClient client, Integer count) throws Exception {
+    private static CompletableFuture<String> executeCountByParticipants(AsyncClient client, Integer count) {
         String sql = "SELECT COUNT(*) FROM music_bands WHERE number_of_participants = " + count;
         Map<String, Object> args = new HashMap<>();
         args.put("sql", sql);
@@ -1013,11 +1184,10 @@ public class ClientApp {
         Request request = new Request(RequestType.COMMAND, "count_by_number_of_participants");
         request.setArgs(args);
         
-        Response resp = client.send(request);
-        return resp.isSuccess() ? resp.getResult() : resp.getError();
+        return client.sendAsync(request).thenApply(resp -> resp.isSuccess() ? resp.getResult() : resp.getError());
     }
     
-    private static String executeAverageParticipants(AsyncClient client) throws Exception {
+    private static CompletableFuture<String> executeAverageParticipants(AsyncClient client) {
         String sql = "SELECT AVG(number_of_participants) FROM music_bands";
         Map<String, Object> args = new HashMap<>();
         args.put("sql", sql);
@@ -1027,8 +1197,7 @@ public class ClientApp {
         Request request = new Request(RequestType.COMMAND, "average_of_number_of_participants");
         request.setArgs(args);
         
-        Response resp = client.send(request);
-        return resp.isSuccess() ? resp.getResult() : resp.getError();
+        return client.sendAsync(request).thenApply(resp -> resp.isSuccess() ? resp.getResult() : resp.getError());
     }
 
     /**
@@ -1249,7 +1418,21 @@ public class ClientApp {
                 System.out.println("Memory: " + stats.getMemoryFormatted());
                 System.out.println("Active Connections: " + stats.getActiveConnections());
                 System.out.println("Collection Size: " + stats.getCollectionSize());
+                System.out.println("Collection: " + stats.getCollectionFormatted());
                 System.out.println("Started: " + stats.getStartTime());
+                System.out.println("Scheduler: " + stats.getSchedulerMode()
+                    + " (queued: " + stats.getQueueDepth() + ", rejected: " + stats.getRejectedRequests() + ")");
+                System.out.println("Buffer Pool: " + stats.getBufferPoolHits() + " hits, "
+                    + stats.getBufferPoolMisses() + " misses");
+                System.out.println("Sent: " + stats.getFramesSent() + " frames, " + stats.getBytesSent() + " bytes"
+                    + " (dropped notifications: " + stats.getDroppedNotifications()
+                    + ", slow clients disconnected: " + stats.getSlowConsumerDisconnects() + ")");
+                System.out.println("Response Cache: " + stats.getResponseCacheHits() + " hits, "
+                    + stats.getResponseCacheMisses() + " misses (" + String.format("%.1f", stats.getResponseCacheHitRate()) + "% hit rate)");
+                System.out.println("DB Pool: " + stats.getDbPoolFormatted());
+                System.out.println("History Writer: " + stats.getHistoryFormatted());
+                System.out.println("Client Cache: " + client.getNotModifiedHits() + " not modified, "
+                    + client.getNotModifiedMisses() + " full answers");
             } else {
                 System.err.println("Error: " + (response.getError() != null ? response.getError() : "Unknown error"));
             }
@@ -0,0 +1,79 @@
+package com.client;
+
+import com.common.ChangeEvent;
+import com.model.MusicBand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Client-side copy of the server's collection, kept up to date by
+ * change events (see AsyncClient.subscribe).
+ *
+ * Only the changed bands travel over the network, so the copy stays
+ * current without running show again after every change.
+ */
+public class CollectionReplica implements Consumer<ChangeEvent> {
+    /** Bands by ID */
+    private final Map<Long, MusicBand> bands = new ConcurrentHashMap<>();
+
+    /** Version of the last applied event */
+    private volatile long version;
+
+    /**
+     * Applies one change event.
+     *
+     * @param event The change, in version order
+     */
+    @Override
+    public void accept(ChangeEvent event) {
+        switch (event.getKind()) {
+            case SNAPSHOT:
+                bands.clear();
+                putAll(event.getBands());
+                break;
+            case INSERTED:
+            case UPDATED:
+                putAll(event.getBands());
+                break;
+            case REMOVED:
+            case CLEARED_OWNER:
+                for (Long id : event.getIds()) {
+                    bands.remove(id);
+                }
+                break;
+            default:
+                break;
+        }
+        version = event.getVersion();
+    }
+
+    private void putAll(List<MusicBand> changed) {
+        for (MusicBand band : changed) {
+            bands.put(band.getId(), band);
+        }
+    }
+
+    /**
+     * Gets the bands in their natural order (by name, see MusicBand.compareTo).
+     *
+     * @return Sorted copy of the replicated bands
+     */
+    public List<MusicBand> getBands() {
+        List<MusicBand> result = new ArrayList<>(bands.values());
+        Collections.sort(result);
+        return result;
+    }
+
+    public int size() {
+        return bands.size();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -6,11 +6,21 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Non-blocking TCP client for connecting to the server.
@@ -25,6 +35,27 @@ import java.util.concurrent.TimeUnit;
  * like connect(), read(), and write() return immediately
  * and complete asynchronously.
  *
+ * Right after connecting, the client offers the compact binary codec
+ * with a HELLO frame (see WireCodec). If the server does not understand
+ * it, the client reconnects and falls back to Java serialization.
+ *
+ * Requests can be pipelined: sendAsync() writes the request and returns
+ * at once. Every request gets a requestId, and a single reader loop on
+ * the channel completes the matching future when the response arrives,
+ * in whatever order the server finishes them. send() is sendAsync()
+ * followed by a wait.
+ *
+ * subscribe() streams collection ChangeEvents to a listener. The client
+ * remembers the last version it delivered; after a reconnect, or when a
+ * version is skipped because the server dropped an event for a slow
+ * client, it subscribes again from that version and the server replays
+ * the missing events.
+ *
+ * Answers to read-only commands (show, info, ...) are kept with their
+ * collection version. Asking the same question again sends that version
+ * along; if the collection is unchanged the server answers NOT_MODIFIED
+ * and sendAsync() completes with the answer the client already has.
+ *
  * Usage:
  *   AsyncClient client = new AsyncClient("localhost", 8080);
  *   client.connect();
@@ -39,7 +70,7 @@ public class AsyncClient {
     private final int port;
 
     /** The channel for communicating with server */
-    private AsynchronousSocketChannel channel;
+    private volatile AsynchronousSocketChannel channel;
 
     /** Timeout for all operations in seconds */
     private static final int TIMEOUT_SECONDS = 30;
@@ -53,8 +84,44 @@ public class AsyncClient {
     /** Delay after successful reconnection before retry */
     private static final int POST_RECONNECT_DELAY_MS = 200;
 
+    /** Size of the buffer that receives response bytes (one per connection) */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /** Largest request or response frame in bytes */
+    private final int maxFrameSize;
+
+    /** Read buffer and decoder of the current channel */
+    private volatile ReadState readState;
+
+    /** Codec to offer the server (Java serialization needs no handshake) */
+    private WireCodec preferredCodec = BinaryCodec.INSTANCE;
+
+    /** Codec agreed with the server for the current connection */
+    private WireCodec codec = JavaCodec.INSTANCE;
+
+    /** Source of request ids (0 is reserved for "no id") */
+    private final AtomicLong nextRequestId = new AtomicLong();
+
+    /** Requests written but not answered yet, by request id */
+    private final Map<Long, CompletableFuture<Response>> pendingResponses = new ConcurrentHashMap<>();
+
+    /** Keeps frames of concurrent senders from interleaving */
+    private final Object writeLock = new Object();
+
     private final List<String> pendingNotifications = Collections.synchronizedList(new ArrayList<>());
 
+    /** Receives change events in version order while subscribed (null if not) */
+    private volatile Consumer<ChangeEvent> changeListener;
+
+    /** Version of the last change event given to the listener */
+    private volatile long lastEventVersion;
+
+    /** Set while a re-subscribe after a version gap is on its way */
+    private final AtomicBoolean resyncing = new AtomicBoolean();
+
+    /** Last versioned answers, reused when the server says NOT_MODIFIED */
+    private final ConditionalReadCache readCache = new ConditionalReadCache();
+
     /**
      * Creates a new client that will connect to the specified server.
      *
@@ -62,8 +129,44 @@ public class AsyncClient {
      * @param port Server port number (e.g., 8080)
      */
     public AsyncClient(String host, int port) {
+        this(host, port, Serializer.DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Creates a new client with a custom frame size limit.
+     *
+     * @param host Server hostname or IP
+     * @param port Server port number
+     * @param maxFrameSize Largest request or response frame in bytes
+     */
+    public AsyncClient(String host, int port, int maxFrameSize) {
         this.host = host;
         this.port = port;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * What the reader of one channel keeps between reads: the buffer that
+     * receives bytes and the decoder that reassembles frames from them.
+     *
+     * Every channel gets its own, so a read that completes on an old
+     * channel after a reconnect can never touch the buffer or decoder of
+     * the new one. It is the attachment of the reader's CompletionHandler.
+     */
+    private static final class ReadState {
+        /** The channel these bytes come from */
+        final AsynchronousSocketChannel channel;
+
+        /** Buffer for incoming bytes - reused for every read on the channel */
+        final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        /** Reassembles response frames split across several reads */
+        final FrameDecoder decoder;
+
+        ReadState(AsynchronousSocketChannel channel, int maxFrameSize) {
+            this.channel = channel;
+            this.decoder = new FrameDecoder(maxFrameSize);
+        }
     }
 
     /**
@@ -84,15 +187,9 @@ public class AsyncClient {
             }
         }
 
-        // Create a new asynchronous socket channel
-        channel = AsynchronousSocketChannel.open();
-
-        // Start connecting (non-blocking)
-        Future<Void> future = channel.connect(new InetSocketAddress(host, port));
-
         try {
-            // Wait for connection to complete (with timeout)
-            future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            // Connect and agree on a codec (waits with timeout)
+            openAndNegotiate();
             return true;
         } catch (Exception e) {
             // Connection failed - close the channel and throw error
@@ -138,9 +235,7 @@ public class AsyncClient {
                 }
 
                 // Try to connect
-                channel = AsynchronousSocketChannel.open();
-                Future<Void> future = channel.connect(new InetSocketAddress(host, port));
-                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                openAndNegotiate();
                 return true;
             } catch (Exception e) {
                 // Try again after delay
@@ -158,55 +253,431 @@ public class AsyncClient {
     }
 
     /**
-     * Sends a request to the server and waits for response.
+     * Opens a new channel and waits for the connection to complete.
+     *
+     * @throws Exception If the connection fails or times out
+     */
+    private void openChannel() throws Exception {
+        // Requests sent on the old connection will never be answered
+        failPendingResponses(new IOException("Connection was reset"));
+        AsynchronousSocketChannel opened = AsynchronousSocketChannel.open();
+        // Leftover bytes of the old connection mean nothing on the new one
+        readState = new ReadState(opened, maxFrameSize);
+        channel = opened;
+        codec = JavaCodec.INSTANCE;
+
+        // Start connecting (non-blocking) and wait with timeout
+        Future<Void> future = channel.connect(new InetSocketAddress(host, port));
+        future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Connects and offers the preferred codec.
+     *
+     * A server that does not know the HELLO frame answers with an error
+     * and closes the connection, so in that case we connect again and
+     * stay with Java serialization.
+     *
+     * @throws Exception If the connection fails
+     */
+    private void openAndNegotiate() throws Exception {
+        // Versions of another server run would not mean the same collection
+        readCache.clear();
+        openChannel();
+        if (preferredCodec != JavaCodec.INSTANCE && !negotiateCodec()) {
+            // Old server - start over without the handshake
+            disconnect();
+            openChannel();
+        }
+        startReader(readState);
+        if (changeListener != null) {
+            // Pick up the change stream where the old connection left it
+            resubscribe();
+        }
+    }
+
+    /**
+     * Sends a HELLO frame and reads the server's answer.
+     * Runs before the reader loop starts, so it may read directly.
+     *
+     * @return true if the server answered with a HELLO
+     * @throws IOException If the connection fails
+     */
+    private boolean negotiateCodec() throws IOException {
+        writeFrame(channel, Serializer.helloFrame(BufferPool.shared(), preferredCodec));
+        byte[] reply = readFrame();
+        if (WireCodec.isHello(reply) && reply.length > WireCodec.HELLO_MAGIC.length) {
+            WireCodec chosen = WireCodec.forId(reply[WireCodec.HELLO_MAGIC.length]);
+            if (chosen != null) {
+                codec = chosen;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts the reader loop for a freshly opened channel.
+     * Each completed read decodes all complete frames and hands them to
+     * deliver(); then the next read is started. Reads that complete after
+     * the channel was replaced are ignored and not started again.
+     *
+     * @param state Read state of the channel to read from
+     */
+    private void startReader(ReadState state) {
+        state.channel.read(state.buffer, state, new CompletionHandler<Integer, ReadState>() {
+            @Override
+            public void completed(Integer bytesRead, ReadState st) {
+                if (st.channel != channel) {
+                    // Reconnected meanwhile - these bytes belong to nobody
+                    return;
+                }
+                if (bytesRead < 0) {
+                    connectionLost(st.channel, new IOException("Server closed connection"));
+                    return;
+                }
+                try {
+                    dispatchFrames(st);
+                    st.channel.read(st.buffer, st, this);
+                } catch (Exception e) {
+                    connectionLost(st.channel, e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, ReadState st) {
+                connectionLost(st.channel, exc);
+            }
+        });
+    }
+
+    /**
+     * Decodes every complete frame in a channel's read buffer.
+     *
+     * @param state Read state of the channel
+     * @throws Exception If a frame is malformed
+     */
+    private void dispatchFrames(ReadState state) throws Exception {
+        while (state.channel == channel) {
+            byte[] frame;
+            state.buffer.flip();
+            try {
+                frame = state.decoder.decode(state.buffer);
+            } finally {
+                state.buffer.compact();
+            }
+            if (frame == null) {
+                return;
+            }
+            deliver(Serializer.decode(codec, frame));
+        }
+    }
+
+    /**
+     * Hands a received response to whoever is waiting for it.
+     * Notifications go to the notification queue. A response without a
+     * request id comes from a server that predates pipelining; such a
+     * server answers strictly in order, so it belongs to the oldest request.
+     *
+     * @param response The received response
+     */
+    private void deliver(Response response) {
+        if (response.isChangeEvent()) {
+            deliverChange((ChangeEvent) response.getData());
+            return;
+        }
+        if (response.isPushNotification()) {
+            pendingNotifications.add(response.getNotification());
+            return;
+        }
+        long id = response.getRequestId();
+        if (id == 0) {
+            id = pendingResponses.keySet().stream().min(Long::compare).orElse(0L);
+        }
+        CompletableFuture<Response> future = pendingResponses.remove(id);
+        if (future != null) {
+            future.complete(response);
+        }
+    }
+
+    /**
+     * Passes a change event to the listener if it is the next version.
+     * A snapshot replaces everything, so it is always passed on. Older
+     * versions are duplicates from before a replay and are skipped; a
+     * newer version means events were missed, so the client subscribes
+     * again from the last version it has.
+     *
+     * @param event The received change event
+     */
+    private void deliverChange(ChangeEvent event) {
+        Consumer<ChangeEvent> listener = changeListener;
+        if (listener == null) {
+            return;
+        }
+        long expected = lastEventVersion + 1;
+        if (event.getKind() == ChangeEvent.Kind.SNAPSHOT || event.getVersion() == expected) {
+            lastEventVersion = event.getVersion();
+            listener.accept(event);
+        } else if (event.getVersion() > expected && resyncing.compareAndSet(false, true)) {
+            resubscribe();
+        }
+    }
+
+    /**
+     * Asks the server to replay the events after lastEventVersion.
+     * Called from the reader thread, so the request is written on another
+     * thread: writing may block until the server reads, and a server
+     * whose write queue is full stops reading until we read its frames.
+     * Does not wait for the answer either.
+     */
+    private void resubscribe() {
+        Map<String, Object> args = new HashMap<>();
+        args.put("fromVersion", lastEventVersion);
+        Request request = new Request(Request.RequestType.SUBSCRIBE, "subscribe", args);
+        CompletableFuture.supplyAsync(() -> sendAsync(request))
+            .thenCompose(sent -> sent)
+            .whenComplete((response, error) -> resyncing.set(false));
+    }
+
+    /**
+     * Starts streaming collection changes to a listener.
+     *
+     * The server first sends what the listener needs to build its copy
+     * of the collection (the change history or a snapshot), then every
+     * change as it happens. Events arrive on the reader thread, in
+     * version order; the listener must not block.
+     *
+     * @param listener Receives the change events
+     * @return The server's answer
+     * @throws IOException If the request fails
+     */
+    public Response subscribe(Consumer<ChangeEvent> listener) throws IOException {
+        // Set before sending - the catch-up events arrive before the answer
+        lastEventVersion = 0;
+        changeListener = listener;
+        Map<String, Object> args = new HashMap<>();
+        args.put("fromVersion", 0L);
+        Response response = send(new Request(Request.RequestType.SUBSCRIBE, "subscribe", args));
+        if (!response.isSuccess()) {
+            changeListener = null;
+        }
+        return response;
+    }
+
+    /**
+     * Stops the change stream.
+     *
+     * @return The server's answer
+     * @throws IOException If the request fails
+     */
+    public Response unsubscribe() throws IOException {
+        changeListener = null;
+        return send(new Request(Request.RequestType.UNSUBSCRIBE, "unsubscribe"));
+    }
+
+    /**
+     * Gets the version of the last change event delivered to the listener.
+     *
+     * @return Collection version, 0 if nothing was received
+     */
+    public long getLastEventVersion() {
+        return lastEventVersion;
+    }
+
+    /**
+     * Gets how many reads were answered NOT_MODIFIED and served from
+     * the answer the client already had.
+     *
+     * @return Number of reused answers
+     */
+    public long getNotModifiedHits() {
+        return readCache.getHits();
+    }
+
+    /**
+     * Gets how many reads came back with a full, versioned answer.
+     *
+     * @return Number of full answers to read-only commands
+     */
+    public long getNotModifiedMisses() {
+        return readCache.getMisses();
+    }
+
+    /**
+     * Called by the reader loop when its channel fails.
+     * Ignored if the client has already moved on to a new channel.
+     */
+    private void connectionLost(AsynchronousSocketChannel lost, Throwable cause) {
+        if (lost != channel) {
+            // Requests of the old channel were already failed by openChannel()
+            return;
+        }
+        failPendingResponses(cause instanceof IOException ? (IOException) cause
+            : new IOException("Connection lost", cause));
+        disconnect();
+    }
+
+    /**
+     * Fails every request that is still waiting for a response.
+     */
+    private void failPendingResponses(IOException cause) {
+        for (Long id : pendingResponses.keySet()) {
+            CompletableFuture<Response> future = pendingResponses.remove(id);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Sends a request without waiting for the response.
      *
      * This method:
-     * 1. Serializes the request to bytes
-     * 2. Writes bytes to server
-     * 3. Reads response bytes from server
-     * 4. Deserializes response
+     * 1. Gives the request a new requestId (and the version of the answer
+     *    we already have, if any)
+     * 2. Serializes it to a length-prefixed frame with the negotiated codec
+     * 3. Writes the frame to the server
+     * 4. Returns a future that the reader loop completes with the response
+     *
+     * Many requests may be in flight at once; the server may answer
+     * them in any order. A NOT_MODIFIED answer is replaced with the
+     * cached answer before the future completes.
+     *
+     * @param request The request to send
+     * @return Future completed with the response, or exceptionally if the
+     *         request could not be sent or the connection was lost
+     */
+    public CompletableFuture<Response> sendAsync(Request request) {
+        String cacheKey = ConditionalReadCache.keyFor(request);
+        if (cacheKey == null) {
+            return sendRaw(request);
+        }
+        Response known = readCache.get(cacheKey);
+        request.setIfNoneMatch(known != null ? known.getVersion() : 0);
+        return sendRaw(request).thenApply(response -> readCache.resolve(cacheKey, known, response));
+    }
+
+    /**
+     * Writes a request and registers the future for its response.
+     *
+     * @param request The request to send
+     * @return Future completed with the server's response as received
+     */
+    private CompletableFuture<Response> sendRaw(Request request) {
+        AsynchronousSocketChannel current = channel;
+        if (current == null || !current.isOpen()) {
+            return CompletableFuture.failedFuture(new IOException("Not connected to server"));
+        }
+
+        long id = nextRequestId.incrementAndGet();
+        request.setRequestId(id);
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        pendingResponses.put(id, future);
+
+        try {
+            // Serialize into a pooled buffer and write it in one piece
+            ByteBuffer requestBuffer = Serializer.serializeFrame(request, codec, BufferPool.shared(), maxFrameSize);
+            synchronized (writeLock) {
+                writeFrame(current, requestBuffer);
+            }
+        } catch (IOException e) {
+            pendingResponses.remove(id);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Sends a request to the server and waits for response.
+     *
+     * Notifications pushed by the server while we wait are queued
+     * (see pollNotification) and do not count as the response.
      *
      * @param request The request to send
      * @return Response from server
-     * @throws IOException If send/receive fails
+     * @throws IOException If send/receive fails or no response arrives in time
      */
     public Response send(Request request) throws IOException {
-        // Check if connected
-        if (channel == null || !channel.isOpen()) {
-            throw new IOException("Not connected to server");
+        CompletableFuture<Response> future = sendAsync(request);
+        try {
+            return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to read response", cause);
+        } catch (TimeoutException e) {
+            // A late answer will find no waiting future and be dropped
+            pendingResponses.remove(request.getRequestId());
+            throw new IOException("Timed out waiting for response", e);
+        } catch (InterruptedException e) {
+            pendingResponses.remove(request.getRequestId());
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for response", e);
         }
+    }
 
-        // Step 1: Serialize the request to bytes
-        byte[] requestData = Serializer.serialize(request);
-        ByteBuffer requestBuffer = ByteBuffer.wrap(requestData);
-
-        // Step 2: Write to server (non-blocking, but we wait for completion)
-        Future<Integer> writeFuture = channel.write(requestBuffer);
+    /**
+     * Writes a pooled frame buffer completely and releases it.
+     *
+     * @param target Channel to write to
+     * @param frame Flipped buffer from Serializer.serializeFrame
+     * @throws IOException If the write fails or times out
+     */
+    private void writeFrame(AsynchronousSocketChannel target, ByteBuffer frame) throws IOException {
         try {
-            writeFuture.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            while (frame.hasRemaining()) {
+                Future<Integer> writeFuture = target.write(frame);
+                writeFuture.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
         } catch (Exception e) {
             throw new IOException("Failed to send request", e);
+        } finally {
+            BufferPool.shared().release(frame);
         }
+    }
 
-        // Step 3: Read response from server
-        ByteBuffer responseBuffer = ByteBuffer.allocate(8192);
-        Future<Integer> readFuture = channel.read(responseBuffer);
-
+    /**
+     * Reads the payload of one complete frame from the server.
+     * Only used for the handshake, before the reader loop is started.
+     * The timeout applies to each read, not to the whole frame, so a large
+     * response keeps streaming as long as bytes are arriving.
+     *
+     * @return The frame payload
+     * @throws IOException If the connection fails, times out or sends garbage
+     */
+    private byte[] readFrame() throws IOException {
+        ReadState state = readState;
         try {
-            // Wait for data to be read (with timeout)
-            Integer bytesRead = readFuture.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            while (true) {
+                // Try to decode a frame from what we already have
+                byte[] frame;
+                state.buffer.flip();
+                try {
+                    frame = state.decoder.decode(state.buffer);
+                } finally {
+                    state.buffer.compact();
+                }
 
-            if (bytesRead <= 0) {
-                throw new IOException("Server closed connection");
-            }
+                if (frame != null) {
+                    return frame;
+                }
 
-            // Step 4: Deserialize the response
-            responseBuffer.flip();
-            byte[] responseData = new byte[responseBuffer.remaining()];
-            responseBuffer.get(responseData);
+                // Need more bytes - wait for data to be read (with timeout)
+                Future<Integer> readFuture = state.channel.read(state.buffer);
+                Integer bytesRead = readFuture.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
-            return Serializer.deserialize(responseData);
+                if (bytesRead < 0) {
+                    throw new IOException("Server closed connection");
+                }
+            }
+        } catch (IOException e) {
+            // The stream position is unknown now - drop the connection
+            disconnect();
+            throw e;
         } catch (Exception e) {
+            disconnect();
             throw new IOException("Failed to read response", e);
         }
     }
@@ -237,6 +708,25 @@ public class AsyncClient {
         }
     }
 
+    /**
+     * Sets the codec offered to the server on the next connect.
+     * Java serialization skips the handshake entirely.
+     *
+     * @param preferredCodec Codec to offer
+     */
+    public void setPreferredCodec(WireCodec preferredCodec) {
+        this.preferredCodec = preferredCodec;
+    }
+
+    /**
+     * Gets the codec in use for the current connection.
+     *
+     * @return Negotiated codec
+     */
+    public WireCodec getCodec() {
+        return codec;
+    }
+
     /**
      * Disconnects from the server.
      * Closes the channel if it's open.
@@ -250,6 +740,7 @@ public class AsyncClient {
             // Ignore errors during disconnect
         }
         channel = null;
+        failPendingResponses(new IOException("Disconnected from server"));
     }
 
     /**
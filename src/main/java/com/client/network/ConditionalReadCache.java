@@ -0,0 +1,113 @@
+package com.client.network;
+
+import com.common.Request;
+import com.common.Response;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side copy of the last versioned answer to each read-only command.
+ *
+ * The server tags answers to show, info, help and the aggregate commands
+ * with the collection version. The next time the same question is asked,
+ * the client sends that version as Request.ifNoneMatch; if the collection
+ * has not changed, the server answers NOT_MODIFIED without a result and
+ * the client hands out the answer it already decoded.
+ *
+ * Keys are the command and its arguments without login/password, like
+ * the server's response cache. The least recently used key is dropped
+ * when the cache is full.
+ */
+class ConditionalReadCache {
+    /** Arguments that identify the user, not the question */
+    private static final Set<String> AUTH_ARGS = Set.of("login", "passwordHash", "password", "session");
+
+    /** Most distinct questions remembered */
+    private static final int MAX_ENTRIES = 32;
+
+    /** Last versioned answer by key, in access order */
+    private final Map<String, Response> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Response> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /** Answers reused after NOT_MODIFIED */
+    private final LongAdder hits = new LongAdder();
+
+    /** Full versioned answers received */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Builds the key for a request.
+     *
+     * @param request The request
+     * @return Key, or null for anything but a plain command
+     */
+    static String keyFor(Request request) {
+        if (request.getType() != Request.RequestType.COMMAND || request.getData() != null
+                || request.getCommand() == null) {
+            return null;
+        }
+        // Sorted, so the same arguments always give the same key
+        Map<String, Object> args = new TreeMap<>();
+        if (request.getArgs() != null) {
+            for (Map.Entry<String, Object> arg : request.getArgs().entrySet()) {
+                if (!AUTH_ARGS.contains(arg.getKey())) {
+                    args.put(arg.getKey(), arg.getValue());
+                }
+            }
+        }
+        String command = request.getCommand().toLowerCase();
+        return args.isEmpty() ? command : command + " " + args;
+    }
+
+    /**
+     * Finds the answer the client already has.
+     *
+     * @param key Key from keyFor()
+     * @return Last versioned answer, or null if there is none
+     */
+    synchronized Response get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Resolves the server's answer to a conditional or plain read.
+     *
+     * @param key Key from keyFor()
+     * @param known Answer sent as ifNoneMatch, or null
+     * @param response What the server sent
+     * @return The answer to give the caller
+     */
+    Response resolve(String key, Response known, Response response) {
+        if (response.isNotModified() && known != null) {
+            hits.increment();
+            return known;
+        }
+        if (response.getVersion() != 0 && response.isSuccess()) {
+            misses.increment();
+            synchronized (this) {
+                entries.put(key, response);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Forgets every answer, e.g. after reconnecting (the server may have
+     * restarted and counts versions from the beginning again).
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    long getHits() { return hits.sum(); }
+
+    long getMisses() { return misses.sum(); }
+}
@@ -127,7 +127,19 @@ public class HealthChecker {
             System.out.println("Memory: " + stats.getMemoryFormatted());
             System.out.println("Active Connections: " + stats.getActiveConnections());
             System.out.println("Collection Size: " + stats.getCollectionSize());
+            System.out.println("Collection: " + stats.getCollectionFormatted());
             System.out.println("Started: " + stats.getStartTime());
+            System.out.println("Scheduler: " + stats.getSchedulerMode()
+                + " (queued: " + stats.getQueueDepth() + ", rejected: " + stats.getRejectedRequests() + ")");
+            System.out.println("Buffer Pool: " + stats.getBufferPoolHits() + " hits, "
+                + stats.getBufferPoolMisses() + " misses");
+            System.out.println("Sent: " + stats.getFramesSent() + " frames, " + stats.getBytesSent() + " bytes"
+                + " (dropped notifications: " + stats.getDroppedNotifications()
+                + ", slow clients disconnected: " + stats.getSlowConsumerDisconnects() + ")");
+            System.out.println("Response Cache: " + stats.getResponseCacheHits() + " hits, "
+                + stats.getResponseCacheMisses() + " misses (" + String.format("%.1f", stats.getResponseCacheHitRate()) + "% hit rate)");
+            System.out.println("DB Pool: " + stats.getDbPoolFormatted());
+            System.out.println("History Writer: " + stats.getHistoryFormatted());
             System.exit(0);
         } else {
             System.err.println("Server is not responding or not healthy");
@@ -190,7 +190,10 @@ public class AddElementCommand implements Command{
         Album album = new Album(albumName, sales);
         newBand.setBestAlbum(album);
 
-        heap.insert(newBand);
+        if (!heap.insert(newBand)) {
+            System.out.println("Element not added: a band with id " + newBand.getId() + " already exists");
+            return;
+        }
         System.out.println("Added new band: \n" + newBand);
     }
 }
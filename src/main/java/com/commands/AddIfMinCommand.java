@@ -242,7 +242,10 @@ public class AddIfMinCommand implements Command {
         Album album = new Album(albumName, sales);
         newBand.setBestAlbum(album);
 
-        heap.insert(newBand);
+        if (!heap.insert(newBand)) {
+            System.out.println("Element not added: a band with id " + newBand.getId() + " already exists");
+            return;
+        }
         System.out.println("Added new band (ID was less than target): " + newBand);
     }
 }
@@ -53,10 +53,15 @@ public class LoadCommand implements Command {
         heap.clear();
         
         if (!result.getBands().isEmpty()) {
+            int loaded = 0;
             for (com.model.MusicBand band : result.getBands()) {
-                heap.insert(band);
+                if (heap.insert(band)) {
+                    loaded++;
+                } else {
+                    System.out.println("Warning: skipped band with duplicate id " + band.getId());
+                }
             }
-            System.out.println("Successfully loaded " + result.getBands().size() + " elements.");
+            System.out.println("Successfully loaded " + loaded + " elements.");
         } else {
             System.out.println("No elements found in file.");
         }
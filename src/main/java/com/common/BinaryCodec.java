@@ -0,0 +1,568 @@
+package com.common;
+
+import com.model.Album;
+import com.model.Coordinates;
+import com.model.MusicBand;
+import com.model.MusicGenre;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact hand-written binary codec for the protocol messages.
+ *
+ * Java serialization writes class descriptors into every message and
+ * uses reflection for every field. This codec knows the layout of the
+ * classes that actually travel over the wire (Request, Response,
+ * ServerStats, ChangeEvent, MusicBand, Album, Coordinates) and writes
+ * only the values:
+ * - every value starts with a one-byte tag saying what follows
+ * - int and long values are zigzag varints (small numbers take 1-2 bytes)
+ * - strings are a varint byte length followed by UTF-8
+ * - enums (RequestType, MusicGenre) are written as their ordinal
+ * - argument maps are a count followed by key/value pairs
+ *
+ * A value of any other Serializable type is written with the JAVA tag and
+ * embedded Java serialization, so nothing breaks if a new type is added
+ * to a message before this codec learns about it.
+ *
+ * Field order is part of the format: when a field is added to one of the
+ * classes above, append it at the end of the matching write/read pair.
+ */
+public class BinaryCodec implements WireCodec {
+    /** The single instance (the codec has no state) */
+    public static final BinaryCodec INSTANCE = new BinaryCodec();
+
+    // Value tags
+    private static final int TAG_NULL = 0;
+    private static final int TAG_REQUEST = 1;
+    private static final int TAG_RESPONSE = 2;
+    private static final int TAG_STATS = 3;
+    private static final int TAG_BAND = 4;
+    private static final int TAG_ALBUM = 5;
+    private static final int TAG_COORDINATES = 6;
+    private static final int TAG_GENRE = 7;
+    private static final int TAG_STRING = 8;
+    private static final int TAG_INT = 9;
+    private static final int TAG_LONG = 10;
+    private static final int TAG_DOUBLE = 11;
+    private static final int TAG_TRUE = 12;
+    private static final int TAG_FALSE = 13;
+    private static final int TAG_MAP = 14;
+    private static final int TAG_JAVA = 15;
+    private static final int TAG_EVENT = 16;
+
+    /** Cached enum values (values() copies the array each call) */
+    private static final Request.RequestType[] REQUEST_TYPES = Request.RequestType.values();
+    private static final MusicGenre[] GENRES = MusicGenre.values();
+    private static final ChangeEvent.Kind[] EVENT_KINDS = ChangeEvent.Kind.values();
+
+    private BinaryCodec() {}
+
+    @Override
+    public byte getId() {
+        return 1;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public void encode(Serializable obj, OutputStream out) throws IOException {
+        writeValue(out, obj);
+    }
+
+    @Override
+    public Serializable decode(byte[] data) throws IOException, ClassNotFoundException {
+        Reader in = new Reader(data);
+        Object value = readValue(in);
+        if (in.position != data.length) {
+            throw new IOException("Trailing bytes after message: " + (data.length - in.position));
+        }
+        return (Serializable) value;
+    }
+
+    // ---------------------------------------------------------------
+    // Writing
+    // ---------------------------------------------------------------
+
+    /**
+     * Writes any supported value with its tag.
+     */
+    private static void writeValue(OutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.write(TAG_NULL);
+        } else if (value instanceof String) {
+            out.write(TAG_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Long) {
+            out.write(TAG_LONG);
+            writeVarLong(out, (Long) value);
+        } else if (value instanceof Integer) {
+            out.write(TAG_INT);
+            writeVarLong(out, (Integer) value);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Double) {
+            out.write(TAG_DOUBLE);
+            writeFixedLong(out, Double.doubleToLongBits((Double) value));
+        } else if (value instanceof Request) {
+            out.write(TAG_REQUEST);
+            writeRequest(out, (Request) value);
+        } else if (value instanceof Response) {
+            out.write(TAG_RESPONSE);
+            writeResponse(out, (Response) value);
+        } else if (value instanceof MusicBand) {
+            out.write(TAG_BAND);
+            writeBand(out, (MusicBand) value);
+        } else if (value instanceof Album) {
+            out.write(TAG_ALBUM);
+            writeString(out, ((Album) value).getName());
+            writeValue(out, ((Album) value).getSales());
+        } else if (value instanceof Coordinates) {
+            out.write(TAG_COORDINATES);
+            writeVarLong(out, ((Coordinates) value).getX());
+            writeVarLong(out, ((Coordinates) value).getY());
+        } else if (value instanceof MusicGenre) {
+            out.write(TAG_GENRE);
+            writeVarLong(out, ((MusicGenre) value).ordinal());
+        } else if (value instanceof ServerStats) {
+            out.write(TAG_STATS);
+            writeStats(out, (ServerStats) value);
+        } else if (value instanceof ChangeEvent) {
+            out.write(TAG_EVENT);
+            writeEvent(out, (ChangeEvent) value);
+        } else if (value instanceof Map) {
+            out.write(TAG_MAP);
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeVarLong(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof Serializable) {
+            // Unknown type - embed Java serialization
+            out.write(TAG_JAVA);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            JavaCodec.INSTANCE.encode((Serializable) value, bytes);
+            writeVarLong(out, bytes.size());
+            bytes.writeTo(out);
+        } else {
+            throw new IOException("Cannot encode " + value.getClass().getName());
+        }
+    }
+
+    private static void writeRequest(OutputStream out, Request request) throws IOException {
+        writeVarLong(out, request.getType() == null ? -1 : request.getType().ordinal());
+        writeString(out, request.getCommand());
+        writeValue(out, request.getArgs());
+        writeValue(out, request.getData());
+        writeString(out, request.getLogin());
+        writeString(out, request.getPassword());
+        writeVarLong(out, request.getRequestId());
+        writeVarLong(out, request.getIfNoneMatch());
+    }
+
+    private static void writeResponse(OutputStream out, Response response) throws IOException {
+        out.write(response.isSuccess() ? 1 : 0);
+        writeString(out, response.getResult());
+        writeString(out, response.getError());
+        writeValue(out, response.getStats());
+        writeValue(out, response.getData());
+        writeString(out, response.getNotification());
+        writeVarLong(out, response.getRequestId());
+        writeVarLong(out, response.getVersion());
+        out.write(response.isNotModified() ? 1 : 0);
+    }
+
+    private static void writeBand(OutputStream out, MusicBand band) throws IOException {
+        writeVarLong(out, band.getId());
+        writeString(out, band.getName());
+        writeValue(out, band.getCoordinates());
+        Date created = band.getCreationDate();
+        writeValue(out, created == null ? null : created.getTime());
+        writeValue(out, band.getNumberOfParticipants());
+        writeString(out, band.getDescription());
+        writeValue(out, band.getGenre());
+        writeValue(out, band.getBestAlbum());
+        writeString(out, band.getOwnerLogin());
+        writeString(out, band.getOwnerPasswordHash());
+    }
+
+    private static void writeEvent(OutputStream out, ChangeEvent event) throws IOException {
+        writeVarLong(out, event.getKind().ordinal());
+        writeVarLong(out, event.getVersion());
+        writeVarLong(out, event.getBands().size());
+        for (MusicBand band : event.getBands()) {
+            writeBand(out, band);
+        }
+        writeVarLong(out, event.getIds().size());
+        for (Long id : event.getIds()) {
+            writeVarLong(out, id);
+        }
+        writeString(out, event.getOwner());
+    }
+
+    private static void writeStats(OutputStream out, ServerStats stats) throws IOException {
+        writeVarLong(out, stats.getUptimeMillis());
+        writeVarLong(out, stats.getFreeMemory());
+        writeVarLong(out, stats.getTotalMemory());
+        writeVarLong(out, stats.getUsedMemory());
+        writeVarLong(out, stats.getActiveConnections());
+        writeVarLong(out, stats.getCollectionSize());
+        LocalDateTime start = stats.getStartTime();
+        if (start == null) {
+            out.write(0);
+        } else {
+            out.write(1);
+            writeVarLong(out, start.toEpochSecond(ZoneOffset.UTC));
+            writeVarLong(out, start.getNano());
+        }
+        out.write(stats.isHealthy() ? 1 : 0);
+        writeString(out, stats.getSchedulerMode());
+        writeVarLong(out, stats.getQueueDepth());
+        writeVarLong(out, stats.getRejectedRequests());
+        writeVarLong(out, stats.getBufferPoolHits());
+        writeVarLong(out, stats.getBufferPoolMisses());
+        writeVarLong(out, stats.getBytesSent());
+        writeVarLong(out, stats.getFramesSent());
+        writeVarLong(out, stats.getDroppedNotifications());
+        writeVarLong(out, stats.getSlowConsumerDisconnects());
+        writeVarLong(out, stats.getResponseCacheHits());
+        writeVarLong(out, stats.getResponseCacheMisses());
+        writeVarLong(out, stats.getDbPoolActive());
+        writeVarLong(out, stats.getDbPoolIdle());
+        writeVarLong(out, stats.getDbPoolWaiting());
+        long[] waits = stats.getDbBorrowWaitHistogram();
+        writeVarLong(out, waits.length);
+        for (long count : waits) {
+            writeVarLong(out, count);
+        }
+        writeVarLong(out, stats.getHistoryQueueDepth());
+        writeVarLong(out, stats.getHistoryWritten());
+        writeVarLong(out, stats.getHistoryDropped());
+        writeVarLong(out, stats.getHistoryFlushAvgMicros());
+        writeVarLong(out, stats.getHistoryFlushMaxMicros());
+        writeVarLong(out, stats.getCollectionOwners());
+        writeVarLong(out, stats.getCollectionMinId());
+        writeVarLong(out, stats.getCollectionMaxId());
+        writeVarLong(out, stats.getReconcileMismatches());
+    }
+
+    /**
+     * Writes a nullable string: varint (length + 1), 0 meaning null.
+     */
+    private static void writeString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeUnsignedVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeUnsignedVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a signed number as a zigzag varint, so small negative
+     * numbers stay short too.
+     */
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        writeUnsignedVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes 7 bits per byte, high bit set on all but the last byte.
+     */
+    private static void writeUnsignedVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeFixedLong(OutputStream out, long value) throws IOException {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Reading
+    // ---------------------------------------------------------------
+
+    /**
+     * Reads any supported value, starting with its tag.
+     */
+    private static Object readValue(Reader in) throws IOException, ClassNotFoundException {
+        int tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in);
+            case TAG_LONG:
+                return readVarLong(in);
+            case TAG_INT:
+                return (int) readVarLong(in);
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(in.readFixedLong());
+            case TAG_REQUEST:
+                return readRequest(in);
+            case TAG_RESPONSE:
+                return readResponse(in);
+            case TAG_BAND:
+                return readBand(in);
+            case TAG_ALBUM:
+                return new Album(readString(in), (Double) readValue(in));
+            case TAG_COORDINATES:
+                return new Coordinates(readVarLong(in), (int) readVarLong(in));
+            case TAG_GENRE:
+                return GENRES[readOrdinal(in, GENRES.length)];
+            case TAG_STATS:
+                return readStats(in);
+            case TAG_EVENT:
+                return readEvent(in);
+            case TAG_MAP: {
+                int size = readCount(in);
+                Map<Object, Object> map = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    Object key = readValue(in);
+                    map.put(key, readValue(in));
+                }
+                return map;
+            }
+            case TAG_JAVA: {
+                int length = (int) readVarLong(in);
+                return JavaCodec.INSTANCE.decode(in.readBytes(length));
+            }
+            default:
+                throw new IOException("Unknown tag " + tag + " at offset " + (in.position - 1));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Request readRequest(Reader in) throws IOException, ClassNotFoundException {
+        Request request = new Request();
+        int type = (int) readVarLong(in);
+        if (type >= 0) {
+            request.setType(REQUEST_TYPES[readOrdinalValue(type, REQUEST_TYPES.length)]);
+        }
+        request.setCommand(readString(in));
+        request.setArgs((Map<String, Object>) readValue(in));
+        request.setData((Serializable) readValue(in));
+        request.setLogin(readString(in));
+        request.setPassword(readString(in));
+        request.setRequestId(readVarLong(in));
+        request.setIfNoneMatch(readVarLong(in));
+        return request;
+    }
+
+    private static Response readResponse(Reader in) throws IOException, ClassNotFoundException {
+        Response response = new Response();
+        response.setSuccess(in.readByte() != 0);
+        response.setResult(readString(in));
+        response.setError(readString(in));
+        response.setStats((ServerStats) readValue(in));
+        response.setData((Serializable) readValue(in));
+        response.setNotification(readString(in));
+        response.setRequestId(readVarLong(in));
+        response.setVersion(readVarLong(in));
+        response.setNotModified(in.readByte() != 0);
+        return response;
+    }
+
+    private static MusicBand readBand(Reader in) throws IOException, ClassNotFoundException {
+        MusicBand band = new MusicBand();
+        band.setId(readVarLong(in));
+        band.setName(readString(in));
+        band.setCoordinates((Coordinates) readValue(in));
+        Long created = (Long) readValue(in);
+        band.setCreationDate(created == null ? null : new Date(created));
+        band.setNumberOfParticipants((Integer) readValue(in));
+        band.setDescription(readString(in));
+        band.setGenre((MusicGenre) readValue(in));
+        band.setBestAlbum((Album) readValue(in));
+        band.setOwnerLogin(readString(in));
+        band.setOwnerPasswordHash(readString(in));
+        return band;
+    }
+
+    private static ChangeEvent readEvent(Reader in) throws IOException, ClassNotFoundException {
+        ChangeEvent event = new ChangeEvent();
+        event.setKind(EVENT_KINDS[readOrdinal(in, EVENT_KINDS.length)]);
+        event.setVersion(readVarLong(in));
+        int bandCount = readCount(in);
+        List<MusicBand> bands = new ArrayList<>(bandCount);
+        for (int i = 0; i < bandCount; i++) {
+            bands.add(readBand(in));
+        }
+        event.setBands(bands);
+        int idCount = readCount(in);
+        List<Long> ids = new ArrayList<>(idCount);
+        for (int i = 0; i < idCount; i++) {
+            ids.add(readVarLong(in));
+        }
+        event.setIds(ids);
+        event.setOwner(readString(in));
+        return event;
+    }
+
+    private static ServerStats readStats(Reader in) throws IOException {
+        ServerStats stats = new ServerStats();
+        stats.setUptimeMillis(readVarLong(in));
+        stats.setFreeMemory(readVarLong(in));
+        stats.setTotalMemory(readVarLong(in));
+        stats.setUsedMemory(readVarLong(in));
+        stats.setActiveConnections((int) readVarLong(in));
+        stats.setCollectionSize((int) readVarLong(in));
+        if (in.readByte() != 0) {
+            long seconds = readVarLong(in);
+            stats.setStartTime(LocalDateTime.ofEpochSecond(seconds, (int) readVarLong(in), ZoneOffset.UTC));
+        }
+        stats.setHealthy(in.readByte() != 0);
+        stats.setSchedulerMode(readString(in));
+        stats.setQueueDepth((int) readVarLong(in));
+        stats.setRejectedRequests(readVarLong(in));
+        stats.setBufferPoolHits(readVarLong(in));
+        stats.setBufferPoolMisses(readVarLong(in));
+        stats.setBytesSent(readVarLong(in));
+        stats.setFramesSent(readVarLong(in));
+        stats.setDroppedNotifications(readVarLong(in));
+        stats.setSlowConsumerDisconnects(readVarLong(in));
+        stats.setResponseCacheHits(readVarLong(in));
+        stats.setResponseCacheMisses(readVarLong(in));
+        stats.setDbPoolActive((int) readVarLong(in));
+        stats.setDbPoolIdle((int) readVarLong(in));
+        stats.setDbPoolWaiting((int) readVarLong(in));
+        long[] waits = new long[readCount(in)];
+        for (int i = 0; i < waits.length; i++) {
+            waits[i] = readVarLong(in);
+        }
+        stats.setDbBorrowWaitHistogram(waits);
+        stats.setHistoryQueueDepth((int) readVarLong(in));
+        stats.setHistoryWritten(readVarLong(in));
+        stats.setHistoryDropped(readVarLong(in));
+        stats.setHistoryFlushAvgMicros(readVarLong(in));
+        stats.setHistoryFlushMaxMicros(readVarLong(in));
+        stats.setCollectionOwners((int) readVarLong(in));
+        stats.setCollectionMinId(readVarLong(in));
+        stats.setCollectionMaxId(readVarLong(in));
+        stats.setReconcileMismatches(readVarLong(in));
+        return stats;
+    }
+
+    private static String readString(Reader in) throws IOException {
+        long lengthPlusOne = readUnsignedVarLong(in);
+        if (lengthPlusOne == 0) {
+            return null;
+        }
+        int length = (int) (lengthPlusOne - 1);
+        String value = new String(in.data, in.position, checkLength(in, length), StandardCharsets.UTF_8);
+        in.position += length;
+        return value;
+    }
+
+    private static long readVarLong(Reader in) throws IOException {
+        long raw = readUnsignedVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    private static long readUnsignedVarLong(Reader in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    /**
+     * Reads an element count. Every element takes at least one byte,
+     * so a count larger than the remaining bytes is corrupt.
+     */
+    private static int readCount(Reader in) throws IOException {
+        long count = readVarLong(in);
+        if (count < 0 || count > in.remaining()) {
+            throw new IOException("Invalid element count: " + count);
+        }
+        return (int) count;
+    }
+
+    private static int readOrdinal(Reader in, int count) throws IOException {
+        return readOrdinalValue((int) readVarLong(in), count);
+    }
+
+    private static int readOrdinalValue(int ordinal, int count) throws IOException {
+        if (ordinal < 0 || ordinal >= count) {
+            throw new IOException("Invalid enum ordinal: " + ordinal);
+        }
+        return ordinal;
+    }
+
+    private static int checkLength(Reader in, int length) throws IOException {
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Invalid length " + length + " at offset " + in.position);
+        }
+        return length;
+    }
+
+    /**
+     * Cursor over a payload byte array.
+     */
+    private static final class Reader {
+        final byte[] data;
+        int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int remaining() {
+            return data.length - position;
+        }
+
+        int readByte() throws IOException {
+            if (position >= data.length) {
+                throw new IOException("Unexpected end of message");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        long readFixedLong() throws IOException {
+            checkLength(this, 8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (data[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            checkLength(this, length);
+            byte[] bytes = new byte[length];
+            System.arraycopy(data, position, bytes, 0, length);
+            position += length;
+            return bytes;
+        }
+    }
+}
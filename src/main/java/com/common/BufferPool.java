@@ -0,0 +1,219 @@
+package com.common;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of reusable direct ByteBuffers, grouped into size classes.
+ *
+ * Allocating a buffer for every read and every response creates a lot of
+ * short-lived garbage, and direct buffers are especially expensive to
+ * allocate. This pool hands out buffers from a few fixed size classes
+ * (4 KB up to 1 MB) and takes them back once the I/O is finished.
+ *
+ * Requests larger than the biggest class get a one-off heap buffer that
+ * is simply dropped on release.
+ *
+ * Leak detection: start the JVM with -Dmusicband.bufferpool.debug=true
+ * and the pool remembers where every outstanding buffer was acquired.
+ * reportLeaks() prints those stack traces, and releasing a buffer twice
+ * is reported immediately.
+ *
+ * Usage:
+ *   ByteBuffer buffer = BufferPool.shared().acquire(8192);
+ *   try { ... } finally { BufferPool.shared().release(buffer); }
+ */
+public class BufferPool {
+    /** Capacities of the size classes, smallest first */
+    private static final int[] SIZE_CLASSES = {4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024};
+
+    /** Upper bound on idle memory kept per size class */
+    private static final int MAX_IDLE_BYTES_PER_CLASS = 8 * 1024 * 1024;
+
+    /** The pool shared by server, client and broadcast code */
+    private static final BufferPool SHARED = new BufferPool(Boolean.getBoolean("musicband.bufferpool.debug"));
+
+    /** Idle buffers for each size class */
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> idle = new ArrayList<>();
+
+    /** Number of idle buffers in each class (queue size() is O(n)) */
+    private final AtomicInteger[] idleCounts = new AtomicInteger[SIZE_CLASSES.length];
+
+    /** Acquisitions served from an idle buffer */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Acquisitions that had to allocate */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Whether to track outstanding buffers */
+    private final boolean debug;
+
+    /** Outstanding buffers and where they were acquired (debug mode only) */
+    private final Map<ByteBuffer, Throwable> outstanding = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * Creates a pool.
+     *
+     * @param debug true to record allocation sites for leak detection
+     */
+    public BufferPool(boolean debug) {
+        this.debug = debug;
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            idle.add(new ConcurrentLinkedQueue<>());
+            idleCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Gets the pool shared by the whole process.
+     *
+     * @return The shared pool
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Gets a cleared buffer with at least the given capacity.
+     * The buffer may be larger than requested.
+     *
+     * @param minCapacity Minimum number of bytes needed
+     * @return A buffer in write mode (position 0, limit = capacity)
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        int index = classIndex(minCapacity);
+        ByteBuffer buffer;
+        if (index < 0) {
+            // Too big to pool
+            misses.incrementAndGet();
+            buffer = ByteBuffer.allocate(minCapacity);
+        } else {
+            buffer = idle.get(index).poll();
+            if (buffer != null) {
+                idleCounts[index].decrementAndGet();
+                hits.incrementAndGet();
+                buffer.clear();
+            } else {
+                misses.incrementAndGet();
+                buffer = ByteBuffer.allocateDirect(SIZE_CLASSES[index]);
+            }
+        }
+        if (debug) {
+            outstanding.put(buffer, new Throwable("Buffer acquired here"));
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     * The caller must not touch the buffer afterwards.
+     *
+     * @param buffer Buffer obtained from acquire() (null is ignored)
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (debug && outstanding.remove(buffer) == null) {
+            new Throwable("Buffer released twice or not acquired from this pool").printStackTrace();
+            return;
+        }
+        if (!buffer.isDirect()) {
+            return;
+        }
+        int index = exactClassIndex(buffer.capacity());
+        if (index < 0) {
+            return;
+        }
+        // Keep at most MAX_IDLE_BYTES_PER_CLASS idle per class, let the rest be collected
+        if (idleCounts[index].incrementAndGet() * (long) SIZE_CLASSES[index] > MAX_IDLE_BYTES_PER_CLASS) {
+            idleCounts[index].decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        idle.get(index).offer(buffer);
+    }
+
+    /**
+     * Prints the acquisition site of every buffer that was never released.
+     * Only works in debug mode.
+     *
+     * @return Number of outstanding buffers
+     */
+    public int reportLeaks() {
+        List<Throwable> sites;
+        synchronized (outstanding) {
+            sites = new ArrayList<>(outstanding.values());
+        }
+        for (Throwable site : sites) {
+            System.err.println("Leaked buffer:");
+            site.printStackTrace();
+        }
+        return sites.size();
+    }
+
+    /**
+     * Gets the number of acquisitions served from an idle buffer.
+     *
+     * @return Pool hit count
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of acquisitions that allocated a new buffer.
+     *
+     * @return Pool miss count
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of buffers currently handed out.
+     * Only tracked in debug mode, 0 otherwise.
+     *
+     * @return Outstanding buffer count
+     */
+    public int getOutstandingCount() {
+        return outstanding.size();
+    }
+
+    /**
+     * Finds the smallest size class that fits the request.
+     *
+     * @param capacity Requested capacity
+     * @return Class index, or -1 if larger than every class
+     */
+    private static int classIndex(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the size class with exactly this capacity.
+     *
+     * @param capacity Buffer capacity
+     * @return Class index, or -1 if the buffer did not come from a class
+     */
+    private static int exactClassIndex(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity == SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
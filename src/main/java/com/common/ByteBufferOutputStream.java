@@ -0,0 +1,120 @@
+package com.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * OutputStream that writes into a pooled ByteBuffer.
+ *
+ * Used to serialize messages straight into a buffer that can be handed
+ * to a channel write, instead of going through a ByteArrayOutputStream
+ * and a copy. When the buffer fills up, a larger one is taken from the
+ * pool and the old one is given back.
+ *
+ * The stream owns its buffer until detach() is called. Closing the
+ * stream without detaching returns the buffer to the pool.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+    /** Pool to take buffers from and return them to */
+    private final BufferPool pool;
+
+    /** Largest number of bytes this stream may hold */
+    private final int limit;
+
+    /** Current buffer (in write mode), null once detached or closed */
+    private ByteBuffer buffer;
+
+    /**
+     * Creates a stream backed by a buffer from the pool.
+     *
+     * @param pool Pool to allocate from
+     * @param initialCapacity Size hint for the first buffer
+     * @param limit Largest total size in bytes; writing more throws IOException
+     */
+    public ByteBufferOutputStream(BufferPool pool, int initialCapacity, int limit) {
+        this.pool = pool;
+        this.limit = limit;
+        this.buffer = pool.acquire(Math.min(initialCapacity, limit));
+    }
+
+    /**
+     * Skips bytes that will be filled in later (e.g. a length header).
+     *
+     * @param count Number of bytes to skip
+     * @throws IOException If the limit would be exceeded
+     */
+    public void reserve(int count) throws IOException {
+        ensureRemaining(count);
+        buffer.position(buffer.position() + count);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureRemaining(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureRemaining(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    /**
+     * Gets the number of bytes written so far (including reserved ones).
+     *
+     * @return Current size
+     */
+    public int size() {
+        return buffer.position();
+    }
+
+    /**
+     * Hands the buffer over to the caller, who must release it.
+     * The buffer is left in write mode.
+     *
+     * @return The buffer with everything written so far
+     */
+    public ByteBuffer detach() {
+        ByteBuffer result = buffer;
+        buffer = null;
+        return result;
+    }
+
+    /**
+     * Returns the buffer to the pool unless it was detached.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Grows the buffer if fewer than count bytes are free.
+     *
+     * @param count Bytes about to be written
+     * @throws IOException If the stream is closed or the limit would be exceeded
+     */
+    private void ensureRemaining(int count) throws IOException {
+        if (buffer == null) {
+            throw new IOException("Stream closed");
+        }
+        if (buffer.remaining() >= count) {
+            return;
+        }
+        long needed = (long) buffer.position() + count;
+        if (needed > limit) {
+            throw new IOException("Message of at least " + needed + " bytes exceeds limit of " + limit);
+        }
+        int newCapacity = (int) Math.min(limit, Math.max(needed, (long) buffer.capacity() * 2));
+        ByteBuffer bigger = pool.acquire(newCapacity);
+        buffer.flip();
+        bigger.put(buffer);
+        pool.release(buffer);
+        buffer = bigger;
+    }
+}
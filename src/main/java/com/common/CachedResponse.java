@@ -0,0 +1,167 @@
+package com.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A response encoded once and sent many times.
+ *
+ * Every response carries the requestId of its request, so the encoded
+ * bytes differ between two answers to the same command. This class
+ * encodes the response with a marker requestId, finds where the marker
+ * landed, and keeps the bytes before and after it. An answer is then
+ * the length header, the shared bytes before the id, the id itself and
+ * the shared bytes after it - no serialization and no copy of the body.
+ *
+ * Where the id lands depends on the codec:
+ * - BinaryCodec writes it as a zigzag varint near the end (so the frame
+ *   length depends on the id)
+ * - JavaCodec writes it as an 8-byte big-endian long among the
+ *   primitive fields, before the strings
+ *
+ * Instances are immutable and shared between threads.
+ */
+public final class CachedResponse {
+    /** requestId written while encoding, then searched for */
+    private static final long MARKER = 0x6A09E667F3BCC908L;
+
+    /** Room for the length header and the longest varint */
+    private static final int HEAD_AND_ID_SIZE = FrameDecoder.HEADER_SIZE + 10;
+
+    /** Codec the bytes are in */
+    private final WireCodec codec;
+
+    /** Payload bytes before the requestId (read-only, direct) */
+    private final ByteBuffer before;
+
+    /** Payload bytes after the requestId (read-only, direct, often empty) */
+    private final ByteBuffer after;
+
+    private CachedResponse(WireCodec codec, ByteBuffer before, ByteBuffer after) {
+        this.codec = codec;
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Encodes a response for caching.
+     *
+     * @param response The response (its requestId is left unchanged)
+     * @param codec Codec to encode with
+     * @param maxFrameSize Largest allowed payload in bytes
+     * @return The cached form, or null if the requestId cannot be located
+     * @throws IOException If encoding fails or the payload is too large
+     */
+    public static CachedResponse encode(Response response, WireCodec codec, int maxFrameSize) throws IOException {
+        long requestId = response.getRequestId();
+        byte[] payload;
+        try {
+            response.setRequestId(MARKER);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+            codec.encode(response, out);
+            payload = out.toByteArray();
+        } finally {
+            response.setRequestId(requestId);
+        }
+        // Leave room for the longest id encoding
+        if (payload.length + 10 > maxFrameSize) {
+            throw new IOException("Frame of " + payload.length + " bytes exceeds limit of " + maxFrameSize);
+        }
+
+        byte[] marker = encodeId(codec, MARKER);
+        int at = indexOf(payload, marker, 0);
+        if (at < 0 || indexOf(payload, marker, at + 1) >= 0) {
+            // Not found, or the marker bytes also occur in the data
+            return null;
+        }
+        return new CachedResponse(codec,
+            toDirect(payload, 0, at),
+            toDirect(payload, at + marker.length, payload.length));
+    }
+
+    /**
+     * Builds the frame answering one request.
+     * The first part is a small pooled buffer holding the header and the
+     * id; give it back with releaseHead() once the frame is written.
+     *
+     * @param requestId Id of the request being answered
+     * @param pool Pool for the small header buffer
+     * @return Buffers forming one complete frame, in write order
+     */
+    public ByteBuffer[] toFrame(long requestId, BufferPool pool) {
+        byte[] id = encodeId(codec, requestId);
+        ByteBuffer head = pool.acquire(HEAD_AND_ID_SIZE);
+        head.putInt(before.capacity() + id.length + after.capacity());
+        head.put(id);
+
+        ByteBuffer idPart = head.duplicate();
+        idPart.position(FrameDecoder.HEADER_SIZE).limit(FrameDecoder.HEADER_SIZE + id.length);
+
+        // The first part is the pooled buffer itself, so it can be released
+        head.flip().limit(FrameDecoder.HEADER_SIZE);
+        if (after.capacity() == 0) {
+            return new ByteBuffer[] {head, before.duplicate(), idPart};
+        }
+        return new ByteBuffer[] {head, before.duplicate(), idPart, after.duplicate()};
+    }
+
+    /**
+     * Gives the pooled header buffer of a frame back.
+     *
+     * @param frame Parts returned by toFrame()
+     * @param pool The pool passed to toFrame()
+     */
+    public static void releaseHead(ByteBuffer[] frame, BufferPool pool) {
+        pool.release(frame[0]);
+    }
+
+    /**
+     * Gets the number of cached bytes (without header and id).
+     *
+     * @return Size in bytes
+     */
+    public int size() {
+        return before.capacity() + after.capacity();
+    }
+
+    public WireCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Encodes a requestId the way the codec writes it inside a Response.
+     */
+    private static byte[] encodeId(WireCodec codec, long requestId) {
+        if (codec == BinaryCodec.INSTANCE) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(10);
+            try {
+                BinaryCodec.writeVarLong(out, requestId);
+            } catch (IOException e) {
+                // ByteArrayOutputStream does not throw
+                throw new IllegalStateException(e);
+            }
+            return out.toByteArray();
+        }
+        return ByteBuffer.allocate(8).putLong(requestId).array();
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static ByteBuffer toDirect(byte[] data, int from, int to) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(to - from);
+        buffer.put(data, from, to - from).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+}
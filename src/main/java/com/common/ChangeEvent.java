@@ -0,0 +1,165 @@
+package com.common;
+
+import com.model.MusicBand;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One change to the collection, as streamed to subscribed clients.
+ *
+ * Every change gets the next collection version (1, 2, 3, ...), so a
+ * client that applies events in version order keeps an exact copy of
+ * the collection. A client that misses versions (reconnect, dropped
+ * notification) subscribes again from the last version it applied and
+ * the server replays what it missed - or sends a SNAPSHOT if those
+ * events are no longer kept.
+ *
+ * Kinds:
+ * - INSERTED: bands holds the new band
+ * - UPDATED: bands holds the band's new state
+ * - REMOVED: ids holds the removed IDs
+ * - CLEARED_OWNER: owner's bands were cleared, ids holds their IDs
+ * - SNAPSHOT: bands holds the whole collection at this version
+ *
+ * Bands in events never carry the owner's password hash.
+ */
+public class ChangeEvent implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * What kind of change this is.
+     * New kinds must be added at the end (BinaryCodec writes the ordinal).
+     */
+    public enum Kind {
+        INSERTED,
+        UPDATED,
+        REMOVED,
+        CLEARED_OWNER,
+        SNAPSHOT
+    }
+
+    /** What happened */
+    private Kind kind;
+
+    /** Collection version after this change */
+    private long version;
+
+    /** Inserted or updated band, or the whole collection for SNAPSHOT */
+    private List<MusicBand> bands = Collections.emptyList();
+
+    /** Removed IDs for REMOVED and CLEARED_OWNER */
+    private List<Long> ids = Collections.emptyList();
+
+    /** Owner whose bands were cleared (CLEARED_OWNER only) */
+    private String owner;
+
+    /**
+     * Default constructor required for deserialization.
+     */
+    public ChangeEvent() {}
+
+    /**
+     * Creates an event.
+     *
+     * @param kind What happened
+     * @param version Collection version after the change
+     * @param bands Bands carried by the event (copied without password hashes)
+     * @param ids Removed IDs
+     * @param owner Cleared owner, or null
+     */
+    public ChangeEvent(Kind kind, long version, List<MusicBand> bands, List<Long> ids, String owner) {
+        this.kind = kind;
+        this.version = version;
+        this.bands = new ArrayList<>(bands.size());
+        for (MusicBand band : bands) {
+            this.bands.add(withoutPasswordHash(band));
+        }
+        this.ids = new ArrayList<>(ids);
+        this.owner = owner;
+    }
+
+    public static ChangeEvent inserted(long version, MusicBand band) {
+        return new ChangeEvent(Kind.INSERTED, version, List.of(band), List.of(), null);
+    }
+
+    public static ChangeEvent updated(long version, MusicBand band) {
+        return new ChangeEvent(Kind.UPDATED, version, List.of(band), List.of(), null);
+    }
+
+    public static ChangeEvent removed(long version, List<Long> ids) {
+        return new ChangeEvent(Kind.REMOVED, version, List.of(), ids, null);
+    }
+
+    public static ChangeEvent clearedOwner(long version, String owner, List<Long> ids) {
+        return new ChangeEvent(Kind.CLEARED_OWNER, version, List.of(), ids, owner);
+    }
+
+    public static ChangeEvent snapshot(long version, List<MusicBand> bands) {
+        return new ChangeEvent(Kind.SNAPSHOT, version, bands, List.of(), null);
+    }
+
+    /**
+     * Copies a band, leaving out the owner's password hash.
+     */
+    private static MusicBand withoutPasswordHash(MusicBand band) {
+        if (band.getOwnerPasswordHash() == null) {
+            return band;
+        }
+        MusicBand copy = new MusicBand();
+        copy.setId(band.getId());
+        copy.setName(band.getName());
+        copy.setCoordinates(band.getCoordinates());
+        copy.setCreationDate(band.getCreationDate());
+        copy.setNumberOfParticipants(band.getNumberOfParticipants());
+        copy.setDescription(band.getDescription());
+        copy.setGenre(band.getGenre());
+        copy.setBestAlbum(band.getBestAlbum());
+        copy.setOwnerLogin(band.getOwnerLogin());
+        return copy;
+    }
+
+    /**
+     * Short description for printing, e.g. "v12 REMOVED [5, 7]".
+     *
+     * @return One-line summary of the change
+     */
+    public String describe() {
+        switch (kind) {
+            case INSERTED:
+            case UPDATED:
+                MusicBand band = bands.get(0);
+                return "v" + version + " " + kind + " " + band.getName() + " (id " + band.getId() + ")";
+            case REMOVED:
+                return "v" + version + " REMOVED " + ids;
+            case CLEARED_OWNER:
+                return "v" + version + " CLEARED_OWNER " + owner + " (" + ids.size() + " bands)";
+            default:
+                return "v" + version + " " + kind + " (" + bands.size() + " bands)";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return describe();
+    }
+
+    // Getters and setters below
+
+    public Kind getKind() { return kind; }
+    public void setKind(Kind kind) { this.kind = kind; }
+
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+
+    public List<MusicBand> getBands() { return bands; }
+    public void setBands(List<MusicBand> bands) { this.bands = bands; }
+
+    public List<Long> getIds() { return ids; }
+    public void setIds(List<Long> ids) { this.ids = ids; }
+
+    public String getOwner() { return owner; }
+    public void setOwner(String owner) { this.owner = owner; }
+}
@@ -0,0 +1,111 @@
+package com.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental decoder for length-prefixed frames.
+ *
+ * Every message on the wire is sent as a 4-byte big-endian length header
+ * followed by that many payload bytes (see Serializer.serializeWithLength).
+ * TCP does not preserve message boundaries, so a single read may contain
+ * half a header, several frames, or the tail of one frame and the start of
+ * the next. This class keeps the state between reads and hands out a
+ * payload only when all of its bytes have arrived.
+ *
+ * One decoder belongs to one connection and is not thread-safe.
+ *
+ * Usage:
+ *   byte[] frame;
+ *   while ((frame = decoder.decode(readBuffer)) != null) {
+ *       handle(frame);
+ *   }
+ */
+public class FrameDecoder {
+    /** Size of the length header in bytes */
+    public static final int HEADER_SIZE = 4;
+
+    /** Largest payload this decoder accepts */
+    private final int maxFrameSize;
+
+    /** Collects the header bytes, which may arrive split across reads */
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+    /** Payload of the frame being assembled (null while reading a header) */
+    private byte[] payload;
+
+    /** Number of payload bytes received so far */
+    private int filled;
+
+    /**
+     * Creates a decoder that rejects frames larger than maxFrameSize.
+     *
+     * @param maxFrameSize Largest allowed payload in bytes
+     */
+    public FrameDecoder(int maxFrameSize) {
+        if (maxFrameSize <= 0) {
+            throw new IllegalArgumentException("maxFrameSize must be positive");
+        }
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Consumes bytes from the buffer until one frame is complete or the
+     * buffer runs out.
+     *
+     * The buffer must be in read mode (flipped). Bytes that belong to the
+     * next frame are left in the buffer, so the caller should keep calling
+     * decode() until it returns null and then compact() the buffer.
+     *
+     * @param in Buffer with received bytes
+     * @return The complete payload, or null if more bytes are needed
+     * @throws IOException If the header announces an invalid frame length
+     */
+    public byte[] decode(ByteBuffer in) throws IOException {
+        if (payload == null) {
+            while (header.hasRemaining() && in.hasRemaining()) {
+                header.put(in.get());
+            }
+            if (header.hasRemaining()) {
+                return null;
+            }
+            header.flip();
+            int length = header.getInt();
+            header.clear();
+            if (length < 0 || length > maxFrameSize) {
+                throw new IOException("Invalid frame length " + length + " (limit " + maxFrameSize + ")");
+            }
+            payload = new byte[length];
+            filled = 0;
+        }
+
+        int chunk = Math.min(payload.length - filled, in.remaining());
+        in.get(payload, filled, chunk);
+        filled += chunk;
+
+        if (filled < payload.length) {
+            return null;
+        }
+        byte[] frame = payload;
+        payload = null;
+        return frame;
+    }
+
+    /**
+     * Checks whether the decoder holds part of an unfinished frame.
+     *
+     * @return true if a header or payload is partially received
+     */
+    public boolean isPartial() {
+        return payload != null || header.position() > 0;
+    }
+
+    /**
+     * Gets the largest payload this decoder accepts.
+     *
+     * @return Maximum frame size in bytes
+     */
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+}
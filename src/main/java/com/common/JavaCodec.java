@@ -0,0 +1,48 @@
+package com.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * Codec using Java's built-in object serialization.
+ *
+ * This is the format the protocol started with. It handles any
+ * Serializable object, but writes class descriptors into every message
+ * and is slow to encode and decode. It stays as the fallback for peers
+ * that do not support BinaryCodec.
+ */
+public class JavaCodec implements WireCodec {
+    /** The single instance (the codec has no state) */
+    public static final JavaCodec INSTANCE = new JavaCodec();
+
+    private JavaCodec() {}
+
+    @Override
+    public byte getId() {
+        return 0;
+    }
+
+    @Override
+    public String getName() {
+        return "java";
+    }
+
+    @Override
+    public void encode(Serializable obj, OutputStream out) throws IOException {
+        // Not closed on purpose - the caller owns the stream
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(obj);
+        oos.flush();
+    }
+
+    @Override
+    public Serializable decode(byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return (Serializable) ois.readObject();
+        }
+    }
+}
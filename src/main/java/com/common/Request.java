@@ -13,6 +13,7 @@ import java.util.Map;
  * - HEALTH: check server status
  * - FILE_UPLOAD: upload a file to server
  * - FILE_DOWNLOAD: download a file from server
+ * - SUBSCRIBE / UNSUBSCRIBE: start or stop the stream of change events
  */
 public class Request implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -56,6 +57,20 @@ public class Request implements Serializable {
      */
     private String password;
 
+    /**
+     * Identifier chosen by the client to match this request with its response.
+     * The server copies it into the response, so a client can have many
+     * requests in flight on one connection. 0 means "not set".
+     */
+    private long requestId;
+
+    /**
+     * Collection version of an answer the client already has (0 = none).
+     * For read-only commands the server answers with a small NOT_MODIFIED
+     * response instead of the full result when the version still matches.
+     */
+    private long ifNoneMatch;
+
     /**
      * Default constructor required for deserialization.
      * Creates an empty Request that must be populated later.
@@ -106,6 +121,12 @@ public class Request implements Serializable {
     public String getPassword() { return password; }
     public void setPassword(String password) { this.password = password; }
 
+    public long getRequestId() { return requestId; }
+    public void setRequestId(long requestId) { this.requestId = requestId; }
+
+    public long getIfNoneMatch() { return ifNoneMatch; }
+    public void setIfNoneMatch(long ifNoneMatch) { this.ifNoneMatch = ifNoneMatch; }
+
     /**
      * Enum defining all possible request types.
      * Each type represents a different category of operation.
@@ -120,6 +141,14 @@ public class Request implements Serializable {
         /** Download a file from the server */
         FILE_DOWNLOAD,
         /** Execute SQL query on the database */
-        EXECUTE_SQL
+        EXECUTE_SQL,
+        /**
+         * Start receiving ChangeEvents on this connection.
+         * Optional arg "fromVersion" (Long): last version the client has;
+         * the server first replays what the client missed since then.
+         */
+        SUBSCRIBE,
+        /** Stop receiving ChangeEvents */
+        UNSUBSCRIBE
     }
 }
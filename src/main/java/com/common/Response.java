@@ -52,6 +52,25 @@ public class Response implements Serializable {
      */
     private String notification;
 
+    /**
+     * Id of the request this response answers (copied from Request.requestId).
+     * 0 for notifications pushed by the server on its own.
+     */
+    private long requestId;
+
+    /**
+     * Collection version this answer was computed at (0 = not versioned).
+     * Set for read-only commands; the client sends it back as
+     * Request.ifNoneMatch to ask "only if changed".
+     */
+    private long version;
+
+    /**
+     * True if the client's copy (Request.ifNoneMatch) is still current.
+     * Such a response carries no result; the client reuses what it has.
+     */
+    private boolean notModified;
+
     /**
      * Default constructor required for deserialization.
      * Creates an empty Response that must be populated later.
@@ -150,6 +169,61 @@ public class Response implements Serializable {
     public String getNotification() { return notification; }
     public void setNotification(String notification) { this.notification = notification; }
 
+    public long getRequestId() { return requestId; }
+    public void setRequestId(long requestId) { this.requestId = requestId; }
+
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+
+    public boolean isNotModified() { return notModified; }
+    public void setNotModified(boolean notModified) { this.notModified = notModified; }
+
+    /**
+     * Checks whether this response is a notification pushed by the server
+     * on its own, rather than the answer to a request.
+     * 
+     * @return true if only the notification field is set
+     */
+    public boolean isPushNotification() {
+        return notification != null && result == null && error == null
+            && data == null && stats == null;
+    }
+
+    /**
+     * Factory method for the answer to a conditional read whose
+     * version still matches.
+     * 
+     * @param version The current collection version
+     * @return Response with notModified=true and no result
+     */
+    public static Response notModified(long version) {
+        Response resp = new Response(true, null);
+        resp.setVersion(version);
+        resp.setNotModified(true);
+        return resp;
+    }
+
+    /**
+     * Factory method for a change event pushed to subscribed clients.
+     * 
+     * @param event The collection change
+     * @return Response carrying the event as data, with requestId 0
+     */
+    public static Response event(ChangeEvent event) {
+        Response resp = new Response(true, null);
+        resp.setData(event);
+        return resp;
+    }
+
+    /**
+     * Checks whether this response is a change event pushed to a subscriber.
+     * 
+     * @return true if the data is a ChangeEvent and no request is answered
+     */
+    public boolean isChangeEvent() {
+        return requestId == 0 && data instanceof ChangeEvent;
+    }
+
     public static Response notification(String message) {
         Response resp = new Response(true, null);
         resp.setNotification(message);
@@ -1,6 +1,7 @@
 package com.common;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Utility class for serializing and deserializing objects.
@@ -11,9 +12,20 @@ import java.io.*;
  * 
  * Note: All objects being serialized must implement Serializable interface.
  * This includes Request, Response, ServerStats, and MusicBand.
+ * 
+ * The frame methods that take a WireCodec use whatever format was
+ * negotiated for the connection (see WireCodec); the others always use
+ * Java serialization.
  */
 public class Serializer {
 
+    /**
+     * Default upper bound for a single frame payload (16 MB).
+     * Large enough for a full "show" of a big collection, small enough
+     * that a corrupted length header cannot make us allocate gigabytes.
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
     /**
      * Converts a Serializable object to a byte array.
      * 
@@ -65,7 +77,26 @@ public class Serializer {
      * @throws IOException If serialization fails
      */
     public static byte[] serializeWithLength(Serializable obj) throws IOException {
+        return serializeWithLength(obj, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Serializes an object with a length header, refusing payloads
+     * larger than the given limit.
+     * 
+     * The receiving side drops frames above its own limit, so checking
+     * here gives the sender a clear error instead of a dropped connection.
+     * 
+     * @param obj The object to serialize
+     * @param maxFrameSize Largest allowed payload in bytes
+     * @return Byte array with length header + serialized data
+     * @throws IOException If serialization fails or the payload is too large
+     */
+    public static byte[] serializeWithLength(Serializable obj, int maxFrameSize) throws IOException {
         byte[] data = serialize(obj);
+        if (data.length > maxFrameSize) {
+            throw new IOException("Frame of " + data.length + " bytes exceeds limit of " + maxFrameSize);
+        }
         byte[] length = intToBytes(data.length);
         byte[] result = new byte[4 + data.length];
         System.arraycopy(length, 0, result, 0, 4);
@@ -73,6 +104,76 @@ public class Serializer {
         return result;
     }
 
+    /**
+     * Serializes an object into a pooled buffer as a complete frame
+     * (4-byte length header followed by the payload).
+     * 
+     * Avoids the intermediate byte arrays of serializeWithLength. The
+     * returned buffer is ready for writing to a channel (flipped) and
+     * must be given back with pool.release() once the write is done.
+     * 
+     * @param obj The object to serialize
+     * @param pool Pool to take the buffer from
+     * @param maxFrameSize Largest allowed payload in bytes
+     * @return Flipped buffer holding header + payload
+     * @throws IOException If serialization fails or the payload is too large
+     */
+    public static ByteBuffer serializeFrame(Serializable obj, BufferPool pool, int maxFrameSize) throws IOException {
+        return serializeFrame(obj, JavaCodec.INSTANCE, pool, maxFrameSize);
+    }
+
+    /**
+     * Encodes an object with the given codec into a pooled frame buffer.
+     * Same contract as serializeFrame(obj, pool, maxFrameSize).
+     * 
+     * @param obj The object to encode
+     * @param codec Codec negotiated for the connection
+     * @param pool Pool to take the buffer from
+     * @param maxFrameSize Largest allowed payload in bytes
+     * @return Flipped buffer holding header + payload
+     * @throws IOException If encoding fails or the payload is too large
+     */
+    public static ByteBuffer serializeFrame(Serializable obj, WireCodec codec, BufferPool pool, int maxFrameSize)
+            throws IOException {
+        try (ByteBufferOutputStream out = new ByteBufferOutputStream(pool, 4096,
+                (int) Math.min(Integer.MAX_VALUE, (long) maxFrameSize + FrameDecoder.HEADER_SIZE))) {
+            out.reserve(FrameDecoder.HEADER_SIZE);
+            codec.encode(obj, out);
+            ByteBuffer frame = out.detach();
+            frame.putInt(0, frame.position() - FrameDecoder.HEADER_SIZE);
+            frame.flip();
+            return frame;
+        }
+    }
+
+    /**
+     * Builds a complete HELLO frame for the codec handshake.
+     * 
+     * @param pool Pool to take the buffer from
+     * @param codecs Codecs to offer, or the single codec chosen
+     * @return Flipped buffer holding header + HELLO payload
+     */
+    public static ByteBuffer helloFrame(BufferPool pool, WireCodec... codecs) {
+        byte[] payload = WireCodec.hello(codecs);
+        ByteBuffer frame = pool.acquire(FrameDecoder.HEADER_SIZE + payload.length);
+        frame.putInt(payload.length).put(payload).flip();
+        return frame;
+    }
+
+    /**
+     * Decodes a frame payload with the given codec.
+     * 
+     * @param codec Codec negotiated for the connection
+     * @param data The frame payload
+     * @return The decoded object
+     * @throws IOException If the payload is malformed
+     * @throws ClassNotFoundException If an embedded class cannot be found
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Serializable> T decode(WireCodec codec, byte[] data) throws IOException, ClassNotFoundException {
+        return (T) codec.decode(data);
+    }
+
     /**
      * Deserializes data that was serialized with serializeWithLength.
      * 
@@ -13,9 +13,20 @@ import java.time.LocalDateTime;
  * - Number of active client connections
  * - Size of the music band collection
  * - Server start time
+ * - Request scheduler mode, queue depth and rejected requests
+ * - Buffer pool hits and misses
+ * - Bytes and frames sent, dropped notifications and slow-consumer disconnects
+ * - Response cache hits and misses
+ * - Database connection pool usage and how long borrows waited
  */
 public class ServerStats implements Serializable {
     private static final long serialVersionUID = 1L;
+
+    /**
+     * Upper limits (exclusive, in ms) of the database borrow wait
+     * histogram buckets. The histogram has one more bucket for longer waits.
+     */
+    public static final long[] DB_WAIT_BUCKETS_MS = {1, 5, 25, 100, 500};
     
     /** How long server has been running in milliseconds */
     private long uptimeMillis;
@@ -41,6 +52,78 @@ public class ServerStats implements Serializable {
     /** Whether the server is healthy (true if running) */
     private boolean isHealthy;
 
+    /** Request scheduling mode (BOUNDED, WORK_STEALING or VIRTUAL) */
+    private String schedulerMode;
+
+    /** Number of requests waiting for a worker thread */
+    private int queueDepth;
+
+    /** Number of requests rejected because the server was busy */
+    private long rejectedRequests;
+
+    /** Buffer acquisitions served from the pool */
+    private long bufferPoolHits;
+
+    /** Buffer acquisitions that had to allocate */
+    private long bufferPoolMisses;
+
+    /** Bytes written to all clients */
+    private long bytesSent;
+
+    /** Frames written to all clients */
+    private long framesSent;
+
+    /** Notifications dropped for clients over the write high-water mark */
+    private long droppedNotifications;
+
+    /** Clients disconnected for falling too far behind */
+    private long slowConsumerDisconnects;
+
+    /** Read-only requests answered from the response cache */
+    private long responseCacheHits;
+
+    /** Cacheable requests that had to run the command */
+    private long responseCacheMisses;
+
+    /** Database connections lent out */
+    private int dbPoolActive;
+
+    /** Database connections open and idle */
+    private int dbPoolIdle;
+
+    /** Threads waiting for a database connection */
+    private int dbPoolWaiting;
+
+    /** Borrows per wait bucket (see DB_WAIT_BUCKETS_MS), empty if no pool */
+    private long[] dbBorrowWaitHistogram = new long[0];
+
+    /** Command history rows waiting to be written */
+    private int historyQueueDepth;
+
+    /** Command history rows written */
+    private long historyWritten;
+
+    /** Command history rows dropped (queue full or write failed) */
+    private long historyDropped;
+
+    /** Average time to write a batch of history rows, in microseconds */
+    private long historyFlushAvgMicros;
+
+    /** Longest time to write a batch of history rows, in microseconds */
+    private long historyFlushMaxMicros;
+
+    /** Logins owning at least one band */
+    private int collectionOwners;
+
+    /** Lowest band ID (0 if the collection is empty) */
+    private long collectionMinId;
+
+    /** Highest band ID (0 if the collection is empty) */
+    private long collectionMaxId;
+
+    /** Reconciliation checks that found a different band count in the database */
+    private long reconcileMismatches;
+
     /**
      * Default constructor required for deserialization.
      */
@@ -126,4 +209,131 @@ public class ServerStats implements Serializable {
 
     public boolean isHealthy() { return isHealthy; }
     public void setHealthy(boolean healthy) { isHealthy = healthy; }
+
+    public String getSchedulerMode() { return schedulerMode; }
+    public void setSchedulerMode(String schedulerMode) { this.schedulerMode = schedulerMode; }
+
+    public int getQueueDepth() { return queueDepth; }
+    public void setQueueDepth(int queueDepth) { this.queueDepth = queueDepth; }
+
+    public long getRejectedRequests() { return rejectedRequests; }
+    public void setRejectedRequests(long rejectedRequests) { this.rejectedRequests = rejectedRequests; }
+
+    public long getBufferPoolHits() { return bufferPoolHits; }
+    public void setBufferPoolHits(long bufferPoolHits) { this.bufferPoolHits = bufferPoolHits; }
+
+    public long getBufferPoolMisses() { return bufferPoolMisses; }
+    public void setBufferPoolMisses(long bufferPoolMisses) { this.bufferPoolMisses = bufferPoolMisses; }
+
+    public long getBytesSent() { return bytesSent; }
+    public void setBytesSent(long bytesSent) { this.bytesSent = bytesSent; }
+
+    public long getFramesSent() { return framesSent; }
+    public void setFramesSent(long framesSent) { this.framesSent = framesSent; }
+
+    public long getDroppedNotifications() { return droppedNotifications; }
+    public void setDroppedNotifications(long droppedNotifications) { this.droppedNotifications = droppedNotifications; }
+
+    public long getSlowConsumerDisconnects() { return slowConsumerDisconnects; }
+    public void setSlowConsumerDisconnects(long slowConsumerDisconnects) { this.slowConsumerDisconnects = slowConsumerDisconnects; }
+
+    public long getResponseCacheHits() { return responseCacheHits; }
+    public void setResponseCacheHits(long responseCacheHits) { this.responseCacheHits = responseCacheHits; }
+
+    public long getResponseCacheMisses() { return responseCacheMisses; }
+    public void setResponseCacheMisses(long responseCacheMisses) { this.responseCacheMisses = responseCacheMisses; }
+
+    public int getDbPoolActive() { return dbPoolActive; }
+    public void setDbPoolActive(int dbPoolActive) { this.dbPoolActive = dbPoolActive; }
+
+    public int getDbPoolIdle() { return dbPoolIdle; }
+    public void setDbPoolIdle(int dbPoolIdle) { this.dbPoolIdle = dbPoolIdle; }
+
+    public int getDbPoolWaiting() { return dbPoolWaiting; }
+    public void setDbPoolWaiting(int dbPoolWaiting) { this.dbPoolWaiting = dbPoolWaiting; }
+
+    public long[] getDbBorrowWaitHistogram() { return dbBorrowWaitHistogram; }
+    public void setDbBorrowWaitHistogram(long[] dbBorrowWaitHistogram) { this.dbBorrowWaitHistogram = dbBorrowWaitHistogram; }
+
+    public int getHistoryQueueDepth() { return historyQueueDepth; }
+    public void setHistoryQueueDepth(int historyQueueDepth) { this.historyQueueDepth = historyQueueDepth; }
+
+    public long getHistoryWritten() { return historyWritten; }
+    public void setHistoryWritten(long historyWritten) { this.historyWritten = historyWritten; }
+
+    public long getHistoryDropped() { return historyDropped; }
+    public void setHistoryDropped(long historyDropped) { this.historyDropped = historyDropped; }
+
+    public long getHistoryFlushAvgMicros() { return historyFlushAvgMicros; }
+    public void setHistoryFlushAvgMicros(long historyFlushAvgMicros) { this.historyFlushAvgMicros = historyFlushAvgMicros; }
+
+    public long getHistoryFlushMaxMicros() { return historyFlushMaxMicros; }
+    public void setHistoryFlushMaxMicros(long historyFlushMaxMicros) { this.historyFlushMaxMicros = historyFlushMaxMicros; }
+
+    public int getCollectionOwners() { return collectionOwners; }
+    public void setCollectionOwners(int collectionOwners) { this.collectionOwners = collectionOwners; }
+
+    public long getCollectionMinId() { return collectionMinId; }
+    public void setCollectionMinId(long collectionMinId) { this.collectionMinId = collectionMinId; }
+
+    public long getCollectionMaxId() { return collectionMaxId; }
+    public void setCollectionMaxId(long collectionMaxId) { this.collectionMaxId = collectionMaxId; }
+
+    public long getReconcileMismatches() { return reconcileMismatches; }
+    public void setReconcileMismatches(long reconcileMismatches) { this.reconcileMismatches = reconcileMismatches; }
+
+    /**
+     * Gets the share of cacheable requests answered from the cache.
+     * 
+     * @return Hit rate from 0 to 100 percent
+     */
+    public double getResponseCacheHitRate() {
+        long total = responseCacheHits + responseCacheMisses;
+        return total == 0 ? 0 : responseCacheHits * 100.0 / total;
+    }
+
+    /**
+     * Formats the database pool usage.
+     * Example output: "1 active, 3 idle, 0 waiting (waits <1ms: 120, <5ms: 2, ..., >=500ms: 0)"
+     * 
+     * @return Formatted pool usage
+     */
+    public String getDbPoolFormatted() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(dbPoolActive).append(" active, ").append(dbPoolIdle).append(" idle, ")
+            .append(dbPoolWaiting).append(" waiting");
+        if (dbBorrowWaitHistogram.length == DB_WAIT_BUCKETS_MS.length + 1) {
+            sb.append(" (waits");
+            for (int i = 0; i < DB_WAIT_BUCKETS_MS.length; i++) {
+                sb.append(i == 0 ? " " : ", ").append('<').append(DB_WAIT_BUCKETS_MS[i]).append("ms: ")
+                    .append(dbBorrowWaitHistogram[i]);
+            }
+            sb.append(", >=").append(DB_WAIT_BUCKETS_MS[DB_WAIT_BUCKETS_MS.length - 1]).append("ms: ")
+                .append(dbBorrowWaitHistogram[DB_WAIT_BUCKETS_MS.length]).append(')');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Formats the command history writer's state.
+     * Example output: "2 queued, 1200 written, 0 dropped (flush avg 1.4 ms, max 12.0 ms)"
+     * 
+     * @return Formatted history writer state
+     */
+    public String getHistoryFormatted() {
+        return historyQueueDepth + " queued, " + historyWritten + " written, " + historyDropped + " dropped"
+            + String.format(" (flush avg %.1f ms, max %.1f ms)", historyFlushAvgMicros / 1000.0, historyFlushMaxMicros / 1000.0);
+    }
+
+    /**
+     * Formats the collection counters.
+     * Example output: "3 owners, IDs 1..250, 0 reconcile mismatches"
+     * 
+     * @return Formatted collection counters
+     */
+    public String getCollectionFormatted() {
+        return collectionOwners + " owners, IDs "
+            + (collectionSize == 0 ? "none" : collectionMinId + ".." + collectionMaxId)
+            + ", " + reconcileMismatches + " reconcile mismatches";
+    }
 }
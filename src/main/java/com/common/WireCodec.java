@@ -0,0 +1,127 @@
+package com.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * Turns messages into frame payloads and back.
+ *
+ * Two codecs exist:
+ * - JavaCodec: Java object serialization (the original format, always supported)
+ * - BinaryCodec: hand-written compact format for Request, Response and the model
+ *
+ * Which one a connection uses is decided by a handshake right after
+ * connecting. The client sends a HELLO frame listing the codecs it
+ * supports, and the server answers with a HELLO frame naming the one it
+ * picked. A client that starts with a normal request instead (an older
+ * client) simply keeps using Java serialization.
+ *
+ * HELLO payload: the 4 magic bytes 'M' 'B' 'W' 1, followed by one byte per
+ * codec id. The magic can never be mistaken for a message: Java
+ * serialization starts with 0xACED and binary messages with a small tag.
+ */
+public interface WireCodec {
+
+    /** Magic bytes at the start of a HELLO frame */
+    byte[] HELLO_MAGIC = {'M', 'B', 'W', 1};
+
+    /**
+     * Gets the id sent in HELLO frames for this codec.
+     *
+     * @return Codec id
+     */
+    byte getId();
+
+    /**
+     * Gets a readable name for logs and health output.
+     *
+     * @return Codec name
+     */
+    String getName();
+
+    /**
+     * Writes a message to the stream.
+     *
+     * @param obj The message (Request, Response or a model object)
+     * @param out Stream to write to - not closed
+     * @throws IOException If encoding fails
+     */
+    void encode(Serializable obj, OutputStream out) throws IOException;
+
+    /**
+     * Reads a message from a frame payload.
+     *
+     * @param data The payload bytes
+     * @return The decoded message
+     * @throws IOException If the payload is malformed
+     * @throws ClassNotFoundException If an embedded Java object has an unknown class
+     */
+    Serializable decode(byte[] data) throws IOException, ClassNotFoundException;
+
+    /**
+     * Finds a codec by its HELLO id.
+     *
+     * @param id Codec id
+     * @return The codec, or null if unknown
+     */
+    static WireCodec forId(byte id) {
+        if (id == JavaCodec.INSTANCE.getId()) {
+            return JavaCodec.INSTANCE;
+        }
+        if (id == BinaryCodec.INSTANCE.getId()) {
+            return BinaryCodec.INSTANCE;
+        }
+        return null;
+    }
+
+    /**
+     * Finds a codec by name as given on the command line ("java" or "binary").
+     *
+     * @param name Codec name
+     * @return The codec
+     * @throws IllegalArgumentException If the name is unknown
+     */
+    static WireCodec forName(String name) {
+        if (JavaCodec.INSTANCE.getName().equalsIgnoreCase(name)) {
+            return JavaCodec.INSTANCE;
+        }
+        if (BinaryCodec.INSTANCE.getName().equalsIgnoreCase(name)) {
+            return BinaryCodec.INSTANCE;
+        }
+        throw new IllegalArgumentException("Unknown codec: " + name);
+    }
+
+    /**
+     * Builds a HELLO payload.
+     *
+     * @param codecs Codecs to offer (client) or the chosen codec (server)
+     * @return HELLO payload bytes
+     */
+    static byte[] hello(WireCodec... codecs) {
+        byte[] payload = new byte[HELLO_MAGIC.length + codecs.length];
+        System.arraycopy(HELLO_MAGIC, 0, payload, 0, HELLO_MAGIC.length);
+        for (int i = 0; i < codecs.length; i++) {
+            payload[HELLO_MAGIC.length + i] = codecs[i].getId();
+        }
+        return payload;
+    }
+
+    /**
+     * Checks whether a frame payload is a HELLO frame.
+     *
+     * @param payload Frame payload
+     * @return true if it starts with the HELLO magic
+     */
+    static boolean isHello(byte[] payload) {
+        if (payload.length < HELLO_MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < HELLO_MAGIC.length; i++) {
+            if (payload[i] != HELLO_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,350 @@
+package com.server;
+
+import com.model.Album;
+import com.model.Coordinates;
+import com.model.MusicBand;
+import com.model.MusicGenre;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.CopyOut;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Bulk transfer of bands with PostgreSQL's COPY protocol.
+ *
+ * A COPY streams all rows through one statement, without a round trip
+ * or a parsed INSERT per row, which makes it much faster than single
+ * INSERTs for large collections (see BulkCopyBenchmark). Rows travel as
+ * CSV:
+ * - copyIn() writes bands with COPY ... FROM STDIN, flushing the CSV in
+ *   chunks of CHUNK_CHARS while it is generated
+ * - copyOut() reads rows with COPY (SELECT ...) TO STDOUT and turns every
+ *   row straight into a MusicBand
+ * - loadAll() splits a large table into ID ranges and copies them out in
+ *   parallel, each on its own pooled connection
+ *
+ * Works on pooled connections too (they unwrap to the driver's connection).
+ */
+public class BulkCopy {
+    /** Columns in the order they appear in the CSV */
+    public static final String COLUMNS = "id, name, x, y, creation_date, number_of_participants, "
+        + "description, genre, album_name, album_sales, owner_login, owner_password_hash";
+
+    /** CSV characters collected before they are sent */
+    private static final int CHUNK_CHARS = 64 * 1024;
+
+    /** Tables with fewer rows are loaded on one connection */
+    private static final long PARALLEL_LOAD_MIN_ROWS = 50_000;
+
+    private BulkCopy() {
+    }
+
+    /**
+     * Writes bands into a table with COPY FROM STDIN.
+     *
+     * @param conn Connection to use (the caller controls the transaction)
+     * @param table Table with the music_bands columns
+     * @param bands Bands to write, with their IDs
+     * @return Number of rows written
+     * @throws SQLException If the copy fails
+     */
+    public static long copyIn(Connection conn, String table, Iterable<MusicBand> bands) throws SQLException {
+        CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+        CopyIn copy = copyManager.copyIn("COPY " + table + " (" + COLUMNS + ") FROM STDIN WITH (FORMAT csv)");
+        try {
+            StringBuilder chunk = new StringBuilder(CHUNK_CHARS + 1024);
+            for (MusicBand band : bands) {
+                appendRow(chunk, band);
+                if (chunk.length() >= CHUNK_CHARS) {
+                    send(copy, chunk);
+                }
+            }
+            send(copy, chunk);
+            return copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Reads all bands of a table with COPY TO STDOUT.
+     *
+     * @param conn Connection to use
+     * @param table Table with the music_bands columns
+     * @param sink Receives every band as soon as its row arrives
+     * @return Number of rows read
+     * @throws SQLException If the copy fails or a row cannot be parsed
+     */
+    public static long copyOut(Connection conn, String table, Consumer<MusicBand> sink) throws SQLException {
+        return copyOut(conn, table, null, sink);
+    }
+
+    /**
+     * Reads the bands of a table matching a condition with COPY TO STDOUT.
+     *
+     * @param conn Connection to use
+     * @param table Table with the music_bands columns
+     * @param where SQL condition, or null for all rows
+     * @param sink Receives every band as soon as its row arrives
+     * @return Number of rows read
+     * @throws SQLException If the copy fails or a row cannot be parsed
+     */
+    public static long copyOut(Connection conn, String table, String where, Consumer<MusicBand> sink) throws SQLException {
+        CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+        CopyOut copy = copyManager.copyOut("COPY (SELECT " + COLUMNS + " FROM " + table
+            + (where != null ? " WHERE " + where : "") + ") TO STDOUT WITH (FORMAT csv)");
+        long rows = 0;
+        try {
+            byte[] row;
+            // The server sends every row in its own message
+            while ((row = copy.readFromCopy()) != null) {
+                sink.accept(parseRow(new String(row, StandardCharsets.UTF_8)));
+                rows++;
+            }
+            return rows;
+        } catch (RuntimeException e) {
+            throw new SQLException("Bad row " + (rows + 1) + " in COPY output: " + e.getMessage(), e);
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Reads all bands of a table. Large tables are split into ID ranges of
+     * about the same size (IDs are random, so they spread evenly) that are
+     * copied out in parallel on separate pooled connections.
+     *
+     * The ranges are read in separate transactions, so this is meant for
+     * startup, before anything else writes to the table.
+     *
+     * @param table Table with the music_bands columns
+     * @param threads Most ranges read at once (1 reads the table in one piece)
+     * @return All bands, in no particular order
+     * @throws SQLException If a range cannot be read
+     */
+    public static List<MusicBand> loadAll(String table, int threads) throws SQLException {
+        long[] bounds = DatabaseManager.inTransaction(conn -> {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT count(*), min(id), max(id) FROM " + table)) {
+                rs.next();
+                return new long[] {rs.getLong(1), rs.getLong(2), rs.getLong(3)};
+            }
+        });
+        long rows = bounds[0];
+        long span = bounds[2] - bounds[1];
+        // span < 0: the IDs are too far apart to split without overflowing
+        int ranges = rows < PARALLEL_LOAD_MIN_ROWS || span < 0 ? 1 : Math.max(1, threads);
+        if (ranges == 1) {
+            List<MusicBand> bands = new ArrayList<>((int) Math.min(rows, Integer.MAX_VALUE - 8));
+            DatabaseManager.inTransaction(conn -> copyOut(conn, table, bands::add));
+            return bands;
+        }
+
+        long min = bounds[1];
+        long step = span / ranges + 1;
+        ExecutorService pool = Executors.newFixedThreadPool(ranges, runnable -> {
+            Thread thread = new Thread(runnable, "band-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<List<MusicBand>>> parts = new ArrayList<>();
+            for (int i = 0; i < ranges; i++) {
+                long from = min + step * i;
+                // Last range is open-ended, so rounding cannot lose rows
+                String where = i == ranges - 1 ? "id >= " + from : "id >= " + from + " AND id < " + (from + step);
+                parts.add(pool.submit(() -> {
+                    List<MusicBand> part = new ArrayList<>((int) (rows / ranges) + 1024);
+                    DatabaseManager.inTransaction(conn -> copyOut(conn, table, where, part::add));
+                    return part;
+                }));
+            }
+            List<MusicBand> bands = new ArrayList<>((int) Math.min(rows, Integer.MAX_VALUE - 8));
+            for (Future<List<MusicBand>> part : parts) {
+                bands.addAll(part.get());
+            }
+            return bands;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof SQLException ? (SQLException) cause : new SQLException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while loading " + table, e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void send(CopyIn copy, StringBuilder chunk) throws SQLException {
+        if (chunk.length() > 0) {
+            byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+            copy.writeToCopy(bytes, 0, bytes.length);
+            chunk.setLength(0);
+        }
+    }
+
+    /**
+     * Appends one band as a CSV line in COLUMNS order.
+     *
+     * @param sb Where to append
+     * @param band The band
+     */
+    public static void appendRow(StringBuilder sb, MusicBand band) {
+        sb.append(band.getId()).append(',');
+        appendText(sb, band.getName());
+        sb.append(',');
+        if (band.getCoordinates() != null) {
+            appendValue(sb, band.getCoordinates().getX());
+            sb.append(',');
+            appendValue(sb, band.getCoordinates().getY());
+        } else {
+            sb.append(',');
+        }
+        sb.append(',');
+        java.util.Date created = band.getCreationDate() != null ? band.getCreationDate() : new java.util.Date();
+        sb.append(new Timestamp(created.getTime())).append(',');
+        appendValue(sb, band.getNumberOfParticipants());
+        sb.append(',');
+        appendText(sb, band.getDescription());
+        sb.append(',');
+        appendText(sb, band.getGenre() != null ? band.getGenre().name() : null);
+        sb.append(',');
+        if (band.getBestAlbum() != null) {
+            appendText(sb, band.getBestAlbum().getName());
+            sb.append(',');
+            appendValue(sb, band.getBestAlbum().getSales());
+        } else {
+            sb.append(',');
+        }
+        sb.append(',');
+        appendText(sb, band.getOwnerLogin());
+        sb.append(',');
+        appendText(sb, band.getOwnerLogin() != null ? band.getOwnerPasswordHash() : null);
+        sb.append('\n');
+    }
+
+    /**
+     * Parses one CSV line in COLUMNS order into a band.
+     *
+     * @param line The row, with or without the trailing newline
+     * @return The band
+     */
+    public static MusicBand parseRow(String line) {
+        List<String> fields = splitRow(line);
+        if (fields.size() != 12) {
+            throw new IllegalArgumentException("expected 12 columns, got " + fields.size());
+        }
+        MusicBand band = new MusicBand();
+        band.setId(Long.parseLong(fields.get(0)));
+        band.setName(fields.get(1));
+        if (fields.get(3) != null) {
+            long x = fields.get(2) != null ? Long.parseLong(fields.get(2)) : 0;
+            band.setCoordinates(new Coordinates(x, Integer.parseInt(fields.get(3))));
+        }
+        if (fields.get(4) != null) {
+            band.setCreationDate(new java.util.Date(Timestamp.valueOf(fields.get(4)).getTime()));
+        }
+        band.setNumberOfParticipants(Integer.valueOf(fields.get(5)));
+        band.setDescription(fields.get(6));
+        if (fields.get(7) != null) {
+            band.setGenre(MusicGenre.valueOf(fields.get(7)));
+        }
+        if (fields.get(9) != null) {
+            band.setBestAlbum(new Album(fields.get(8), Double.valueOf(fields.get(9))));
+        }
+        if (fields.get(10) != null) {
+            band.setOwnerLogin(fields.get(10));
+            band.setOwnerPasswordHash(fields.get(11));
+        }
+        return band;
+    }
+
+    /**
+     * Splits a CSV line into fields. Unquoted empty fields are NULL,
+     * quoted ones are strings (so "" is an empty string).
+     */
+    private static List<String> splitRow(String line) {
+        List<String> fields = new ArrayList<>(12);
+        int end = line.length();
+        if (end > 0 && line.charAt(end - 1) == '\n') {
+            end--;
+        }
+        int i = 0;
+        while (true) {
+            if (i < end && line.charAt(i) == '"') {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= end) {
+                        throw new IllegalArgumentException("unterminated quoted field");
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < end && line.charAt(i) == '"') {
+                            value.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        value.append(c);
+                    }
+                }
+                fields.add(value.toString());
+            } else {
+                int comma = line.indexOf(',', i);
+                int stop = comma < 0 || comma > end ? end : comma;
+                fields.add(stop == i ? null : line.substring(i, stop));
+                i = stop;
+            }
+            if (i >= end) {
+                return fields;
+            }
+            // Skip the comma
+            i++;
+        }
+    }
+
+    /**
+     * Appends a string as a quoted CSV field, or nothing for NULL.
+     */
+    private static void appendText(StringBuilder sb, String value) {
+        if (value == null) {
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    private static void appendValue(StringBuilder sb, Object value) {
+        if (value != null) {
+            sb.append(value);
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package com.server;
+
+import com.common.ServerStats;
+
+import org.postgresql.PGStatement;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of JDBC connections to PostgreSQL.
+ *
+ * Opening a connection costs a TCP connect plus authentication, which
+ * used to happen for every statement. The pool keeps between minSize and
+ * maxSize connections open and lends them out:
+ * - borrow() hands out an idle connection, opens a new one if fewer than
+ *   maxSize exist, or waits (up to borrowTimeoutMs) for one to come back
+ * - close() on a borrowed connection gives it back instead of closing it
+ *   (so try-with-resources code stays the same)
+ * - a connection that sat idle for a while is checked with isValid()
+ *   before it is handed out
+ * - a background thread closes connections idle for longer than
+ *   idleTimeoutMs (down to minSize) and connections older than
+ *   maxLifetimeMs, and opens new ones up to minSize
+ *
+ * Idle connections are reused most-recently-used first, so the extra
+ * ones stay idle and get evicted.
+ *
+ * Every connection also keeps the SqlStatements it prepared (see
+ * prepare()), so they are parsed and planned once per connection.
+ *
+ * Thread-safe. All bookkeeping is guarded by the pool's monitor;
+ * connections are opened, validated and closed outside of it.
+ */
+public class ConnectionPool implements AutoCloseable {
+    /** Connections idle for less than this are handed out without isValid() */
+    private static final long VALIDATE_AFTER_IDLE_MS = 1000;
+
+    /** Seconds isValid() may take */
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    /** Longest pause between housekeeping runs */
+    private static final long MAX_HOUSEKEEPING_PERIOD_MS = 30_000;
+
+    private final String jdbcUrl;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long maxLifetimeMs;
+
+    /** Idle connections, most recently returned first */
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+
+    /** Open connections (idle + borrowed + being opened) */
+    private int total;
+
+    /** Connections lent out */
+    private int active;
+
+    /** Threads waiting in borrow() */
+    private int waiting;
+
+    private boolean closed;
+
+    /** Borrow wait times, bucketed by ServerStats.DB_WAIT_BUCKETS_MS */
+    private final LongAdder[] waitHistogram = new LongAdder[ServerStats.DB_WAIT_BUCKETS_MS.length + 1];
+
+    /** Runs evictIdle() */
+    private ScheduledExecutorService housekeeper;
+
+    /**
+     * Creates a pool. No connection is opened until start() or borrow().
+     *
+     * @param jdbcUrl JDBC URL, e.g. jdbc:postgresql://host:5432/db
+     * @param user Database user
+     * @param password Database password
+     * @param minSize Connections kept open even when idle
+     * @param maxSize Most connections open at once
+     * @param borrowTimeoutMs How long borrow() waits for a free connection
+     * @param idleTimeoutMs Idle time after which connections above minSize are closed
+     * @param maxLifetimeMs Age after which a connection is replaced
+     */
+    public ConnectionPool(String jdbcUrl, String user, String password, int minSize, int maxSize,
+                          long borrowTimeoutMs, long idleTimeoutMs, long maxLifetimeMs) {
+        this.jdbcUrl = jdbcUrl;
+        this.user = user;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxLifetimeMs = maxLifetimeMs;
+        for (int i = 0; i < waitHistogram.length; i++) {
+            waitHistogram[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Opens minSize connections and starts the housekeeping thread.
+     */
+    public synchronized void start() {
+        if (housekeeper != null) {
+            return;
+        }
+        housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, Math.min(MAX_HOUSEKEEPING_PERIOD_MS, idleTimeoutMs / 2));
+        housekeeper.scheduleWithFixedDelay(this::evictIdle, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection. Closing it gives it back to the pool.
+     *
+     * @return A valid connection
+     * @throws SQLException If no connection became free in time, the pool is
+     *         closed, or a new connection could not be opened
+     */
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + borrowTimeoutMs;
+        while (true) {
+            PooledConnection candidate = null;
+            synchronized (this) {
+                waiting++;
+                try {
+                    while (true) {
+                        if (closed) {
+                            throw new SQLException("Connection pool is closed");
+                        }
+                        candidate = idle.pollFirst();
+                        if (candidate != null || total < maxSize) {
+                            break;
+                        }
+                        long left = deadline - System.currentTimeMillis();
+                        if (left <= 0) {
+                            throw new SQLException("Timed out after " + borrowTimeoutMs
+                                + "ms waiting for a database connection (" + maxSize + " in use)");
+                        }
+                        try {
+                            wait(left);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new SQLException("Interrupted while waiting for a database connection", e);
+                        }
+                    }
+                    if (candidate == null) {
+                        // Reserve the slot before opening outside the lock
+                        total++;
+                    }
+                    active++;
+                } finally {
+                    waiting--;
+                }
+            }
+
+            if (candidate == null) {
+                try {
+                    candidate = open();
+                } catch (SQLException e) {
+                    discarded(true);
+                    throw e;
+                }
+            } else if (!isUsable(candidate)) {
+                closeQuietly(candidate);
+                discarded(true);
+                continue;
+            }
+            recordWait((System.nanoTime() - start) / 1_000_000);
+            return lease(candidate);
+        }
+    }
+
+    /**
+     * Takes a connection back from a borrower.
+     */
+    private void release(PooledConnection pooled) {
+        boolean keep = !expired(pooled, System.currentTimeMillis());
+        if (keep) {
+            try {
+                if (pooled.raw.isClosed()) {
+                    keep = false;
+                } else if (!pooled.raw.getAutoCommit()) {
+                    // Do not hand an unfinished transaction to the next borrower
+                    pooled.raw.rollback();
+                    pooled.raw.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                keep = false;
+            }
+        }
+        synchronized (this) {
+            active--;
+            if (keep && !closed) {
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.addFirst(pooled);
+                notifyAll();
+                return;
+            }
+        }
+        closeQuietly(pooled);
+        discarded(false);
+    }
+
+    /**
+     * Closes idle connections that are too old or idle for too long, then
+     * tops the pool up to minSize. Runs on the housekeeping thread.
+     */
+    private void evictIdle() {
+        List<PooledConnection> toClose = new ArrayList<>();
+        int toOpen;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            // Oldest returned are at the end
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                boolean idleTooLong = now - pooled.lastUsed > idleTimeoutMs && total - toClose.size() > minSize;
+                if (idleTooLong || expired(pooled, now)) {
+                    it.remove();
+                    toClose.add(pooled);
+                }
+            }
+            total -= toClose.size();
+            toOpen = Math.max(0, minSize - total);
+            total += toOpen;
+        }
+        for (PooledConnection pooled : toClose) {
+            closeQuietly(pooled);
+        }
+        for (int i = 0; i < toOpen; i++) {
+            try {
+                PooledConnection pooled = open();
+                synchronized (this) {
+                    if (!closed) {
+                        idle.addLast(pooled);
+                        notifyAll();
+                        continue;
+                    }
+                }
+                closeQuietly(pooled);
+                discarded(false);
+            } catch (SQLException e) {
+                System.err.println("Connection pool: failed to open connection: " + e.getMessage());
+                synchronized (this) {
+                    total -= toOpen - i;
+                    notifyAll();
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Closes idle connections and stops housekeeping. Borrowed connections
+     * are closed when they are given back.
+     */
+    @Override
+    public void close() {
+        List<PooledConnection> toClose;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            total -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+        }
+        for (PooledConnection pooled : toClose) {
+            closeQuietly(pooled);
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        return new PooledConnection(DriverManager.getConnection(jdbcUrl, user, password));
+    }
+
+    /**
+     * Checks an idle connection before lending it out.
+     */
+    private boolean isUsable(PooledConnection pooled) {
+        long now = System.currentTimeMillis();
+        if (expired(pooled, now)) {
+            return false;
+        }
+        if (now - pooled.lastUsed < VALIDATE_AFTER_IDLE_MS) {
+            return true;
+        }
+        try {
+            return pooled.raw.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean expired(PooledConnection pooled, long now) {
+        return now - pooled.createdAt > maxLifetimeMs;
+    }
+
+    /**
+     * Forgets a connection that was closed or never opened.
+     *
+     * @param wasActive Whether it was counted as borrowed
+     */
+    private synchronized void discarded(boolean wasActive) {
+        total--;
+        if (wasActive) {
+            active--;
+        }
+        notifyAll();
+    }
+
+    private static void closeQuietly(PooledConnection pooled) {
+        try {
+            pooled.raw.close();
+        } catch (SQLException e) {
+            // Already broken - nothing else to do
+        }
+    }
+
+    private void recordWait(long waitMs) {
+        long[] limits = ServerStats.DB_WAIT_BUCKETS_MS;
+        int bucket = 0;
+        while (bucket < limits.length && waitMs >= limits[bucket]) {
+            bucket++;
+        }
+        waitHistogram[bucket].increment();
+    }
+
+    /**
+     * Gets a named statement prepared on a borrowed connection.
+     *
+     * The statement is prepared (on the server, from its first execution)
+     * the first time the connection runs it and reused by every later
+     * borrower, with its parameters and batch cleared. Do not close it; it
+     * is closed with its connection. Connections that do not come from a
+     * pool get a new statement, which closes with the connection too.
+     *
+     * @param conn A connection from borrow()
+     * @param statement Which statement
+     * @return The prepared statement
+     * @throws SQLException If it cannot be prepared or conn was given back
+     */
+    public static PreparedStatement prepare(Connection conn, SqlStatement statement) throws SQLException {
+        if (Proxy.isProxyClass(conn.getClass()) && Proxy.getInvocationHandler(conn) instanceof Lease) {
+            Lease lease = (Lease) Proxy.getInvocationHandler(conn);
+            synchronized (lease) {
+                if (lease.returned) {
+                    throw new SQLException("Connection was already given back to the pool");
+                }
+            }
+            return lease.pooled.prepare(statement);
+        }
+        return conn.prepareStatement(statement.getSql());
+    }
+
+    /**
+     * Wraps a pooled connection so that close() returns it to the pool.
+     */
+    private Connection lease(PooledConnection pooled) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class}, new Lease(pooled));
+    }
+
+    public synchronized int getActive() { return active; }
+
+    public synchronized int getIdle() { return idle.size(); }
+
+    public synchronized int getWaiting() { return waiting; }
+
+    public synchronized int getTotal() { return total; }
+
+    public int getMaxSize() { return maxSize; }
+
+    /**
+     * Gets how many borrows waited how long.
+     *
+     * @return Counts per bucket of ServerStats.DB_WAIT_BUCKETS_MS, plus one
+     *         for waits above the last limit
+     */
+    public long[] getBorrowWaitHistogram() {
+        long[] counts = new long[waitHistogram.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = waitHistogram[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * A physical connection with its pool bookkeeping.
+     */
+    private static final class PooledConnection {
+        final Connection raw;
+        final long createdAt = System.currentTimeMillis();
+        volatile long lastUsed = createdAt;
+
+        /** Statements prepared on this connection (used by one borrower at a time) */
+        private final Map<SqlStatement, PreparedStatement> statements = new EnumMap<>(SqlStatement.class);
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+        }
+
+        PreparedStatement prepare(SqlStatement statement) throws SQLException {
+            PreparedStatement ps = statements.get(statement);
+            if (ps != null && !ps.isClosed()) {
+                ps.clearParameters();
+                ps.clearBatch();
+                return ps;
+            }
+            ps = raw.prepareStatement(statement.getSql());
+            if (ps.isWrapperFor(PGStatement.class)) {
+                // Use a named server-side statement from the first run, not the fifth
+                ps.unwrap(PGStatement.class).setPrepareThreshold(1);
+            }
+            statements.put(statement, ps);
+            return ps;
+        }
+    }
+
+    /**
+     * One borrow of a pooled connection. Forwards calls to the real
+     * connection until close(), which gives it back exactly once.
+     */
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (returned) {
+                            return null;
+                        }
+                        returned = true;
+                    }
+                    release(pooled);
+                    return null;
+                case "isClosed":
+                    synchronized (this) {
+                        return returned || pooled.raw.isClosed();
+                    }
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + pooled.raw;
+                default:
+                    break;
+            }
+            synchronized (this) {
+                if (returned) {
+                    throw new SQLException("Connection was already given back to the pool");
+                }
+            }
+            try {
+                return method.invoke(pooled.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.server;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes command_history rows in the background.
+ *
+ * Saving a command used to borrow a connection and run one INSERT on the
+ * request thread. The history is only read by the history command, so
+ * the request does not have to wait for it: submit() puts the row in a
+ * bounded queue and returns. A writer thread takes rows off the queue
+ * and inserts them as one JDBC batch in one transaction, either when
+ * batchSize rows are waiting or flushIntervalMs after the first one.
+ *
+ * If the queue is full (the database is slow or down) new rows are
+ * dropped and counted instead of blocking requests. Rows keep the time
+ * they were submitted, so the order in the table does not depend on
+ * when a batch is written. close() writes everything still queued.
+ */
+public class HistoryWriter implements AutoCloseable {
+    /** Log a dropped row only every this many drops */
+    private static final long DROP_LOG_EVERY = 1000;
+
+    private final BlockingQueue<Entry> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final LongAdder written = new LongAdder();
+    private final AtomicLong dropped = new AtomicLong();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    /**
+     * One command waiting to be written.
+     */
+    private static final class Entry {
+        final String sessionId;
+        final String command;
+        final long executedAt;
+
+        Entry(String sessionId, String command, long executedAt) {
+            this.sessionId = sessionId;
+            this.command = command;
+            this.executedAt = executedAt;
+        }
+    }
+
+    /**
+     * Creates the writer and starts its thread.
+     *
+     * @param capacity Rows that may wait before new ones are dropped
+     * @param batchSize Most rows per INSERT batch
+     * @param flushIntervalMs Longest time a row waits for its batch to fill
+     */
+    public HistoryWriter(int capacity, int batchSize, long flushIntervalMs) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.writer = new Thread(this::writeLoop, "history-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a command for writing. Never blocks.
+     *
+     * @param command The command text
+     * @param sessionId Who ran it
+     * @return false if the queue was full (or the writer closed) and the row was dropped
+     */
+    public boolean submit(String command, String sessionId) {
+        if (running && queue.offer(new Entry(sessionId, command, System.currentTimeMillis()))) {
+            return true;
+        }
+        long count = dropped.incrementAndGet();
+        if (count % DROP_LOG_EVERY == 1) {
+            System.err.println("Command history queue is full, dropped " + count + " row(s) so far");
+        }
+        return false;
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    // Take what is already there, then wait for the rest until the deadline
+                    Entry next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                // close() is waiting - write what we have and finish the queue
+                queue.drainTo(batch);
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Entry> batch) {
+        long started = System.nanoTime();
+        try {
+            DatabaseManager.inTransaction(conn -> {
+                PreparedStatement ps = DatabaseManager.prepare(conn, SqlStatement.INSERT_HISTORY);
+                for (Entry entry : batch) {
+                    ps.setString(1, entry.sessionId);
+                    ps.setString(2, entry.command);
+                    ps.setTimestamp(3, new Timestamp(entry.executedAt));
+                    ps.addBatch();
+                }
+                return ps.executeBatch();
+            });
+            written.add(batch.size());
+        } catch (SQLException e) {
+            dropped.addAndGet(batch.size());
+            System.err.println("Failed to save " + batch.size() + " command history row(s): " + e.getMessage());
+        }
+        long elapsed = System.nanoTime() - started;
+        flushes.increment();
+        flushNanos.add(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    /**
+     * Stops taking rows, writes the queued ones and waits for the writer
+     * (at most a few seconds, in case the database hangs).
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(5000);
+            if (writer.isAlive()) {
+                writer.interrupt();
+                writer.join(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            System.err.println("Command history: " + queue.size() + " row(s) not written on shutdown");
+        }
+    }
+
+    // Getters below
+
+    public int getQueueDepth() { return queue.size(); }
+
+    public long getWritten() { return written.sum(); }
+
+    public long getDropped() { return dropped.get(); }
+
+    /**
+     * Gets the average time a batch took to write.
+     *
+     * @return Microseconds per batch, 0 before the first batch
+     */
+    public long getAverageFlushMicros() {
+        long count = flushes.sum();
+        return count == 0 ? 0 : flushNanos.sum() / count / 1000;
+    }
+
+    public long getMaxFlushMicros() { return maxFlushNanos.get() / 1000; }
+}
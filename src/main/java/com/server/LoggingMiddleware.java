@@ -128,6 +128,9 @@ public class LoggingMiddleware {
             // Don't log actual band objects - just indicate presence
             if (value instanceof com.model.MusicBand) {
                 sb.append(key).append("=[MusicBand]");
+            } else if (key.equals("password") || key.equals("passwordHash") || key.equals("session")) {
+                // Credentials and session tokens stay out of the log
+                sb.append(key).append("=***");
             } else {
                 sb.append(key).append("=").append(value);
             }
@@ -0,0 +1,361 @@
+package com.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Applies the SQL migrations from the migrations resource directory.
+ *
+ * Migrations are files named V{version}__{description}.sql. Every applied
+ * migration is recorded in the schema_version table with a checksum of
+ * its file, so on startup only the migrations that are not in the table
+ * yet run - a restart of an up-to-date database executes no DDL or DML,
+ * just one SELECT.
+ *
+ * Each migration runs in its own transaction together with its
+ * schema_version row, so a failed migration leaves nothing behind and is
+ * tried again on the next start. Migrations after a failed one are not
+ * run.
+ *
+ * Databases set up before schema_version existed (the old runner executed
+ * every file on every start and ignored "already exists" errors) are
+ * recognised by an existing music_bands table while schema_version has no
+ * rows. Their migrations are run once more in the same tolerant way and
+ * then recorded, all in one transaction: if the tolerant pass fails, no
+ * row is left behind and the next start still treats the database as
+ * an old one, instead of running the rest of the migrations strictly and
+ * failing on tables the old runner already created.
+ *
+ * A migration whose file changed after it was applied is reported, but
+ * not run again - changes belong in a new migration.
+ */
+public class MigrationRunner {
+    /** Directory of the migration files on the classpath */
+    private static final String LOCATION = "migrations";
+
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    /** SQLSTATEs of "already exists" errors (duplicate table, column, object, schema) */
+    private static final List<String> DUPLICATE_STATES = List.of("42P07", "42701", "42710", "42P06");
+
+    private static final String CREATE_TABLE = "CREATE TABLE schema_version ("
+        + "version INTEGER PRIMARY KEY, "
+        + "description VARCHAR(200) NOT NULL, "
+        + "script VARCHAR(255) NOT NULL, "
+        + "checksum BIGINT NOT NULL, "
+        + "installed_on TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+        + "execution_ms INTEGER NOT NULL)";
+
+    /**
+     * One migration file.
+     */
+    static class Migration {
+        final int version;
+        final String description;
+        final String script;
+        final String sql;
+        final long checksum;
+
+        Migration(int version, String description, String script, String sql) {
+            this.version = version;
+            this.description = description;
+            this.script = script;
+            this.sql = sql;
+            this.checksum = checksum(sql);
+        }
+    }
+
+    private MigrationRunner() {
+    }
+
+    /**
+     * Applies all pending migrations.
+     *
+     * @throws SQLException If schema_version cannot be read or a migration fails
+     */
+    public static void migrate() throws SQLException {
+        List<Migration> migrations;
+        try {
+            migrations = discover();
+        } catch (IOException e) {
+            throw new SQLException("Cannot read migrations: " + e.getMessage(), e);
+        }
+
+        boolean legacy;
+        Map<Integer, Long> applied;
+        try (Connection conn = DatabaseManager.getPool().borrow()) {
+            if (!tableExists(conn, "schema_version")) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(CREATE_TABLE);
+                } catch (SQLException e) {
+                    // Another server created it at the same time
+                    if (!DUPLICATE_STATES.contains(e.getSQLState())) {
+                        throw e;
+                    }
+                }
+            }
+            applied = readApplied(conn);
+            legacy = applied.isEmpty() && tableExists(conn, "music_bands");
+        }
+
+        List<Migration> toApply = new ArrayList<>();
+        for (Migration migration : migrations) {
+            Long checksum = applied.get(migration.version);
+            if (checksum == null) {
+                toApply.add(migration);
+            } else if (checksum != migration.checksum) {
+                System.out.println("Warning: migration " + migration.script
+                    + " was changed after it was applied, the change is ignored");
+            }
+        }
+        if (legacy && !toApply.isEmpty()) {
+            System.out.println("Database predates schema_version - recording its migrations");
+            apply(toApply, true);
+        } else {
+            for (Migration migration : toApply) {
+                apply(List.of(migration), false);
+            }
+        }
+        int pending = toApply.size();
+        int latest = migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version;
+        if (pending == 0) {
+            System.out.println("Schema is up to date (version " + latest + ")");
+        } else {
+            System.out.println("Applied " + pending + " migration(s), schema is at version " + latest);
+        }
+    }
+
+    /**
+     * Runs migrations and records them, all in one transaction.
+     *
+     * @param batch Migrations to run, lowest version first
+     * @param tolerant Whether "already exists" errors are ignored
+     */
+    private static void apply(List<Migration> batch, boolean tolerant) throws SQLException {
+        Map<Migration, Integer> done = DatabaseManager.inTransaction(conn -> {
+            // Execution time of every migration that ran, in ms
+            Map<Migration, Integer> ran = new LinkedHashMap<>();
+            try (Statement stmt = conn.createStatement()) {
+                // Makes concurrently starting servers apply migrations one at a time
+                stmt.execute("LOCK TABLE schema_version IN EXCLUSIVE MODE");
+                for (Migration migration : batch) {
+                    try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM schema_version WHERE version = " + migration.version)) {
+                        if (rs.next()) {
+                            System.out.println("Migration " + migration.script + " was applied by another server");
+                            continue;
+                        }
+                    }
+                    System.out.println("Running migration: " + migration.script);
+                    long migrationStarted = System.nanoTime();
+                    for (String sql : splitStatements(migration.sql)) {
+                        if (tolerant) {
+                            executeTolerant(conn, stmt, sql);
+                        } else {
+                            stmt.execute(sql);
+                        }
+                    }
+                    int elapsedMs = (int) ((System.nanoTime() - migrationStarted) / 1_000_000);
+                    record(conn, migration, elapsedMs);
+                    ran.put(migration, elapsedMs);
+                }
+            }
+            return ran;
+        });
+        for (Map.Entry<Migration, Integer> entry : done.entrySet()) {
+            System.out.println("Migration completed: " + entry.getKey().script + " (" + entry.getValue() + " ms)");
+        }
+    }
+
+    /**
+     * Adds the schema_version row of a migration.
+     */
+    private static void record(Connection conn, Migration migration, int elapsedMs) throws SQLException {
+        try (PreparedStatement insert = conn.prepareStatement("INSERT INTO schema_version "
+                + "(version, description, script, checksum, execution_ms) VALUES (?, ?, ?, ?, ?)")) {
+            insert.setInt(1, migration.version);
+            insert.setString(2, migration.description);
+            insert.setString(3, migration.script);
+            insert.setLong(4, migration.checksum);
+            insert.setInt(5, elapsedMs);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Runs a statement, skipping it if what it creates already exists.
+     */
+    private static void executeTolerant(Connection conn, Statement stmt, String sql) throws SQLException {
+        Savepoint savepoint = conn.setSavepoint();
+        try {
+            stmt.execute(sql);
+            conn.releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            if (!DUPLICATE_STATES.contains(e.getSQLState())) {
+                throw e;
+            }
+            conn.rollback(savepoint);
+        }
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static Map<Integer, Long> readApplied(Connection conn) throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Finds the migration files, in version order.
+     *
+     * Looks in the migrations directory on the classpath (a directory or
+     * inside the jar), and falls back to ./migrations when running from
+     * the source tree.
+     *
+     * @return The migrations, lowest version first
+     * @throws IOException If a file cannot be read or two share a version
+     */
+    static List<Migration> discover() throws IOException {
+        Map<Integer, Migration> found = new TreeMap<>();
+        for (String name : listScripts()) {
+            Matcher matcher = FILE_NAME.matcher(name);
+            if (!matcher.matches()) {
+                continue;
+            }
+            int version = Integer.parseInt(matcher.group(1));
+            String sql;
+            try (InputStream is = MigrationRunner.class.getClassLoader().getResourceAsStream(LOCATION + "/" + name)) {
+                if (is != null) {
+                    sql = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+                } else {
+                    sql = Files.readString(Paths.get(LOCATION, name));
+                }
+            }
+            Migration migration = new Migration(version, matcher.group(2).replace('_', ' '), name, sql);
+            Migration other = found.put(version, migration);
+            if (other != null) {
+                throw new IOException("Migrations " + other.script + " and " + name + " have the same version");
+            }
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    private static List<String> listScripts() throws IOException {
+        List<String> names = new ArrayList<>();
+        URL url = MigrationRunner.class.getClassLoader().getResource(LOCATION);
+        if (url != null && url.getProtocol().equals("jar")) {
+            JarFile jar = ((JarURLConnection) url.openConnection()).getJarFile();
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                String entry = entries.nextElement().getName();
+                if (entry.startsWith(LOCATION + "/") && entry.indexOf('/', LOCATION.length() + 1) < 0) {
+                    names.add(entry.substring(LOCATION.length() + 1));
+                }
+            }
+            return names;
+        }
+        Path dir;
+        try {
+            dir = url != null ? Paths.get(url.toURI()) : Paths.get(LOCATION);
+        } catch (URISyntaxException e) {
+            throw new IOException("Bad migrations location " + url, e);
+        }
+        if (!Files.isDirectory(dir)) {
+            System.out.println("Migrations directory not found: " + dir);
+            return names;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> names.add(file.getFileName().toString()));
+        }
+        return names;
+    }
+
+    /**
+     * Splits a script into statements at semicolons, skipping -- comments
+     * and keeping semicolons inside quoted strings.
+     *
+     * @param sql The script
+     * @return The statements, without the semicolons
+     */
+    static List<String> splitStatements(String sql) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (!quoted && c == '-' && i + 1 < sql.length() && sql.charAt(i + 1) == '-') {
+                // Comment up to the end of the line
+                while (i < sql.length() && sql.charAt(i) != '\n') {
+                    i++;
+                }
+                current.append('\n');
+                continue;
+            }
+            if (c == '\'') {
+                quoted = !quoted;
+            }
+            if (c == ';' && !quoted) {
+                addStatement(statements, current);
+            } else {
+                current.append(c);
+            }
+        }
+        addStatement(statements, current);
+        return statements;
+    }
+
+    private static void addStatement(List<String> statements, StringBuilder current) {
+        String statement = current.toString().trim();
+        if (!statement.isEmpty()) {
+            statements.add(statement);
+        }
+        current.setLength(0);
+    }
+
+    /**
+     * CRC32 of a script, ignoring line ending differences.
+     */
+    static long checksum(String sql) {
+        CRC32 crc = new CRC32();
+        crc.update(sql.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
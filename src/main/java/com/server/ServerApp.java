@@ -2,19 +2,28 @@ package com.server;
 
 import com.server.network.AsyncServer;
 import com.server.network.ServerRunner;
+import com.utils.MinHeap;
+import com.utils.WriteBehindJournal;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Entry point for starting the server.
  * 
  * This class is the main entry point when running the application
  * in server mode. It:
- * 1. Initializes the MinHeap (singleton collection)
- * 2. Creates and starts the AsyncServer
- * 3. Waits for user input to stop the server
+ * 1. Initializes the database (and in write-behind mode replays the journal)
+ * 2. Initializes the MinHeap (singleton collection)
+ * 3. Creates and starts the AsyncServer
+ * 4. Schedules the reconciliation check of the collection counters
+ * 5. Waits for user input to stop the server
  * 
  * Usage:
  *   java -jar app.jar --server
  *   java -jar app.jar --server --port 8080
+ *   java -jar app.jar --server --max-frame-size 33554432
  */
 public class ServerApp {
     /** Default port if none specified */
@@ -23,17 +32,38 @@ public class ServerApp {
     /** Reference to the running server */
     private static AsyncServer server;
 
+    /** Journal in write-behind mode, null otherwise */
+    private static WriteBehindJournal journal;
+
+    /** Runs the periodic reconciliation check, null if disabled */
+    private static ScheduledExecutorService reconciler;
+
     /**
      * Starts the server on the specified port.
      * 
      * @param port The port number to listen on
      */
     public static void start(int port) {
+        start(new ServerConfig(port));
+    }
+
+    /**
+     * Starts the server with the given settings.
+     * 
+     * @param config Server settings parsed from the command line
+     */
+    public static void start(ServerConfig config) {
+        int port = config.getPort();
         System.out.println("Starting MusicBand Server on port " + port + "...");
         
         // Initialize the database
         try {
             System.out.println("Initializing PostgreSQL database...");
+            DatabaseManager.configurePool(config.getDbPoolMinSize(), config.getDbPoolMaxSize());
+            DatabaseManager.configureHistory(config.getHistoryQueueSize(), config.getHistoryBatchSize(),
+                config.getHistoryFlushMs());
+            // More loaders than connections would only wait for each other
+            MinHeap.setLoadThreads(Math.min(config.getLoadThreads(), config.getDbPoolMaxSize()));
             DatabaseManager.initialize();
             System.out.println("Database initialized successfully.");
         } catch (java.sql.SQLException e) {
@@ -41,9 +71,24 @@ public class ServerApp {
             e.printStackTrace();
             return;
         }
+
+        if (config.isWriteBehind()) {
+            // Changes from the last run must reach the database before it is loaded
+            try {
+                journal = new WriteBehindJournal(config.getJournalPath(), config.getFlushIntervalMs());
+                int replayed = journal.replay();
+                System.out.println("Write-behind journal: " + config.getJournalPath()
+                    + " (replayed " + replayed + " batches)");
+            } catch (java.io.IOException | java.sql.SQLException e) {
+                System.err.println("Failed to replay journal " + config.getJournalPath() + ": " + e.getMessage());
+                return;
+            }
+            journal.start();
+            MinHeap.getInstance().setJournal(journal);
+        }
         
         // Create the async server
-        server = new AsyncServer(port);
+        server = new AsyncServer(config);
         
         // Register the server so RequestHandler can access it for stats
         ServerRunner.setServer(server);
@@ -51,6 +96,7 @@ public class ServerApp {
         try {
             // Start the server (non-blocking)
             server.start();
+            startReconciler(config.getReconcileIntervalSeconds());
             
             // Register shutdown hook
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -61,6 +107,9 @@ public class ServerApp {
                         // ignore
                     }
                     ServerRunner.clear();
+                    stopReconciler();
+                    closeJournal();
+                    DatabaseManager.shutdown();
                 }
             }));
             
@@ -82,12 +131,61 @@ public class ServerApp {
             // Stop the server
             server.stop();
             ServerRunner.clear();
+            stopReconciler();
+            closeJournal();
+            DatabaseManager.shutdown();
         } catch (java.io.IOException e) {
             System.err.println("Failed to start server: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    /**
+     * Checks the collection counters against the database every
+     * intervalSeconds (see MinHeap.reconcileWithDatabase).
+     *
+     * @param intervalSeconds Seconds between checks, 0 to disable
+     */
+    private static synchronized void startReconciler(int intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciler.scheduleWithFixedDelay(() -> {
+            try {
+                MinHeap.getInstance().reconcileWithDatabase();
+            } catch (java.sql.SQLException e) {
+                System.err.println("Reconciliation check failed: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // An exception would cancel the schedule
+                System.err.println("Reconciliation check failed: " + e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private static synchronized void stopReconciler() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+            reconciler = null;
+        }
+    }
+
+    /**
+     * Writes out and closes the write-behind journal, if there is one.
+     * Safe to call twice (normal stop and shutdown hook).
+     */
+    private static synchronized void closeJournal() {
+        if (journal != null) {
+            MinHeap.getInstance().setJournal(null);
+            journal.close();
+            journal = null;
+        }
+    }
+
     /**
      * Main method - entry point for server mode.
      * 
@@ -0,0 +1,362 @@
+package com.server;
+
+import com.common.BinaryCodec;
+import com.common.Serializer;
+import com.common.WireCodec;
+import com.server.network.RequestScheduler;
+import com.server.network.SlowConsumerPolicy;
+
+/**
+ * Settings for running the server.
+ *
+ * Holds everything that can be tuned from the command line when the
+ * application is started with --server. Each setting has a sensible
+ * default, so a plain "java -jar app.jar --server" still works.
+ *
+ * Supported flags:
+ *   --port <n>             Port to listen on (default 8080)
+ *   --max-frame-size <n>   Largest request/response frame in bytes (default 16 MB)
+ *   --scheduler <mode>     Request processing mode: bounded, work-stealing or virtual
+ *                          (default bounded)
+ *   --workers <n>          Worker threads for request processing (default: number of cores)
+ *   --queue-limit <n>      Requests that may wait for a worker before new ones
+ *                          are rejected (default 1024)
+ *   --io-threads <n>       Threads in the server's own channel group that run
+ *                          accept/read/write callbacks (default: number of cores)
+ *   --backlog <n>          Pending connection queue length for accept (default 1024)
+ *   --recv-buffer <n>      SO_RCVBUF for client sockets in bytes (default 64 KB)
+ *   --send-buffer <n>      SO_SNDBUF for client sockets in bytes (default 64 KB)
+ *   --max-in-flight <n>    Pipelined requests per connection that may run at
+ *                          once before the server stops reading (default 32)
+ *   --write-high-water <n> Bytes that may wait in a client's write queue before
+ *                          the slow-consumer policy applies (default 4 MB)
+ *   --slow-consumer <p>    drop-notifications or disconnect (default drop-notifications)
+ *   --response-cache <n>   Read-only command/argument combinations whose encoded
+ *                          answers are cached (default 64, 0 disables)
+ *   --db-pool-min <n>      Database connections kept open when idle (default 2)
+ *   --db-pool-max <n>      Most database connections open at once (default 10)
+ *   --load-threads <n>     Connections the collection is loaded over in parallel
+ *                          at startup (default 4)
+ *   --history-queue <n>    Command history rows that may wait to be written before
+ *                          new ones are dropped (default 10000)
+ *   --history-batch <n>    Most command history rows per INSERT batch (default 100)
+ *   --history-flush <n>    Milliseconds a command history row waits for its batch
+ *                          to fill (default 200)
+ *   --reconcile-interval <n> Seconds between checks of the collection counters
+ *                          against the database row count (default 300, 0 disables)
+ *   --persistence <mode>   write-through (save to the database before answering)
+ *                          or write-behind (save to a local journal, write to the
+ *                          database in the background) (default write-through)
+ *   --journal <path>       Journal file for write-behind mode (default music_bands.journal)
+ *   --flush-interval <n>   Milliseconds between database flushes in write-behind
+ *                          mode (default 200)
+ *   --codec <name>         Wire format to accept from clients that offer it:
+ *                          binary or java (default binary; java is always
+ *                          available for older clients)
+ */
+public class ServerConfig {
+    /** Default port if none specified */
+    public static final int DEFAULT_PORT = 8080;
+
+    /** Port number to listen on */
+    private int port = DEFAULT_PORT;
+
+    /** Largest frame payload accepted or sent, in bytes */
+    private int maxFrameSize = Serializer.DEFAULT_MAX_FRAME_SIZE;
+
+    /** How decoded requests are scheduled onto threads */
+    private RequestScheduler.Mode schedulerMode = RequestScheduler.Mode.BOUNDED;
+
+    /** Number of request worker threads */
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Maximum number of requests waiting for a worker */
+    private int queueLimit = 1024;
+
+    /** Threads in the channel group that runs I/O completion handlers */
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Length of the pending connection queue */
+    private int acceptBacklog = 1024;
+
+    /** Whether Nagle's algorithm is disabled on client sockets */
+    private boolean tcpNoDelay = true;
+
+    /** SO_RCVBUF for client sockets in bytes */
+    private int receiveBufferSize = 64 * 1024;
+
+    /** SO_SNDBUF for client sockets in bytes */
+    private int sendBufferSize = 64 * 1024;
+
+    /** Unanswered requests allowed per connection */
+    private int maxInFlight = 32;
+
+    /** Queued bytes per client above which the slow-consumer policy applies */
+    private int writeHighWaterMark = 4 * 1024 * 1024;
+
+    /** What to do with clients that fall behind */
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_NOTIFICATIONS;
+
+    /** Entries in the read-only response cache (0 disables it) */
+    private int responseCacheEntries = 64;
+
+    /** Database connections kept open when idle */
+    private int dbPoolMinSize = 2;
+
+    /** Most database connections open at once */
+    private int dbPoolMaxSize = 10;
+
+    /** Connections the collection is loaded over in parallel at startup */
+    private int loadThreads = 4;
+
+    /** Command history rows that may wait to be written */
+    private int historyQueueSize = 10_000;
+
+    /** Most command history rows per INSERT batch */
+    private int historyBatchSize = 100;
+
+    /** Milliseconds a command history row waits for its batch */
+    private int historyFlushMs = 200;
+
+    /** Seconds between reconciliation checks, 0 for none */
+    private int reconcileIntervalSeconds = 300;
+
+    /** Whether changes go to a journal first and to the database later */
+    private boolean writeBehind;
+
+    /** Journal file for write-behind mode */
+    private String journalPath = "music_bands.journal";
+
+    /** Milliseconds between database flushes in write-behind mode */
+    private int flushIntervalMs = 200;
+
+    /** Codec picked for clients that offer it in their HELLO frame */
+    private WireCodec preferredCodec = BinaryCodec.INSTANCE;
+
+    /**
+     * Creates a config with default values.
+     */
+    public ServerConfig() {}
+
+    /**
+     * Creates a config with default values and the given port.
+     *
+     * @param port Port to listen on
+     */
+    public ServerConfig(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Builds a config from command line arguments.
+     * Unknown flags are ignored so that the mode flag (--server)
+     * can be passed in as well.
+     *
+     * @param args Command line arguments
+     * @return Config with defaults overridden by the given flags
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                break;
+            }
+            switch (args[i]) {
+                case "--port":
+                    config.port = parseInt(args[++i], config.port);
+                    break;
+                case "--max-frame-size":
+                    config.maxFrameSize = parseInt(args[++i], config.maxFrameSize);
+                    break;
+                case "--scheduler":
+                    try {
+                        config.schedulerMode = RequestScheduler.Mode.parse(args[++i]);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Unknown scheduler: " + args[i] + ", using " + config.schedulerMode);
+                    }
+                    break;
+                case "--workers":
+                    config.workerThreads = parseInt(args[++i], config.workerThreads);
+                    break;
+                case "--queue-limit":
+                    config.queueLimit = parseInt(args[++i], config.queueLimit);
+                    break;
+                case "--io-threads":
+                    config.ioThreads = parseInt(args[++i], config.ioThreads);
+                    break;
+                case "--backlog":
+                    config.acceptBacklog = parseInt(args[++i], config.acceptBacklog);
+                    break;
+                case "--recv-buffer":
+                    config.receiveBufferSize = parseInt(args[++i], config.receiveBufferSize);
+                    break;
+                case "--send-buffer":
+                    config.sendBufferSize = parseInt(args[++i], config.sendBufferSize);
+                    break;
+                case "--max-in-flight":
+                    config.maxInFlight = parseInt(args[++i], config.maxInFlight);
+                    break;
+                case "--write-high-water":
+                    config.writeHighWaterMark = parseInt(args[++i], config.writeHighWaterMark);
+                    break;
+                case "--slow-consumer":
+                    try {
+                        config.slowConsumerPolicy = SlowConsumerPolicy.parse(args[++i]);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Unknown slow-consumer policy: " + args[i] + ", using " + config.slowConsumerPolicy);
+                    }
+                    break;
+                case "--response-cache":
+                    config.responseCacheEntries = parseInt(args[++i], config.responseCacheEntries, 0);
+                    break;
+                case "--db-pool-min":
+                    config.dbPoolMinSize = parseInt(args[++i], config.dbPoolMinSize, 0);
+                    break;
+                case "--db-pool-max":
+                    config.dbPoolMaxSize = parseInt(args[++i], config.dbPoolMaxSize);
+                    break;
+                case "--load-threads":
+                    config.loadThreads = parseInt(args[++i], config.loadThreads);
+                    break;
+                case "--history-queue":
+                    config.historyQueueSize = parseInt(args[++i], config.historyQueueSize);
+                    break;
+                case "--history-batch":
+                    config.historyBatchSize = parseInt(args[++i], config.historyBatchSize);
+                    break;
+                case "--history-flush":
+                    config.historyFlushMs = parseInt(args[++i], config.historyFlushMs);
+                    break;
+                case "--reconcile-interval":
+                    config.reconcileIntervalSeconds = parseInt(args[++i], config.reconcileIntervalSeconds, 0);
+                    break;
+                case "--persistence":
+                    String mode = args[++i];
+                    if (mode.equalsIgnoreCase("write-behind") || mode.equalsIgnoreCase("write-through")) {
+                        config.writeBehind = mode.equalsIgnoreCase("write-behind");
+                    } else {
+                        System.err.println("Unknown persistence mode: " + mode + ", using "
+                            + (config.writeBehind ? "write-behind" : "write-through"));
+                    }
+                    break;
+                case "--journal":
+                    config.journalPath = args[++i];
+                    break;
+                case "--flush-interval":
+                    config.flushIntervalMs = parseInt(args[++i], config.flushIntervalMs);
+                    break;
+                case "--codec":
+                    try {
+                        config.preferredCodec = WireCodec.forName(args[++i]);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage() + ", using " + config.preferredCodec.getName());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Parses an integer flag value, keeping the old value if invalid.
+     *
+     * @param value The text to parse
+     * @param fallback Value to use if the text is not a positive number
+     * @return Parsed value or fallback
+     */
+    private static int parseInt(String value, int fallback) {
+        return parseInt(value, fallback, 1);
+    }
+
+    private static int parseInt(String value, int fallback, int min) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        System.err.println("Invalid value: " + value + ", using " + fallback);
+        return fallback;
+    }
+
+    // Getters and setters below
+
+    public int getPort() { return port; }
+    public void setPort(int port) { this.port = port; }
+
+    public int getMaxFrameSize() { return maxFrameSize; }
+    public void setMaxFrameSize(int maxFrameSize) { this.maxFrameSize = maxFrameSize; }
+
+    public RequestScheduler.Mode getSchedulerMode() { return schedulerMode; }
+    public void setSchedulerMode(RequestScheduler.Mode schedulerMode) { this.schedulerMode = schedulerMode; }
+
+    public int getWorkerThreads() { return workerThreads; }
+    public void setWorkerThreads(int workerThreads) { this.workerThreads = workerThreads; }
+
+    public int getQueueLimit() { return queueLimit; }
+    public void setQueueLimit(int queueLimit) { this.queueLimit = queueLimit; }
+
+    public int getIoThreads() { return ioThreads; }
+    public void setIoThreads(int ioThreads) { this.ioThreads = ioThreads; }
+
+    public int getAcceptBacklog() { return acceptBacklog; }
+    public void setAcceptBacklog(int acceptBacklog) { this.acceptBacklog = acceptBacklog; }
+
+    public boolean isTcpNoDelay() { return tcpNoDelay; }
+    public void setTcpNoDelay(boolean tcpNoDelay) { this.tcpNoDelay = tcpNoDelay; }
+
+    public int getReceiveBufferSize() { return receiveBufferSize; }
+    public void setReceiveBufferSize(int receiveBufferSize) { this.receiveBufferSize = receiveBufferSize; }
+
+    public int getSendBufferSize() { return sendBufferSize; }
+    public void setSendBufferSize(int sendBufferSize) { this.sendBufferSize = sendBufferSize; }
+
+    public int getMaxInFlight() { return maxInFlight; }
+    public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+
+    public int getWriteHighWaterMark() { return writeHighWaterMark; }
+    public void setWriteHighWaterMark(int writeHighWaterMark) { this.writeHighWaterMark = writeHighWaterMark; }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy() { return slowConsumerPolicy; }
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) { this.slowConsumerPolicy = slowConsumerPolicy; }
+
+    public int getResponseCacheEntries() { return responseCacheEntries; }
+    public void setResponseCacheEntries(int responseCacheEntries) { this.responseCacheEntries = responseCacheEntries; }
+
+    public int getDbPoolMinSize() { return dbPoolMinSize; }
+    public void setDbPoolMinSize(int dbPoolMinSize) { this.dbPoolMinSize = dbPoolMinSize; }
+
+    public int getDbPoolMaxSize() { return dbPoolMaxSize; }
+    public void setDbPoolMaxSize(int dbPoolMaxSize) { this.dbPoolMaxSize = dbPoolMaxSize; }
+
+    public int getLoadThreads() { return loadThreads; }
+    public void setLoadThreads(int loadThreads) { this.loadThreads = loadThreads; }
+
+    public int getHistoryQueueSize() { return historyQueueSize; }
+    public void setHistoryQueueSize(int historyQueueSize) { this.historyQueueSize = historyQueueSize; }
+
+    public int getHistoryBatchSize() { return historyBatchSize; }
+    public void setHistoryBatchSize(int historyBatchSize) { this.historyBatchSize = historyBatchSize; }
+
+    public int getHistoryFlushMs() { return historyFlushMs; }
+    public void setHistoryFlushMs(int historyFlushMs) { this.historyFlushMs = historyFlushMs; }
+
+    public int getReconcileIntervalSeconds() { return reconcileIntervalSeconds; }
+    public void setReconcileIntervalSeconds(int reconcileIntervalSeconds) { this.reconcileIntervalSeconds = reconcileIntervalSeconds; }
+
+    public boolean isWriteBehind() { return writeBehind; }
+    public void setWriteBehind(boolean writeBehind) { this.writeBehind = writeBehind; }
+
+    public String getJournalPath() { return journalPath; }
+    public void setJournalPath(String journalPath) { this.journalPath = journalPath; }
+
+    public int getFlushIntervalMs() { return flushIntervalMs; }
+    public void setFlushIntervalMs(int flushIntervalMs) { this.flushIntervalMs = flushIntervalMs; }
+
+    public WireCodec getPreferredCodec() { return preferredCodec; }
+    public void setPreferredCodec(WireCodec preferredCodec) { this.preferredCodec = preferredCodec; }
+}
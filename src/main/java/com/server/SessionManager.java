@@ -0,0 +1,98 @@
+package com.server;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sessions of logged-in users.
+ *
+ * A successful login creates a session and hands its token to the
+ * client. Later requests send only the token, which is looked up in a
+ * ConcurrentHashMap - no password hash travels with every request and
+ * no database query is needed to know who sent it.
+ *
+ * Tokens are 32 random bytes from SecureRandom (as hex), so they cannot
+ * be guessed. A session expires after TTL_MS without use; every request
+ * with the token extends it. Expired sessions are removed when they are
+ * looked up and, every SWEEP_EVERY logins, all at once.
+ */
+public class SessionManager {
+    /** Time without requests after which a session expires */
+    private static final long TTL_MS = 30 * 60 * 1000;
+
+    /** Logins between two sweeps for expired sessions */
+    private static final int SWEEP_EVERY = 256;
+
+    private static final SessionManager INSTANCE = new SessionManager();
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicInteger createdSinceSweep = new AtomicInteger();
+
+    /**
+     * A logged-in user.
+     */
+    public static final class Session {
+        private final String login;
+        private final String passwordHash;
+        private volatile long expiresAt;
+
+        Session(String login, String passwordHash, long expiresAt) {
+            this.login = login;
+            this.passwordHash = passwordHash;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getLogin() { return login; }
+
+        public String getPasswordHash() { return passwordHash; }
+    }
+
+    private SessionManager() {
+    }
+
+    public static SessionManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts a session for a user whose password was checked.
+     *
+     * @param login The user's login
+     * @param passwordHash The user's password hash (stored in bands they own)
+     * @return The session token
+     */
+    public String create(String login, String passwordHash) {
+        if (createdSinceSweep.incrementAndGet() >= SWEEP_EVERY) {
+            createdSinceSweep.set(0);
+            long now = System.currentTimeMillis();
+            sessions.values().removeIf(session -> session.expiresAt < now);
+        }
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = DatabaseManager.toHex(bytes);
+        sessions.put(token, new Session(login, passwordHash, System.currentTimeMillis() + TTL_MS));
+        return token;
+    }
+
+    /**
+     * Looks up a session and extends it.
+     *
+     * @param token Token from create()
+     * @return The session, or null if the token is unknown or expired
+     */
+    public Session resolve(String token) {
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (session.expiresAt < now) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.expiresAt = now + TTL_MS;
+        return session;
+    }
+}
@@ -0,0 +1,52 @@
+package com.server;
+
+/**
+ * The parameterized statements the server runs on its hot paths.
+ *
+ * Every pooled connection prepares each of these once and keeps it (see
+ * DatabaseManager.prepare), so PostgreSQL parses and plans it once per
+ * connection instead of once per call, and no SQL text is built at
+ * runtime.
+ */
+public enum SqlStatement {
+    INSERT_BAND("INSERT INTO music_bands (name, x, y, creation_date, "
+        + "number_of_participants, description, genre, album_name, album_sales, owner_login, "
+        + "owner_password_hash, id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+        // A row left over from an earlier (failed or replayed) save must not fail the whole batch
+        + "ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name, x = EXCLUDED.x, y = EXCLUDED.y, "
+        + "creation_date = EXCLUDED.creation_date, number_of_participants = EXCLUDED.number_of_participants, "
+        + "description = EXCLUDED.description, genre = EXCLUDED.genre, album_name = EXCLUDED.album_name, "
+        + "album_sales = EXCLUDED.album_sales, owner_login = EXCLUDED.owner_login, "
+        + "owner_password_hash = EXCLUDED.owner_password_hash"),
+
+    UPDATE_BAND("UPDATE music_bands SET name = ?, x = ?, y = ?, creation_date = ?, "
+        + "number_of_participants = ?, description = ?, genre = ?, album_name = ?, album_sales = ?, "
+        + "owner_login = ?, owner_password_hash = ? WHERE id = ?"),
+
+    DELETE_BAND("DELETE FROM music_bands WHERE id = ?"),
+
+    DELETE_BANDS_BY_OWNER("DELETE FROM music_bands WHERE owner_login = ?"),
+
+    DELETE_ALL_BANDS("DELETE FROM music_bands"),
+
+    COUNT_BANDS("SELECT COUNT(*) FROM music_bands"),
+
+    INSERT_HISTORY("INSERT INTO command_history (session_id, command, executed_at) VALUES (?, ?, ?)"),
+
+    SELECT_HISTORY("SELECT command FROM command_history WHERE session_id = ? "
+        + "ORDER BY executed_at DESC, id DESC LIMIT 11"),
+
+    INSERT_USER("INSERT INTO users (login, password_hash) VALUES (?, ?)"),
+
+    SELECT_USER_HASH("SELECT password_hash FROM users WHERE login = ?");
+
+    private final String sql;
+
+    SqlStatement(String sql) {
+        this.sql = sql;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+}
@@ -1,21 +1,33 @@
 package com.server.network;
 
 import com.common.*;
+import com.server.ConnectionPool;
+import com.server.DatabaseManager;
+import com.server.HistoryWriter;
 import com.server.LoggingMiddleware;
+import com.server.ServerConfig;
 import com.utils.MinHeap;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Non-blocking TCP server using Java NIO (New I/O).
@@ -26,24 +38,46 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * creating a thread for each client.
  * 
  * Key features:
- * - Uses AsynchronousServerSocketChannel for non-blocking accept
+ * - Uses AsynchronousServerSocketChannel for non-blocking accept,
+ *   in a dedicated AsynchronousChannelGroup with a fixed thread count
+ * - Sets TCP_NODELAY, SO_RCVBUF and SO_SNDBUF on accepted channels
  * - Uses AsynchronousSocketChannel for non-blocking read/write
  * - Maintains a set of all connected clients
+ * - Reads into and serializes responses into pooled direct buffers
  * - Provides server statistics via getStats()
- * - Uses ForkJoinPool for multi-threaded request reading
- * - Uses Thread for request processing
- * - Uses CachedThreadPool for response sending
+ * - Answers read-only commands from a ResponseCache of encoded
+ *   responses while the collection is unchanged
+ * - Runs request processing on a bounded RequestScheduler
+ *   (fixed pool, work-stealing pool or virtual threads) and answers
+ *   with a "server busy" error when it is full
+ * - Frames every message with a 4-byte length header so requests and
+ *   responses of any size (up to the configured limit) survive being
+ *   split across several TCP reads
  * 
  * Communication flow:
  * 1. Server starts and listens on specified port
  * 2. Client connects via AsynchronousSocketChannel
  * 3. Server accepts connection and starts reading
- * 4. Server reads request (using ForkJoinPool), processes it (new Thread), sends response (CachedThreadPool)
+ * 4. Server reads request, processes it (RequestScheduler), sends response
  * 5. Server waits for next request or client disconnect
+ * 
+ * Clients may pipeline: the server keeps reading while earlier requests
+ * are still running (up to maxInFlight per connection). Responses can
+ * finish out of order; each carries the requestId of its request, and
+ * a per-connection WriteQueue makes sure only one write is pending.
+ * Change events for subscribed clients go through the same queue, are
+ * coalesced with other waiting frames into one gathering write, and are
+ * dropped for clients that fall too far behind.
  */
 public class AsyncServer {
     /** Port number to listen on */
     private final int port;
+
+    /** Largest request or response frame in bytes */
+    private final int maxFrameSize;
+
+    /** Unanswered requests allowed per connection before reading pauses */
+    private final int maxInFlight;
     
     /** Flag to control server running state */
     private final AtomicBoolean running = new AtomicBoolean(false);
@@ -51,8 +85,14 @@ public class AsyncServer {
     /** When the server started (used for calculating uptime) */
     private final LocalDateTime startTime = LocalDateTime.now();
     
-    /** Set of all connected clients - uses ConcurrentHashMap for thread safety */
-    private final Set<AsynchronousSocketChannel> clients = ConcurrentHashMap.newKeySet();
+    /** All connected clients and their state - uses ConcurrentHashMap for thread safety */
+    private final Map<AsynchronousSocketChannel, ClientConnection> clients = new ConcurrentHashMap<>();
+
+    /** Pool of reusable direct buffers for reads and responses */
+    private final BufferPool bufferPool = BufferPool.shared();
+
+    /** Bytes, frames and dropped notifications summed over all write queues */
+    private final WriteQueue.Totals writeTotals = new WriteQueue.Totals();
     
     /** The server channel that accepts incoming connections */
     private AsynchronousServerSocketChannel serverChannel;
@@ -60,8 +100,46 @@ public class AsyncServer {
     /** Handler that processes requests and generates responses */
     private final RequestHandler requestHandler;
     
-    /** CachedThreadPool for multi-threaded response sending */
-    private final ExecutorService responseExecutor;
+    /** Runs request processing off the I/O threads */
+    private final RequestScheduler scheduler;
+
+    /** Server settings (socket options, thread counts) */
+    private final ServerConfig config;
+
+    /** Encoded answers to read-only commands, valid for one collection version */
+    private final ResponseCache responseCache;
+
+    /**
+     * Encodes and queues change events for subscribers. One thread, so
+     * events go out in the order they were handed over (version order).
+     */
+    private final ExecutorService eventPublisher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "event-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Streams collection changes to subscribed clients. Runs under
+     * MinHeap's write lock, so it only hands the event to the publisher
+     * thread - encoding a snapshot of the whole collection there would
+     * hold up every writer.
+     */
+    private final Consumer<ChangeEvent> changeListener = event -> {
+        try {
+            eventPublisher.execute(() -> publishChange(event));
+        } catch (RejectedExecutionException e) {
+            // Server stopping
+        }
+    };
+
+    /**
+     * Channel group owned by this server.
+     * Accept/read/write completion handlers run on its threads only,
+     * so they do not compete with the JVM-wide default pool or with
+     * CPU-heavy command execution on the scheduler.
+     */
+    private AsynchronousChannelGroup channelGroup;
 
     /**
      * Creates a new server on the specified port.
@@ -69,9 +147,23 @@ public class AsyncServer {
      * @param port The port number to listen on (e.g., 8080)
      */
     public AsyncServer(int port) {
-        this.port = port;
+        this(new ServerConfig(port));
+    }
+
+    /**
+     * Creates a new server with the given settings.
+     * 
+     * @param config Server settings (port, frame size limit)
+     */
+    public AsyncServer(ServerConfig config) {
+        this.config = config;
+        this.port = config.getPort();
+        this.maxFrameSize = config.getMaxFrameSize();
+        this.maxInFlight = config.getMaxInFlight();
         this.requestHandler = new RequestHandler();
-        this.responseExecutor = Executors.newCachedThreadPool();
+        this.responseCache = new ResponseCache(config.getResponseCacheEntries(), maxFrameSize);
+        this.scheduler = new RequestScheduler(config.getSchedulerMode(),
+            config.getWorkerThreads(), config.getQueueLimit());
     }
 
     /**
@@ -82,17 +174,32 @@ public class AsyncServer {
      * @throws IOException If the server cannot bind to the port
      */
     public void start() throws IOException {
-        // Open a non-blocking server socket channel
-        serverChannel = AsynchronousServerSocketChannel.open();
+        // Create the server's own group of I/O threads
+        AtomicInteger ioThreadCount = new AtomicInteger();
+        channelGroup = AsynchronousChannelGroup.withFixedThreadPool(config.getIoThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "server-io-" + ioThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        // Open a non-blocking server socket channel in that group
+        serverChannel = AsynchronousServerSocketChannel.open(channelGroup);
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        // Accepted sockets inherit the receive buffer size from the listener
+        serverChannel.setOption(StandardSocketOptions.SO_RCVBUF, config.getReceiveBufferSize());
         
-        // Bind to the specified port
-        serverChannel.bind(new InetSocketAddress(port));
+        // Bind to the specified port with the configured accept backlog
+        serverChannel.bind(new InetSocketAddress(port), config.getAcceptBacklog());
         
         // Mark server as running
         running.set(true);
 
-        System.out.println("Server started on port " + port);
+        System.out.println("Server started on port " + port + " (" + config.getIoThreads()
+            + " I/O threads, backlog " + config.getAcceptBacklog() + ")");
         
+        // Stream collection changes to subscribers
+        MinHeap.getInstance().addChangeListener(changeListener);
+
         // Start accepting clients (runs in background)
         acceptClients();
     }
@@ -138,67 +245,91 @@ public class AsyncServer {
         // Get client info for logging
         String clientInfo = getClientInfo(clientChannel);
         
+        // Tune the socket before any data flows
+        try {
+            clientChannel.setOption(StandardSocketOptions.TCP_NODELAY, config.isTcpNoDelay());
+            clientChannel.setOption(StandardSocketOptions.SO_RCVBUF, config.getReceiveBufferSize());
+            clientChannel.setOption(StandardSocketOptions.SO_SNDBUF, config.getSendBufferSize());
+            clientChannel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        } catch (IOException e) {
+            System.err.println("Failed to set socket options for " + clientInfo + ": " + e.getMessage());
+        }
+        
         // Add client to connected set
-        clients.add(clientChannel);
+        WriteQueue writeQueue = new WriteQueue(clientChannel, config.getWriteHighWaterMark(),
+            config.getSlowConsumerPolicy(), writeTotals, exc -> closeClient(clientChannel, clientInfo));
+        ClientConnection connection = new ClientConnection(clientChannel, clientInfo, maxFrameSize, bufferPool, writeQueue);
+        clients.put(clientChannel, connection);
         System.out.println("Client connected. Active connections: " + clients.size());
         
         // Log client connection
         LoggingMiddleware.logClientConnected(clientInfo);
 
-        // Start reading with a fresh buffer for this client
-        readRequest(clientChannel, clientInfo);
+        // Start reading with this client's reusable buffer
+        readRequest(connection);
     }
     
-    private void readRequest(AsynchronousSocketChannel clientChannel, String clientInfo) {
-        // Create a fresh buffer for each read operation to avoid thread issues
-        ByteBuffer buffer = ByteBuffer.allocate(8192);
+    /**
+     * Reads request frames from a client.
+     * 
+     * Complete frames already in the buffer are dispatched first, so
+     * pipelined requests that arrived in one TCP read are all started
+     * without waiting for the network. Then a read is started on the
+     * connection's reusable buffer, and this method runs again when
+     * it completes.
+     * 
+     * Reading stops while the client has maxInFlight unanswered
+     * requests; finishing one of them calls this method again.
+     * 
+     * Only this read path uses the connection's read buffer. Whenever it
+     * stops without starting another read it tells the connection
+     * (endRead), which then returns the buffer to the pool if the client
+     * is gone. A closed connection is not read from again.
+     * 
+     * @param connection The client connection to read from
+     */
+    private void readRequest(ClientConnection connection) {
+        if (!connection.beginRead()) {
+            return;
+        }
+
+        // Previous reads may already contain the next requests
+        while (true) {
+            DispatchResult result = dispatchBufferedRequest(connection);
+            if (result == DispatchResult.NEED_MORE) {
+                break;
+            }
+            if (result == DispatchResult.PAUSED) {
+                // requestStarted() already gave up the buffer
+                return;
+            }
+            if (result == DispatchResult.STOP) {
+                connection.endRead();
+                return;
+            }
+        }
+
+        AsynchronousSocketChannel clientChannel = connection.getChannel();
+        String clientInfo = connection.getClientInfo();
         
         // Use native async read (AsynchronousSocketChannel handles internally)
         try {
-            clientChannel.read(buffer, buffer, new CompletionHandler<Integer, ByteBuffer>() {
+            clientChannel.read(connection.getReadBuffer(), connection, new CompletionHandler<Integer, ClientConnection>() {
                 @Override
-                public void completed(Integer bytesRead, ByteBuffer attachment) {
+                public void completed(Integer bytesRead, ClientConnection attachment) {
                     // Check if client disconnected
-                    if (bytesRead <= 0) {
+                    if (bytesRead < 0) {
                         closeClient(clientChannel, clientInfo);
+                        attachment.endRead();
                         return;
                     }
                     
-                    // Prepare buffer for reading
-                    attachment.flip();
-                    
-                    // Convert buffer bytes to byte array
-                    byte[] data = new byte[attachment.remaining()];
-                    attachment.get(data);
-
-                    try {
-                        // Deserialize the request
-                        Request request = Serializer.deserialize(data);
-                        
-                        // Process request in a new Thread
-                        Thread processingThread = new Thread(() -> {
-                            try {
-                                Response response = requestHandler.handle(request, clientInfo, clientChannel);
-                                sendResponse(clientChannel, response, clientInfo);
-                            } catch (Exception e) {
-                                System.err.println("Error handling request: " + e.getMessage());
-                                sendErrorResponse(clientChannel, Response.error("Server error: " + e.getMessage()), clientInfo);
-                            }
-                        });
-                        processingThread.start();
-                        
-                    } catch (Exception e) {
-                        // Handle errors during request processing
-                        System.err.println("Error handling request: " + e.getMessage());
-                        LoggingMiddleware.logError(clientInfo, "Error handling request: " + e.getMessage(), e);
-                        // Send error response to client
-                        Response errorResp = Response.error("Server error: " + e.getMessage());
-                        sendErrorResponse(clientChannel, errorResp, clientInfo);
-                    }
+                    // Dispatch whatever is complete, then keep reading
+                    readRequest(attachment);
                 }
                 
                 @Override
-                public void failed(Throwable exc, ByteBuffer attachment) {
+                public void failed(Throwable exc, ClientConnection attachment) {
                     // Handle closed channel or other errors gracefully
                     if (exc instanceof java.nio.channels.ClosedChannelException) {
                         closeClient(clientChannel, clientInfo);
@@ -206,77 +337,277 @@ public class AsyncServer {
                         System.err.println("Error reading request: " + exc.getMessage());
                         closeClient(clientChannel, clientInfo);
                     }
+                    attachment.endRead();
                 }
             });
         } catch (Exception e) {
             // Handle case where channel is already closed
             System.err.println("Error starting read: " + e.getMessage());
             closeClient(clientChannel, clientInfo);
+            connection.endRead();
         }
     }
-    
-    private void sendResponse(AsynchronousSocketChannel clientChannel, Response response, String clientInfo) {
-        // Use CachedThreadPool for sending response
-        responseExecutor.submit(() -> {
-            try {
-                // Serialize the response
-                byte[] responseData = Serializer.serialize(response);
-                
-                // Send response back to client
-                ByteBuffer responseBuffer = ByteBuffer.wrap(responseData);
-                clientChannel.write(responseBuffer, responseBuffer, new CompletionHandler<Integer, ByteBuffer>() {
-                    @Override
-                    public void completed(Integer written, ByteBuffer buf) {
-                        if (buf.hasRemaining()) {
-                            clientChannel.write(buf, buf, this);
-                        } else {
-                            // Done writing, wait for next request from this client
-                            // Create fresh buffer for next read
-                            readRequest(clientChannel, clientInfo);
-                        }
-                    }
 
-                    @Override
-                    public void failed(Throwable exc, ByteBuffer buf) {
-                        // Handle closed channel gracefully
-                        if (exc instanceof java.nio.channels.ClosedChannelException) {
-                            closeClient(clientChannel, clientInfo);
-                        } else {
-                            System.err.println("Error writing response: " + exc.getMessage());
-                            closeClient(clientChannel, clientInfo);
-                        }
-                    }
-                });
-            } catch (Exception e) {
-                System.err.println("Error sending response: " + e.getMessage());
-                closeClient(clientChannel, clientInfo);
+    /**
+     * Outcome of trying to dispatch one buffered request.
+     */
+    private enum DispatchResult {
+        /** No complete frame buffered - read more bytes */
+        NEED_MORE,
+        /** A frame was handled - look for the next one */
+        CONTINUE,
+        /** Too many requests in flight - reading resumes when one finishes */
+        PAUSED,
+        /** Stop reading: the connection is closing */
+        STOP
+    }
+
+    /**
+     * Tries to decode one complete request from the connection's buffer
+     * and, if there is one, hands it off for processing.
+     * 
+     * @param connection The client connection
+     * @return What the read loop should do next
+     */
+    private DispatchResult dispatchBufferedRequest(ClientConnection connection) {
+        AsynchronousSocketChannel clientChannel = connection.getChannel();
+        String clientInfo = connection.getClientInfo();
+        ByteBuffer buffer = connection.getReadBuffer();
+        if (connection.isClosed()) {
+            return DispatchResult.STOP;
+        }
+
+        byte[] frame;
+        buffer.flip();
+        try {
+            frame = connection.getDecoder().decode(buffer);
+        } catch (IOException e) {
+            // Bad length header - the stream can't be resynchronised
+            System.err.println("Error decoding request: " + e.getMessage());
+            LoggingMiddleware.logError(clientInfo, "Error decoding request: " + e.getMessage(), e);
+            sendErrorResponse(connection, Response.error("Server error: " + e.getMessage()));
+            return DispatchResult.STOP;
+        } finally {
+            buffer.compact();
+        }
+
+        if (frame == null) {
+            return DispatchResult.NEED_MORE;
+        }
+
+        // The first frame may be a HELLO choosing the codec
+        if (connection.markFirstFrame() && WireCodec.isHello(frame)) {
+            answerHello(connection, frame);
+            return DispatchResult.CONTINUE;
+        }
+
+        Request request;
+        try {
+            // Decode the request with the connection's codec
+            request = Serializer.decode(connection.getCodec(), frame);
+        } catch (Exception e) {
+            // Handle errors during request decoding
+            System.err.println("Error handling request: " + e.getMessage());
+            LoggingMiddleware.logError(clientInfo, "Error handling request: " + e.getMessage(), e);
+            // Send error response to client
+            Response errorResp = Response.error("Server error: " + e.getMessage());
+            sendErrorResponse(connection, errorResp);
+            return DispatchResult.STOP;
+        }
+
+        // Count the request before it can finish on a worker
+        boolean keepReading = connection.requestStarted(maxInFlight);
+
+        // Process request on the scheduler
+        boolean accepted = scheduler.submit(() -> processRequest(connection, request));
+        if (!accepted) {
+            // Too much work queued - tell the client instead of piling up
+            LoggingMiddleware.logCommand(clientInfo, request.getCommand(), System.currentTimeMillis(),
+                false, "Rejected: server busy");
+            finishRequest(connection, request, Response.error("Server busy, please try again later"));
+        }
+        return keepReading ? DispatchResult.CONTINUE : DispatchResult.PAUSED;
+    }
+
+    /**
+     * Runs one request on a scheduler thread and sends its response.
+     * 
+     * Read-only commands are answered from the response cache when the
+     * collection has not changed since the answer was computed; a fresh
+     * answer to such a command is cached for the next caller. Their
+     * answers carry the collection version, and a client that sends that
+     * version back (ifNoneMatch) gets a small NOT_MODIFIED response
+     * while the collection stays the same.
+     * 
+     * @param connection The client connection
+     * @param request The decoded request
+     */
+    private void processRequest(ClientConnection connection, Request request) {
+        long startTime = System.currentTimeMillis();
+        boolean readOnly = ResponseCache.isReadOnly(request);
+        String cacheKey = responseCache.keyFor(request);
+        long version = 0;
+        if (readOnly || cacheKey != null) {
+            // The shortcuts below skip the handler - check the caller the way it would
+            String authError = requestHandler.checkCredentials(request);
+            if (authError != null) {
+                LoggingMiddleware.logCommand(connection.getClientInfo(), request.getCommand(), startTime,
+                    false, authError);
+                finishRequest(connection, request, Response.error(authError));
+                return;
             }
-        });
+        }
+        if (readOnly) {
+            // Read before running the command, so the answer is at least this new
+            version = MinHeap.getInstance().getVersion();
+            if (request.getIfNoneMatch() != 0 && request.getIfNoneMatch() == version) {
+                requestHandler.recordCachedCommand(request, connection.getClientInfo(), startTime, "Not modified");
+                finishRequest(connection, request, Response.notModified(version));
+                return;
+            }
+        }
+        if (cacheKey != null) {
+            CachedResponse cached = responseCache.get(cacheKey, version, connection.getCodec());
+            if (cached != null) {
+                requestHandler.recordCachedCommand(request, connection.getClientInfo(), startTime, "Cached response");
+                finishCachedRequest(connection, request, cached);
+                return;
+            }
+        }
+
+        Response response;
+        try {
+            response = requestHandler.handle(request, connection.getClientInfo(), connection.getChannel());
+        } catch (Exception e) {
+            System.err.println("Error handling request: " + e.getMessage());
+            response = Response.error("Server error: " + e.getMessage());
+        }
+
+        if (readOnly && response.isSuccess()) {
+            response.setVersion(version);
+        }
+        if (cacheKey != null && response.isSuccess()) {
+            CachedResponse cached = responseCache.put(cacheKey, version, response, connection.getCodec());
+            if (cached != null) {
+                finishCachedRequest(connection, request, cached);
+                return;
+            }
+        }
+        finishRequest(connection, request, response);
+    }
+
+    /**
+     * Sends a cached response and resumes reading if the connection was
+     * paused at its in-flight limit. Only the frame header and the
+     * requestId are new; the body is shared with the cache.
+     * 
+     * @param connection The client connection
+     * @param request The request being answered
+     * @param cached Encoded response in the connection's codec
+     */
+    private void finishCachedRequest(ClientConnection connection, Request request, CachedResponse cached) {
+        ByteBuffer[] frame = cached.toFrame(request.getRequestId(), bufferPool);
+        connection.getWriteQueue().enqueue(frame, () -> CachedResponse.releaseHead(frame, bufferPool));
+        if (connection.requestFinished()) {
+            readRequest(connection);
+        }
+    }
+
+    /**
+     * Sends the response to a request and resumes reading if the
+     * connection was paused at its in-flight limit.
+     * 
+     * @param connection The client connection
+     * @param request The request that was handled
+     * @param response Its response
+     */
+    private void finishRequest(ClientConnection connection, Request request, Response response) {
+        // Let the client match the response with its request
+        response.setRequestId(request.getRequestId());
+        sendResponse(connection, response);
+        if (connection.requestFinished()) {
+            readRequest(connection);
+        }
+    }
+
+    /**
+     * Picks a codec from the ones a client offered and confirms it.
+     * The configured codec wins if offered, otherwise the client keeps
+     * Java serialization.
+     * 
+     * @param connection The client connection
+     * @param hello The HELLO payload received from the client
+     */
+    private void answerHello(ClientConnection connection, byte[] hello) {
+        WireCodec preferred = config.getPreferredCodec();
+        WireCodec chosen = JavaCodec.INSTANCE;
+        for (int i = WireCodec.HELLO_MAGIC.length; i < hello.length; i++) {
+            if (hello[i] == preferred.getId()) {
+                chosen = preferred;
+                break;
+            }
+        }
+        connection.setCodec(chosen);
+        System.out.println("Client " + connection.getClientInfo() + " uses codec: " + chosen.getName());
+
+        ByteBuffer reply = Serializer.helloFrame(bufferPool, chosen);
+        connection.getWriteQueue().enqueue(reply, () -> bufferPool.release(reply));
+    }
+
+    /**
+     * Queues a response for writing to the client.
+     * The pooled buffer is released once it has been written.
+     * 
+     * @param connection The client connection
+     * @param response The response to send
+     */
+    private void sendResponse(ClientConnection connection, Response response) {
+        try {
+            // Serialize the response straight into a pooled buffer
+            ByteBuffer responseBuffer = encodeResponse(response, connection.getCodec());
+            connection.getWriteQueue().enqueue(responseBuffer, () -> bufferPool.release(responseBuffer));
+        } catch (Exception e) {
+            System.err.println("Error sending response: " + e.getMessage());
+            closeClient(connection.getChannel(), connection.getClientInfo());
+        }
     }
     
-    private void sendErrorResponse(AsynchronousSocketChannel clientChannel, Response response, String clientInfo) {
-        responseExecutor.submit(() -> {
-            try {
-                byte[] errorData = Serializer.serialize(response);
-                ByteBuffer errorBuffer = ByteBuffer.wrap(errorData);
-                clientChannel.write(errorBuffer);
-                closeClient(clientChannel, clientInfo);
-            } catch (IOException e) {
+    /**
+     * Sends a final error response and closes the connection once
+     * the whole frame has been written.
+     */
+    private void sendErrorResponse(ClientConnection connection, Response response) {
+        AsynchronousSocketChannel clientChannel = connection.getChannel();
+        String clientInfo = connection.getClientInfo();
+        try {
+            ByteBuffer errorBuffer = encodeResponse(response, connection.getCodec());
+            connection.getWriteQueue().enqueue(errorBuffer, () -> {
+                bufferPool.release(errorBuffer);
                 closeClient(clientChannel, clientInfo);
-            }
-        });
+            });
+        } catch (Exception e) {
+            closeClient(clientChannel, clientInfo);
+        }
     }
 
     /**
-     * Continues reading from a client after processing a request.
-     * This creates a loop that keeps processing requests from the same client
-     * until they disconnect using ForkJoinPool for reading.
+     * Serializes a response into a pooled frame buffer.
+     * If the response is larger than the frame limit, an error
+     * response is sent in its place.
      * 
-     * @param clientChannel The channel to read from
-     * @param clientInfo Client IP and port for logging
+     * @param response The response to encode
+     * @param codec Codec negotiated with the client
+     * @return Flipped pooled buffer - released once written
+     * @throws IOException If even the error response cannot be encoded
      */
-    private void readNext(AsynchronousSocketChannel clientChannel, String clientInfo) {
-        readRequest(clientChannel, clientInfo);
+    private ByteBuffer encodeResponse(Response response, WireCodec codec) throws IOException {
+        try {
+            return Serializer.serializeFrame(response, codec, bufferPool, maxFrameSize);
+        } catch (IOException e) {
+            Response tooLarge = Response.error("Response too large: " + e.getMessage());
+            tooLarge.setRequestId(response.getRequestId());
+            return Serializer.serializeFrame(tooLarge, codec, bufferPool, maxFrameSize);
+        }
     }
 
     /**
@@ -305,9 +636,17 @@ public class AsyncServer {
      */
     private void closeClient(AsynchronousSocketChannel clientChannel, String clientInfo) {
         try {
-            clients.remove(clientChannel);
+            ClientConnection connection = clients.remove(clientChannel);
             clientChannel.close();
-            System.out.println("Client disconnected. Active connections: " + clients.size());
+            if (connection == null || !connection.close()) {
+                // Already closed by another callback
+                return;
+            }
+            WriteQueue writeQueue = connection.getWriteQueue();
+            System.out.println("Client disconnected. Active connections: " + clients.size()
+                + " (sent " + writeQueue.getFramesWritten() + " frames, " + writeQueue.getBytesWritten()
+                + " bytes in " + writeQueue.getWriteCalls() + " writes, dropped "
+                + writeQueue.getDroppedNotifications() + " notifications)");
             LoggingMiddleware.logClientDisconnected(clientInfo);
         } catch (IOException e) {
             System.err.println("Error closing client: " + e.getMessage());
@@ -329,14 +668,55 @@ public class AsyncServer {
         long uptime = System.currentTimeMillis() - startTime.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
         
         // Create and return stats object
-        return new ServerStats(
+        ServerStats stats = new ServerStats(
             uptime,
             runtime.freeMemory(),
             runtime.totalMemory(),
             clients.size(),
-            MinHeap.getInstance().getElementCount(),
+            0,
             startTime
         );
+        // One read of the collection counters, so the numbers agree with each other
+        MinHeap heap = MinHeap.getInstance();
+        heap.readStatistics(collection -> {
+            stats.setCollectionSize(collection.getTotal());
+            stats.setCollectionOwners(collection.getOwnerCount());
+            return null;
+        });
+        Long minId = heap.getMinId();
+        Long maxId = heap.getMaxId();
+        if (minId != null && maxId != null) {
+            stats.setCollectionMinId(minId);
+            stats.setCollectionMaxId(maxId);
+        }
+        stats.setReconcileMismatches(heap.getReconcileMismatches());
+        stats.setSchedulerMode(scheduler.getMode().name());
+        stats.setQueueDepth(scheduler.getQueueDepth());
+        stats.setRejectedRequests(scheduler.getRejectedCount());
+        stats.setBufferPoolHits(bufferPool.getHits());
+        stats.setBufferPoolMisses(bufferPool.getMisses());
+        stats.setBytesSent(writeTotals.bytesWritten.sum());
+        stats.setFramesSent(writeTotals.framesWritten.sum());
+        stats.setDroppedNotifications(writeTotals.droppedNotifications.sum());
+        stats.setSlowConsumerDisconnects(writeTotals.slowConsumerDisconnects.sum());
+        stats.setResponseCacheHits(responseCache.getHits());
+        stats.setResponseCacheMisses(responseCache.getMisses());
+        ConnectionPool dbPool = DatabaseManager.peekPool();
+        if (dbPool != null) {
+            stats.setDbPoolActive(dbPool.getActive());
+            stats.setDbPoolIdle(dbPool.getIdle());
+            stats.setDbPoolWaiting(dbPool.getWaiting());
+            stats.setDbBorrowWaitHistogram(dbPool.getBorrowWaitHistogram());
+        }
+        HistoryWriter historyWriter = DatabaseManager.peekHistoryWriter();
+        if (historyWriter != null) {
+            stats.setHistoryQueueDepth(historyWriter.getQueueDepth());
+            stats.setHistoryWritten(historyWriter.getWritten());
+            stats.setHistoryDropped(historyWriter.getDropped());
+            stats.setHistoryFlushAvgMicros(historyWriter.getAverageFlushMicros());
+            stats.setHistoryFlushMaxMicros(historyWriter.getMaxFlushMicros());
+        }
+        return stats;
     }
 
     /**
@@ -346,21 +726,38 @@ public class AsyncServer {
      */
     public void stop() throws IOException {
         running.set(false);
+        MinHeap.getInstance().removeChangeListener(changeListener);
         
         // Close all client connections
-        for (AsynchronousSocketChannel client : clients) {
+        for (AsynchronousSocketChannel client : clients.keySet()) {
             try {
                 client.close();
             } catch (IOException e) {
                 // Ignore errors when closing
             }
+            ClientConnection connection = clients.remove(client);
+            if (connection != null) {
+                connection.close();
+            }
         }
-        clients.clear();
+        
+        // Let in-flight requests finish
+        scheduler.shutdown();
+        eventPublisher.shutdown();
         
         // Close the server channel
         if (serverChannel != null) {
             serverChannel.close();
         }
+        
+        // Stop the I/O threads
+        if (channelGroup != null) {
+            channelGroup.shutdownNow();
+        }
+        // In debug mode, show buffers that were never given back
+        if (bufferPool.getOutstandingCount() > 0) {
+            System.err.println(bufferPool.reportLeaks() + " pooled buffer(s) not released");
+        }
         System.out.println("Server stopped.");
     }
 
@@ -382,21 +779,174 @@ public class AsyncServer {
         return port;
     }
 
-    public void broadcastNotification(String message, AsynchronousSocketChannel excludeClient) {
-        for (AsynchronousSocketChannel client : clients) {
-            if (client != excludeClient && client.isOpen()) {
+    /**
+     * Streams a collection change to every subscribed client.
+     * Runs on the publisher thread, which gets the events in version order.
+     * The event is serialized once per codec into a pooled buffer; each
+     * client's write queue gets its own view of it, and the buffer goes
+     * back to the pool after the last client has written (or dropped) it.
+     * 
+     * @param event The change
+     */
+    private void publishChange(ChangeEvent event) {
+        Response response = Response.event(event);
+        publishWithCodec(response, JavaCodec.INSTANCE);
+        publishWithCodec(response, BinaryCodec.INSTANCE);
+    }
+
+    /**
+     * Queues an event for the subscribers that use the given codec.
+     * A slow subscriber may miss it (see SlowConsumerPolicy); it notices
+     * the version gap and subscribes again from its last version.
+     * 
+     * @param event The change event response
+     * @param codec Only clients with this codec are written to
+     */
+    private void publishWithCodec(Response event, WireCodec codec) {
+        ChangeEvent change = (ChangeEvent) event.getData();
+        ByteBuffer frame = null;
+
+        // One reference for this method, one per queued copy
+        AtomicInteger references = new AtomicInteger(1);
+        for (ClientConnection connection : clients.values()) {
+            if (!connection.isSubscribed() || connection.getCodec() != codec
+                    || change.getVersion() <= connection.getStreamedVersion()) {
+                // Not subscribed, or the catch-up events already covered this version
+                continue;
+            }
+            if (frame == null) {
                 try {
-                    Response notification = Response.notification(message);
-                    byte[] data = Serializer.serialize(notification);
-                    ByteBuffer buffer = ByteBuffer.wrap(data);
-                    client.write(buffer, null, new CompletionHandler<Integer, Void>() {
-                        @Override
-                        public void completed(Integer written, Void attachment) {}
-                        @Override
-                        public void failed(Throwable exc, Void attachment) {}
-                    });
-                } catch (Exception e) {}
+                    frame = Serializer.serializeFrame(event, codec, bufferPool, maxFrameSize);
+                } catch (IOException e) {
+                    System.err.println("Error encoding change event: " + e.getMessage());
+                    stopStreams(codec, change);
+                    return;
+                }
+            }
+            connection.setStreamedVersion(change.getVersion());
+            ByteBuffer shared = frame;
+            references.incrementAndGet();
+            connection.getWriteQueue().enqueueNotification(frame.duplicate(), () -> {
+                if (references.decrementAndGet() == 0) {
+                    bufferPool.release(shared);
+                }
+            });
+        }
+        if (frame != null && references.decrementAndGet() == 0) {
+            bufferPool.release(frame);
+        }
+    }
+
+    /**
+     * Ends the change stream of every subscriber with the given codec
+     * after an event could not be encoded (e.g. a snapshot larger than
+     * the frame limit). Just dropping the event would make the clients
+     * notice the gap, subscribe again and get the same event, forever;
+     * instead they are unsubscribed and told why.
+     *
+     * @param codec Codec the event could not be encoded with
+     * @param change The event
+     */
+    private void stopStreams(WireCodec codec, ChangeEvent change) {
+        for (ClientConnection connection : clients.values()) {
+            if (connection.isSubscribed() && connection.getCodec() == codec) {
+                stopStream(connection, change);
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes one client and sends it a short notification instead
+     * of an event it cannot be sent.
+     */
+    private void stopStream(ClientConnection connection, ChangeEvent change) {
+        connection.setSubscribed(false);
+        String message = "Change stream stopped: " + change.describe()
+            + " is too large to send. Subscribe again once the collection is smaller.";
+        try {
+            ByteBuffer frame = Serializer.serializeFrame(Response.notification(message), connection.getCodec(),
+                bufferPool, maxFrameSize);
+            connection.getWriteQueue().enqueue(frame, () -> bufferPool.release(frame));
+        } catch (IOException e) {
+            System.err.println("Error encoding notification: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts streaming change events to a client.
+     * The events the client missed since fromVersion (or a snapshot) are
+     * taken while the collection is locked and handed to the publisher
+     * thread, ahead of every later change. The publisher queues them,
+     * then streams the live events after them, so there are no gaps or
+     * duplicates - and nothing is encoded while the lock is held.
+     * 
+     * @param clientChannel The subscribing client
+     * @param fromVersion Last version the client has, 0 for none
+     * @return Response with the version the stream continues from
+     */
+    public Response subscribe(AsynchronousSocketChannel clientChannel, long fromVersion) {
+        ClientConnection connection = clients.get(clientChannel);
+        if (connection == null) {
+            return Response.error("Not connected");
+        }
+        List<Future<?>> queued = new ArrayList<>(1);
+        long version = MinHeap.getInstance().replaySince(fromVersion, missed -> {
+            try {
+                queued.add(eventPublisher.submit(() -> catchUp(connection, fromVersion, missed)));
+            } catch (RejectedExecutionException e) {
+                // Server stopping
+            }
+        });
+        try {
+            // Outside the lock: wait so the catch-up events are written before this answer
+            for (Future<?> future : queued) {
+                future.get();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Response.error("Interrupted while subscribing");
+        } catch (ExecutionException e) {
+            return Response.error("Could not subscribe: " + e.getCause().getMessage());
+        }
+        return Response.success("Subscribed to changes at version " + version);
+    }
+
+    /**
+     * Queues the events a subscriber missed and starts its live stream
+     * after them. Runs on the publisher thread.
+     *
+     * @param connection The subscriber
+     * @param fromVersion Last version the subscriber has
+     * @param missed Events after fromVersion (or one snapshot), oldest first
+     */
+    private void catchUp(ClientConnection connection, long fromVersion, List<ChangeEvent> missed) {
+        for (ChangeEvent event : missed) {
+            try {
+                // Catch-up events are never dropped, unlike live ones
+                ByteBuffer frame = Serializer.serializeFrame(Response.event(event), connection.getCodec(),
+                    bufferPool, maxFrameSize);
+                connection.getWriteQueue().enqueue(frame, () -> bufferPool.release(frame));
+            } catch (IOException e) {
+                System.err.println("Error encoding change event: " + e.getMessage());
+                stopStream(connection, event);
+                return;
+            }
+        }
+        connection.setStreamedVersion(missed.isEmpty() ? fromVersion : missed.get(missed.size() - 1).getVersion());
+        connection.setSubscribed(true);
+    }
+
+    /**
+     * Stops streaming change events to a client.
+     * 
+     * @param clientChannel The client
+     * @return Confirmation response
+     */
+    public Response unsubscribe(AsynchronousSocketChannel clientChannel) {
+        ClientConnection connection = clients.get(clientChannel);
+        if (connection != null) {
+            connection.setSubscribed(false);
         }
+        return Response.success("Unsubscribed from changes");
     }
 }
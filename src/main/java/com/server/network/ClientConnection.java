@@ -0,0 +1,220 @@
+package com.server.network;
+
+import com.common.BufferPool;
+import com.common.FrameDecoder;
+import com.common.JavaCodec;
+import com.common.WireCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+
+/**
+ * Per-connection state kept by the server.
+ *
+ * Wraps the client's channel together with everything that has to
+ * survive between two reads: the read buffer and the frame decoder
+ * that reassembles requests split across TCP segments.
+ *
+ * The read buffer is taken from the BufferPool when the client connects
+ * and reused for every read on this connection. It goes back to the pool
+ * once the connection is closed and the read path is done with it: a
+ * close that comes from a write error or a worker must not hand the
+ * buffer to another connection while a read into it is still pending or
+ * the I/O thread is decoding from it.
+ *
+ * The codec starts as Java serialization and may be switched once by a
+ * HELLO frame, which is only accepted as the very first frame.
+ *
+ * A client may pipeline requests. The connection counts requests that
+ * were read but not answered yet; once the per-connection limit is hit,
+ * reading pauses until one of them completes.
+ *
+ * A client that sent SUBSCRIBE gets every collection ChangeEvent
+ * through its write queue until it unsubscribes or disconnects.
+ */
+class ClientConnection {
+    /** Size of the per-connection read buffer */
+    static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    /** The channel for communicating with this client */
+    private final AsynchronousSocketChannel channel;
+
+    /** Client IP and port, used for logging */
+    private final String clientInfo;
+
+    /** Buffer that receives bytes from the channel (kept in write mode) */
+    private final ByteBuffer readBuffer;
+
+    /** Pool the read buffer came from */
+    private final BufferPool bufferPool;
+
+    /** Reassembles length-prefixed request frames */
+    private final FrameDecoder decoder;
+
+    /** Codec used for this client's requests and responses */
+    private volatile WireCodec codec = JavaCodec.INSTANCE;
+
+    /** Whether the first frame (possibly a HELLO) has been seen */
+    private boolean firstFrameSeen;
+
+    /** Serializes responses and notifications onto the channel */
+    private final WriteQueue writeQueue;
+
+    /** Requests read but not yet answered (guarded by this) */
+    private int inFlight;
+
+    /** Whether reading stopped because inFlight hit the limit (guarded by this) */
+    private boolean readPaused;
+
+    /** Whether the read path (a pending read or a dispatch loop) uses the read buffer (guarded by this) */
+    private boolean reading;
+
+    /** Whether the connection was closed; reading stops at once */
+    private volatile boolean closed;
+
+    /** Whether the read buffer went back to the pool (guarded by this) */
+    private boolean readBufferReleased;
+
+    /** Whether change events are streamed to this client */
+    private volatile boolean subscribed;
+
+    /** Version of the last change event queued for (or dropped for) this client */
+    private volatile long streamedVersion;
+
+    /**
+     * Creates the state for a freshly accepted client.
+     *
+     * @param channel The client's channel
+     * @param clientInfo Client IP and port for logging
+     * @param maxFrameSize Largest request frame accepted from this client
+     * @param bufferPool Pool to take the read buffer from
+     * @param writeQueue Queue for everything sent to this client
+     */
+    ClientConnection(AsynchronousSocketChannel channel, String clientInfo, int maxFrameSize,
+                     BufferPool bufferPool, WriteQueue writeQueue) {
+        this.channel = channel;
+        this.writeQueue = writeQueue;
+        this.clientInfo = clientInfo;
+        this.bufferPool = bufferPool;
+        this.readBuffer = bufferPool.acquire(READ_BUFFER_SIZE);
+        this.decoder = new FrameDecoder(maxFrameSize);
+    }
+
+    /**
+     * Marks the connection closed and stops its write queue. The read
+     * buffer goes back to the pool now if no read is using it, otherwise
+     * when the read path calls endRead().
+     * Call after the channel is closed.
+     *
+     * @return false if the connection was already closed
+     */
+    synchronized boolean close() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        writeQueue.close();
+        releaseReadBufferIfIdle();
+        return true;
+    }
+
+    /**
+     * Called by the read path before it touches the read buffer.
+     *
+     * @return false if the connection is closed and reading must stop
+     */
+    synchronized boolean beginRead() {
+        if (closed) {
+            reading = false;
+            releaseReadBufferIfIdle();
+            return false;
+        }
+        reading = true;
+        return true;
+    }
+
+    /**
+     * Called by the read path when it stops without starting another read.
+     */
+    synchronized void endRead() {
+        reading = false;
+        releaseReadBufferIfIdle();
+    }
+
+    private void releaseReadBufferIfIdle() {
+        if (closed && !reading && !readBufferReleased) {
+            readBufferReleased = true;
+            bufferPool.release(readBuffer);
+        }
+    }
+
+    /**
+     * Records that a request was read and handed to the scheduler.
+     *
+     * When reading pauses, the read path gives up the read buffer here,
+     * under the same lock that requestFinished() uses to resume it, so the
+     * worker that resumes reading owns the buffer from then on.
+     *
+     * @param maxInFlight Per-connection limit of unanswered requests
+     * @return true if reading may continue, false if it is now paused
+     */
+    synchronized boolean requestStarted(int maxInFlight) {
+        inFlight++;
+        if (inFlight >= maxInFlight) {
+            readPaused = true;
+            reading = false;
+            releaseReadBufferIfIdle();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records that a request was answered.
+     *
+     * @return true if reading was paused and the caller must resume it
+     */
+    synchronized boolean requestFinished() {
+        inFlight--;
+        if (readPaused) {
+            readPaused = false;
+            return true;
+        }
+        return false;
+    }
+
+    AsynchronousSocketChannel getChannel() { return channel; }
+
+    String getClientInfo() { return clientInfo; }
+
+    ByteBuffer getReadBuffer() { return readBuffer; }
+
+    FrameDecoder getDecoder() { return decoder; }
+
+    WriteQueue getWriteQueue() { return writeQueue; }
+
+    boolean isClosed() { return closed; }
+
+    WireCodec getCodec() { return codec; }
+
+    void setCodec(WireCodec codec) { this.codec = codec; }
+
+    boolean isSubscribed() { return subscribed; }
+
+    void setSubscribed(boolean subscribed) { this.subscribed = subscribed; }
+
+    long getStreamedVersion() { return streamedVersion; }
+
+    void setStreamedVersion(long streamedVersion) { this.streamedVersion = streamedVersion; }
+
+    /**
+     * Marks the first frame as seen.
+     *
+     * @return true if this is the first call, i.e. a HELLO is still allowed
+     */
+    boolean markFirstFrame() {
+        boolean first = !firstFrameSeen;
+        firstFrameSeen = true;
+        return first;
+    }
+}
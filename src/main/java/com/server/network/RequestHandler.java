@@ -6,6 +6,7 @@ import com.utils.CommandRegistry;
 import com.server.CommandHistory;
 import com.server.LoggingMiddleware;
 import com.server.DatabaseManager;
+import com.server.SessionManager;
 
 import java.nio.channels.AsynchronousSocketChannel;
 import java.sql.ResultSet;
@@ -23,6 +24,7 @@ import java.util.*;
  * Request types handled:
  * - COMMAND: Execute a command (show, info, help, add, update, etc.)
  * - HEALTH: Return server statistics
+ * - SUBSCRIBE / UNSUBSCRIBE: Start or stop streaming ChangeEvents to the client
  * 
  * Command routing logic:
  * - Commands with no args (show, info, help, clear, save, history, average_*): execute directly
@@ -30,7 +32,7 @@ import java.util.*;
  * - Commands with data (add, add_if_min): get object from request.data
  * - Commands with both args and data (update): get id from args, object from data
  * 
- * Uses new Thread (java.lang.Thread) for request processing.
+ * Called from RequestScheduler worker threads, never from I/O callbacks.
  */
 public class RequestHandler {
     /** Registry that holds all available commands and executes them */
@@ -59,7 +61,6 @@ public class RequestHandler {
 
     /**
      * Processes an incoming request and generates a response.
-     * Uses new Thread (java.lang.Thread) for processing.
      * 
      * @param request The incoming request from client
      * @param clientInfo Client IP and port for logging
@@ -71,7 +72,6 @@ public class RequestHandler {
 
     /**
      * Processes an incoming request and generates a response with client channel for notifications.
-     * Uses new Thread (java.lang.Thread) for processing.
      * 
      * @param request The incoming request from client
      * @param clientInfo Client IP and port for logging
@@ -95,6 +95,14 @@ public class RequestHandler {
                 return response;
             }
 
+            if (request.getType() == Request.RequestType.SUBSCRIBE
+                    || request.getType() == Request.RequestType.UNSUBSCRIBE) {
+                Response response = handleSubscription(request, clientChannel);
+                LoggingMiddleware.logCommand(clientInfo, request.getType().name().toLowerCase(), startTime,
+                    response.isSuccess(), response.isSuccess() ? response.getResult() : response.getError());
+                return response;
+            }
+
             if (request.getType() == Request.RequestType.EXECUTE_SQL) {
                 Response response = handleExecuteSql(request, clientInfo, startTime);
                 return response;
@@ -121,6 +129,38 @@ public class RequestHandler {
         return handle(request, "unknown");
     }
 
+    /**
+     * Records a request that was answered without running the command
+     * (from the response cache, or NOT_MODIFIED), so it shows up in the
+     * history and the log like any other.
+     * 
+     * @param request The request
+     * @param clientInfo Client IP and port for logging
+     * @param startTime When processing started
+     * @param result Result message for the log, e.g. "Cached response"
+     */
+    public void recordCachedCommand(Request request, String clientInfo, long startTime, String result) {
+        commandHistory.addCommand(request.getCommand());
+        LoggingMiddleware.logCommand(clientInfo, request.getCommand(), startTime, true, result);
+    }
+
+    /**
+     * Checks the credentials a request carries, without running it.
+     * Used before a read is answered from the response cache or with
+     * NOT_MODIFIED, so an expired session or a wrong password fails the
+     * same way whether or not the answer is cached.
+     *
+     * @param request The command request
+     * @return Error message, or null if the caller is authenticated or anonymous
+     */
+    public String checkCredentials(Request request) {
+        Map<String, Object> args = request.getArgs();
+        if (args == null || args.isEmpty()) {
+            return null;
+        }
+        return authenticate(request.getCommand(), new HashMap<>(args));
+    }
+
     /**
      * Handles a health check request.
      * Gets current server statistics and returns them in a Response.
@@ -140,6 +180,29 @@ public class RequestHandler {
         return Response.error("Server not available");
     }
 
+    /**
+     * Handles SUBSCRIBE and UNSUBSCRIBE requests.
+     * 
+     * @param request The request (SUBSCRIBE may carry a "fromVersion" arg)
+     * @param clientChannel The client's channel
+     * @return Response confirming the subscription change
+     */
+    private Response handleSubscription(Request request, AsynchronousSocketChannel clientChannel) {
+        AsyncServer server = ServerRunner.getServer();
+        if (server == null || clientChannel == null) {
+            return Response.error("Subscriptions need a network connection");
+        }
+        if (request.getType() == Request.RequestType.UNSUBSCRIBE) {
+            return server.unsubscribe(clientChannel);
+        }
+        long fromVersion = 0;
+        Map<String, Object> args = request.getArgs();
+        if (args != null && args.get("fromVersion") instanceof Number) {
+            fromVersion = ((Number) args.get("fromVersion")).longValue();
+        }
+        return server.subscribe(clientChannel, fromVersion);
+    }
+
     private Response handleExecuteSql(Request request, String clientInfo, long startTime) {
         Map<String, Object> args = request.getArgs();
         String sql = (String) args.get("sql");
@@ -206,6 +269,15 @@ public class RequestHandler {
         // Get args and data from request
         Map<String, Object> args = request.getArgs();
         Object data = request.getData();
+
+        if (args != null && !args.isEmpty()) {
+            args = new HashMap<>(args);
+            String authError = authenticate(command, args);
+            if (authError != null) {
+                LoggingMiddleware.logCommand(clientInfo, command, startTime, false, authError);
+                return Response.error(authError);
+            }
+        }
         
         // Handle commands based on whether they need data object
         Response response;
@@ -230,7 +302,7 @@ public class RequestHandler {
                 response.isSuccess(), resultMsg);
             
             if (response.isSuccess() && MODIFYING_COMMANDS.contains(command)) {
-                // Save to database after modifications
+                // Save to database after modifications (only the rows that changed)
                 boolean saved = MinHeap.getInstance().saveToDatabase();
                 if (!saved) {
                     LoggingMiddleware.logError(clientInfo, "Failed to save to database after " + command, null);
@@ -250,6 +322,39 @@ public class RequestHandler {
         }
     }
 
+    /**
+     * Turns the caller's credentials into the login and passwordHash args
+     * the commands use.
+     *
+     * A session token (args "session", from login) is looked up in
+     * memory. Login and password hash sent directly (older clients) are
+     * checked against the user cache. Either way no database query is
+     * needed once the user is known.
+     *
+     * @param command The command (login and register bring their own password)
+     * @param args Mutable copy of the request args
+     * @return Error message, or null if the caller is authenticated or anonymous
+     */
+    private String authenticate(String command, Map<String, Object> args) {
+        Object token = args.remove("session");
+        if (token != null) {
+            SessionManager.Session session = SessionManager.getInstance().resolve(token.toString());
+            if (session == null) {
+                return "Session expired, please login again";
+            }
+            args.put("login", session.getLogin());
+            args.put("passwordHash", session.getPasswordHash());
+            return null;
+        }
+        Object login = args.get("login");
+        Object passwordHash = args.get("passwordHash");
+        if (login != null && passwordHash != null && !command.equals("login") && !command.equals("register")
+                && !DatabaseManager.checkPasswordHash(login.toString(), passwordHash.toString())) {
+            return "Invalid login or password";
+        }
+        return null;
+    }
+
     private String getNotificationMessage(String command) {
         return switch (command) {
             case "add", "add_if_min" -> "A new element was added to the collection";
@@ -260,11 +365,4 @@ public class RequestHandler {
             default -> "The collection was updated";
         };
     }
-
-    private void broadcastToOthers(String notification, AsynchronousSocketChannel clientChannel) {
-        AsyncServer server = ServerRunner.getServer();
-        if (server != null) {
-            server.broadcastNotification(notification, clientChannel);
-        }
-    }
 }
@@ -0,0 +1,213 @@
+package com.server.network;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs decoded requests on a bounded set of threads.
+ *
+ * The I/O callbacks in AsyncServer must never block, so every request is
+ * handed to this scheduler. Unlike starting a new Thread per request,
+ * the scheduler caps how much work can pile up: once the limit is
+ * reached, submit() returns false and the server answers with a
+ * "server busy" error instead of creating more threads.
+ *
+ * Modes:
+ * - BOUNDED: fixed pool of worker threads with a bounded queue
+ * - WORK_STEALING: ForkJoinPool sized to the number of cores
+ * - VIRTUAL: one virtual thread per request (needs Java 21+,
+ *   falls back to WORK_STEALING on older JVMs)
+ *
+ * In every mode the number of accepted-but-unfinished requests is
+ * limited to workers + queueLimit (VIRTUAL: queueLimit).
+ */
+public class RequestScheduler {
+
+    /**
+     * Available scheduling strategies.
+     */
+    public enum Mode {
+        /** Fixed thread pool with a bounded queue */
+        BOUNDED,
+        /** Work-stealing pool with one thread per core */
+        WORK_STEALING,
+        /** Virtual thread per request */
+        VIRTUAL;
+
+        /**
+         * Parses a mode name as given on the command line.
+         * Accepts "bounded", "work-stealing" / "work_stealing" and "virtual".
+         *
+         * @param name The mode name
+         * @return The matching mode
+         * @throws IllegalArgumentException If the name is unknown
+         */
+        public static Mode parse(String name) {
+            return Mode.valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    /** Mode that is actually in use (may differ from the requested one) */
+    private final Mode mode;
+
+    /** Executor that runs the tasks */
+    private final ExecutorService executor;
+
+    /** Maximum number of accepted requests that may be unfinished at once */
+    private final int capacity;
+
+    /** Requests accepted but not yet finished */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /** Requests accepted but not yet started */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /** Requests turned away because the scheduler was full */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param requestedMode The mode to use
+     * @param workers Number of worker threads (BOUNDED) or parallelism (WORK_STEALING)
+     * @param queueLimit How many requests may wait for a worker
+     */
+    public RequestScheduler(Mode requestedMode, int workers, int queueLimit) {
+        Mode effective = requestedMode;
+        ExecutorService created = null;
+
+        if (requestedMode == Mode.VIRTUAL) {
+            created = newVirtualThreadExecutor();
+            if (created == null) {
+                System.err.println("Virtual threads are not available on this JVM, using work-stealing pool");
+                effective = Mode.WORK_STEALING;
+            }
+        }
+
+        if (effective == Mode.BOUNDED) {
+            created = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueLimit), namedThreads("request-worker"),
+                new ThreadPoolExecutor.AbortPolicy());
+        } else if (effective == Mode.WORK_STEALING) {
+            created = new ForkJoinPool(workers, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        }
+
+        this.mode = effective;
+        this.executor = created;
+        this.capacity = effective == Mode.VIRTUAL ? queueLimit : workers + queueLimit;
+    }
+
+    /**
+     * Submits a request for processing.
+     *
+     * @param task The work to run
+     * @return true if the task was accepted, false if the scheduler is full
+     */
+    public boolean submit(Runnable task) {
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        waiting.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                waiting.decrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Pool queue full or pool shut down
+            waiting.decrementAndGet();
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Stops accepting work and waits briefly for running requests.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the mode in use.
+     *
+     * @return The effective mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the number of requests waiting for a thread.
+     *
+     * @return Current queue depth
+     */
+    public int getQueueDepth() {
+        return waiting.get();
+    }
+
+    /**
+     * Gets the number of requests rejected since the server started.
+     *
+     * @return Rejected request count
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor through reflection,
+     * so the code still compiles and runs on JVMs older than 21.
+     *
+     * @return The executor, or null if virtual threads are unavailable
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor")
+                .invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a thread factory with readable thread names.
+     *
+     * @param prefix Name prefix, e.g. "request-worker"
+     * @return The factory
+     */
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
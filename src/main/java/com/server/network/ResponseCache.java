@@ -0,0 +1,178 @@
+package com.server.network;
+
+import com.common.CachedResponse;
+import com.common.Request;
+import com.common.Response;
+import com.common.WireCodec;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of encoded responses to read-only commands.
+ *
+ * show, info, help, average_of_number_of_participants and
+ * count_by_number_of_participants only depend on the collection, so
+ * their answer stays the same until the collection changes. Entries are
+ * keyed on the command and its arguments (without login/passwordHash)
+ * and remember the collection version they were computed at; an entry
+ * from an older version counts as a miss and is replaced.
+ *
+ * An entry keeps the response object and its encoded bytes per codec
+ * (CachedResponse), so a hit skips command execution and serialization.
+ */
+class ResponseCache {
+    /** Commands whose answer depends only on the collection and their args */
+    private static final Set<String> CACHEABLE_COMMANDS = Set.of(
+        "show", "info", "help", "average_of_number_of_participants", "count_by_number_of_participants",
+        "range_by_id");
+
+    /** Arguments that identify the user, not the question */
+    private static final Set<String> AUTH_ARGS = Set.of("login", "passwordHash", "password", "session");
+
+    /** Most distinct keys kept (count_by_number_of_participants can have many) */
+    private final int maxEntries;
+
+    /** Largest payload allowed by the protocol */
+    private final int maxFrameSize;
+
+    /** Entries by key */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries Most distinct command/argument combinations kept (0 disables the cache)
+     * @param maxFrameSize Largest payload allowed by the protocol
+     */
+    ResponseCache(int maxEntries, int maxFrameSize) {
+        this.maxEntries = maxEntries;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Checks whether a request is a read-only command whose answer only
+     * changes with the collection version. Such answers are cached here
+     * and can be answered with NOT_MODIFIED (Request.ifNoneMatch).
+     *
+     * @param request The request
+     * @return true for show, info, help and the aggregate commands
+     */
+    static boolean isReadOnly(Request request) {
+        return request.getType() == Request.RequestType.COMMAND && request.getData() == null
+            && request.getCommand() != null
+            && CACHEABLE_COMMANDS.contains(request.getCommand().toLowerCase());
+    }
+
+    /**
+     * Builds the cache key for a request.
+     *
+     * @param request The request
+     * @return Key, or null if the request cannot be answered from the cache
+     */
+    String keyFor(Request request) {
+        if (maxEntries <= 0 || !isReadOnly(request)) {
+            return null;
+        }
+        String command = request.getCommand().toLowerCase();
+        // Sorted, so the same arguments always give the same key
+        Map<String, Object> args = new TreeMap<>();
+        if (request.getArgs() != null) {
+            for (Map.Entry<String, Object> arg : request.getArgs().entrySet()) {
+                if (!AUTH_ARGS.contains(arg.getKey())) {
+                    args.put(arg.getKey(), arg.getValue());
+                }
+            }
+        }
+        return args.isEmpty() ? command : command + " " + args;
+    }
+
+    /**
+     * Looks up the encoded answer for a key at the current version.
+     * Encodes it for the codec if only another codec's bytes are cached.
+     *
+     * @param key Key from keyFor()
+     * @param version Current collection version
+     * @param codec Codec of the asking client
+     * @return Encoded response, or null on a miss
+     */
+    CachedResponse get(String key, long version, WireCodec codec) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version != version) {
+            misses.increment();
+            return null;
+        }
+        CachedResponse cached = entry.encoded.get(codec);
+        if (cached == null) {
+            cached = encode(entry.response, codec);
+            if (cached == null) {
+                misses.increment();
+                return null;
+            }
+            entry.encoded.put(codec, cached);
+        }
+        hits.increment();
+        return cached;
+    }
+
+    /**
+     * Stores a freshly computed answer.
+     *
+     * @param key Key from keyFor()
+     * @param version Collection version read before the command ran
+     * @param response Successful response (must not be changed afterwards)
+     * @param codec Codec of the asking client
+     * @return The encoded response, or null if it cannot be cached
+     */
+    CachedResponse put(String key, long version, Response response, WireCodec codec) {
+        CachedResponse cached = encode(response, codec);
+        if (cached == null) {
+            return null;
+        }
+        if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+            // Full - drop entries of older versions, or skip storing
+            entries.values().removeIf(old -> old.version != version);
+            if (entries.size() >= maxEntries) {
+                return cached;
+            }
+        }
+        Entry entry = new Entry(version, response);
+        entry.encoded.put(codec, cached);
+        entries.merge(key, entry, (old, fresh) -> old.version > fresh.version ? old : fresh);
+        return cached;
+    }
+
+    private CachedResponse encode(Response response, WireCodec codec) {
+        try {
+            return CachedResponse.encode(response, codec, maxFrameSize);
+        } catch (IOException e) {
+            // Too large or not encodable - answer normally
+            return null;
+        }
+    }
+
+    long getHits() { return hits.sum(); }
+
+    long getMisses() { return misses.sum(); }
+
+    /**
+     * Answer to one command/argument combination at one version.
+     */
+    private static final class Entry {
+        final long version;
+        final Response response;
+        final Map<WireCodec, CachedResponse> encoded = new ConcurrentHashMap<>();
+
+        Entry(long version, Response response) {
+            this.version = version;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.server.network;
+
+import java.util.Locale;
+
+/**
+ * What the server does when a client does not read its data fast enough
+ * and the connection's write queue passes the high-water mark.
+ */
+public enum SlowConsumerPolicy {
+    /** Drop notifications for that client while it is over the mark */
+    DROP_NOTIFICATIONS,
+    /** Close the connection as soon as the mark is passed */
+    DISCONNECT;
+
+    /**
+     * Parses a policy name as given on the command line.
+     * Accepts "drop-notifications" / "drop_notifications" and "disconnect".
+     *
+     * @param name The policy name
+     * @return The matching policy
+     * @throws IllegalArgumentException If the name is unknown
+     */
+    public static SlowConsumerPolicy parse(String name) {
+        return SlowConsumerPolicy.valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+}
@@ -0,0 +1,367 @@
+package com.server.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Outgoing frames of one client connection, written one after another.
+ *
+ * An AsynchronousSocketChannel allows only one pending write. Responses
+ * (from several workers, with pipelining) and broadcast notifications
+ * are all queued here instead of calling channel.write() directly, which
+ * would throw WritePendingException while another write is running.
+ *
+ * Frames that pile up while a write is in flight are coalesced: the next
+ * write takes up to MAX_FRAMES_PER_WRITE queued frames (at most
+ * MAX_BYTES_PER_WRITE bytes) and sends them with one gathering write.
+ *
+ * Slow consumers: the queue tracks how many bytes are waiting. Above the
+ * high-water mark, new notifications are dropped (DROP_NOTIFICATIONS) or
+ * the client is disconnected (DISCONNECT). Responses are never dropped.
+ *
+ * A frame may be split into several buffers (parts) that are written
+ * back to back - this lets cached responses share their body between
+ * clients and only supply the few bytes that differ.
+ *
+ * Every frame comes with an onDone callback. It runs exactly once: after
+ * the frame was written completely, or when it is dropped because the
+ * write failed or the connection was closed. Callers use it to release
+ * pooled buffers.
+ */
+class WriteQueue {
+
+    /** Most frames combined into one gathering write */
+    private static final int MAX_FRAMES_PER_WRITE = 64;
+
+    /** Soft limit on bytes combined into one gathering write */
+    private static final int MAX_BYTES_PER_WRITE = 1024 * 1024;
+
+    /** Channel to write to */
+    private final AsynchronousSocketChannel channel;
+
+    /** Called once when a write fails or the client is too slow */
+    private final Consumer<Throwable> onError;
+
+    /** Bytes allowed to wait in the queue before the policy applies */
+    private final long highWaterMark;
+
+    /** Policy for clients above the high-water mark */
+    private final SlowConsumerPolicy policy;
+
+    /** Server-wide counters shared by all queues */
+    private final Totals totals;
+
+    /** Frames waiting to be written */
+    private final Queue<Outgoing> queue = new ConcurrentLinkedQueue<>();
+
+    /** Whether a write is currently pending on the channel */
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+
+    /** Bytes queued or being written */
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    /** Bytes written to this client */
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /** Frames written to this client */
+    private final AtomicLong framesWritten = new AtomicLong();
+
+    /** Channel writes issued (less than framesWritten when coalescing works) */
+    private final AtomicLong writeCalls = new AtomicLong();
+
+    /** Notifications dropped because the client was too slow */
+    private final AtomicLong droppedNotifications = new AtomicLong();
+
+    /** Set once the connection is closed; later frames are dropped */
+    private volatile boolean closed;
+
+    /**
+     * Creates a write queue.
+     *
+     * @param channel Channel to write to
+     * @param highWaterMark Queued bytes above which the slow-consumer policy applies
+     * @param policy What to do with slow consumers
+     * @param totals Server-wide counters to add to
+     * @param onError Called when a write fails or the client is disconnected as too slow
+     */
+    WriteQueue(AsynchronousSocketChannel channel, long highWaterMark, SlowConsumerPolicy policy,
+               Totals totals, Consumer<Throwable> onError) {
+        this.channel = channel;
+        this.highWaterMark = highWaterMark;
+        this.policy = policy;
+        this.totals = totals;
+        this.onError = onError;
+    }
+
+    /**
+     * Queues a response frame. Responses are never dropped for being slow,
+     * but the DISCONNECT policy may close the connection.
+     *
+     * @param frame Flipped buffer holding a complete frame
+     * @param onDone Runs once the frame is written or dropped
+     */
+    void enqueue(ByteBuffer frame, Runnable onDone) {
+        enqueue(new ByteBuffer[] {frame}, onDone);
+    }
+
+    /**
+     * Queues a response frame made of several buffers, written in order.
+     *
+     * @param parts Flipped buffers that together form one complete frame
+     * @param onDone Runs once the frame is written or dropped
+     */
+    void enqueue(ByteBuffer[] parts, Runnable onDone) {
+        if (policy == SlowConsumerPolicy.DISCONNECT && overHighWater()) {
+            onDone.run();
+            disconnectSlowConsumer();
+            return;
+        }
+        add(new Outgoing(parts, onDone));
+    }
+
+    /**
+     * Queues a notification frame, or drops it if the client is too far behind.
+     *
+     * @param frame Flipped buffer holding a complete frame
+     * @param onDone Runs once the frame is written or dropped
+     * @return true if queued, false if dropped
+     */
+    boolean enqueueNotification(ByteBuffer frame, Runnable onDone) {
+        if (overHighWater()) {
+            onDone.run();
+            if (policy == SlowConsumerPolicy.DISCONNECT) {
+                disconnectSlowConsumer();
+            } else {
+                droppedNotifications.incrementAndGet();
+                totals.droppedNotifications.increment();
+            }
+            return false;
+        }
+        add(new Outgoing(new ByteBuffer[] {frame}, onDone));
+        return true;
+    }
+
+    /**
+     * Drops all queued frames. Frames enqueued later are dropped at once.
+     */
+    void close() {
+        closed = true;
+        drain();
+    }
+
+    private boolean overHighWater() {
+        return queuedBytes.get() > highWaterMark;
+    }
+
+    private void add(Outgoing item) {
+        if (closed) {
+            item.onDone.run();
+            return;
+        }
+        queuedBytes.addAndGet(item.size);
+        queue.add(item);
+        if (closed) {
+            // Closed while adding - make sure nothing stays behind
+            drain();
+            return;
+        }
+        if (writing.compareAndSet(false, true)) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Starts a gathering write of the queued frames, or marks the queue idle.
+     * Only called by the thread that owns the "writing" flag.
+     */
+    private void writeNext() {
+        List<Outgoing> batch = new ArrayList<>();
+        int partCount = 0;
+        long batchBytes = 0;
+        Outgoing next;
+        while (batch.size() < MAX_FRAMES_PER_WRITE && batchBytes < MAX_BYTES_PER_WRITE
+                && (next = queue.poll()) != null) {
+            batch.add(next);
+            partCount += next.parts.length;
+            batchBytes += next.size;
+        }
+
+        if (batch.isEmpty()) {
+            writing.set(false);
+            // A frame may have been added after poll() but before the flag was cleared
+            if (!queue.isEmpty() && writing.compareAndSet(false, true)) {
+                writeNext();
+            }
+            return;
+        }
+        if (closed) {
+            finish(batch);
+            writing.set(false);
+            drain();
+            return;
+        }
+
+        ByteBuffer[] buffers = new ByteBuffer[partCount];
+        int index = 0;
+        for (Outgoing item : batch) {
+            for (ByteBuffer part : item.parts) {
+                buffers[index++] = part;
+            }
+        }
+        Batch attachment = new Batch(batch, buffers);
+        try {
+            writeCalls.incrementAndGet();
+            channel.write(buffers, 0, buffers.length, 0L, TimeUnit.MILLISECONDS, attachment, batchHandler);
+        } catch (Exception e) {
+            finish(batch);
+            fail(e);
+        }
+    }
+
+    /** Continues partial gathering writes and completes finished batches */
+    private final CompletionHandler<Long, Batch> batchHandler = new CompletionHandler<Long, Batch>() {
+        @Override
+        public void completed(Long written, Batch batch) {
+            bytesWritten.addAndGet(written);
+            totals.bytesWritten.add(written);
+
+            // Skip the buffers that are fully written
+            while (batch.offset < batch.buffers.length && !batch.buffers[batch.offset].hasRemaining()) {
+                batch.offset++;
+            }
+            if (batch.offset < batch.buffers.length) {
+                // Partial write - send the rest
+                writeCalls.incrementAndGet();
+                channel.write(batch.buffers, batch.offset, batch.buffers.length - batch.offset,
+                    0L, TimeUnit.MILLISECONDS, batch, this);
+                return;
+            }
+
+            framesWritten.addAndGet(batch.items.size());
+            totals.framesWritten.add(batch.items.size());
+            finish(batch.items);
+            writeNext();
+        }
+
+        @Override
+        public void failed(Throwable exc, Batch batch) {
+            finish(batch.items);
+            fail(exc);
+        }
+    };
+
+    /**
+     * Runs onDone for written or dropped frames and updates the queued byte count.
+     */
+    private void finish(List<Outgoing> items) {
+        for (Outgoing item : items) {
+            queuedBytes.addAndGet(-item.size);
+            item.onDone.run();
+        }
+    }
+
+    /**
+     * Handles a failed write: drops everything and reports the error.
+     */
+    private void fail(Throwable exc) {
+        closed = true;
+        writing.set(false);
+        drain();
+        if (!(exc instanceof ClosedChannelException)) {
+            System.err.println("Error writing response: " + exc.getMessage());
+        }
+        onError.accept(exc);
+    }
+
+    /**
+     * Closes a client whose queue passed the high-water mark.
+     */
+    private void disconnectSlowConsumer() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        totals.slowConsumerDisconnects.increment();
+        drain();
+        onError.accept(new IOException("Client too slow: more than " + highWaterMark + " bytes queued"));
+    }
+
+    /**
+     * Runs onDone for every queued frame and empties the queue.
+     */
+    private void drain() {
+        Outgoing item;
+        while ((item = queue.poll()) != null) {
+            queuedBytes.addAndGet(-item.size);
+            item.onDone.run();
+        }
+    }
+
+    // Getters for per-connection counters
+
+    long getBytesWritten() { return bytesWritten.get(); }
+
+    long getFramesWritten() { return framesWritten.get(); }
+
+    long getWriteCalls() { return writeCalls.get(); }
+
+    long getDroppedNotifications() { return droppedNotifications.get(); }
+
+    long getQueuedBytes() { return queuedBytes.get(); }
+
+    /**
+     * A queued frame (one or more buffers) and its completion callback.
+     */
+    private static final class Outgoing {
+        final ByteBuffer[] parts;
+        final Runnable onDone;
+        final int size;
+
+        Outgoing(ByteBuffer[] parts, Runnable onDone) {
+            this.parts = parts;
+            this.onDone = onDone;
+            int total = 0;
+            for (ByteBuffer part : parts) {
+                total += part.remaining();
+            }
+            this.size = total;
+        }
+    }
+
+    /**
+     * Frames being written by one gathering write.
+     */
+    private static final class Batch {
+        final List<Outgoing> items;
+        final ByteBuffer[] buffers;
+        /** First buffer that still has bytes left */
+        int offset;
+
+        Batch(List<Outgoing> items, ByteBuffer[] buffers) {
+            this.items = items;
+            this.buffers = buffers;
+        }
+    }
+
+    /**
+     * Counters summed over all connections of a server.
+     */
+    static final class Totals {
+        final LongAdder bytesWritten = new LongAdder();
+        final LongAdder framesWritten = new LongAdder();
+        final LongAdder droppedNotifications = new LongAdder();
+        final LongAdder slowConsumerDisconnects = new LongAdder();
+    }
+}
@@ -0,0 +1,295 @@
+package com.utils;
+
+import com.model.MusicBand;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary indexes over the collection: bands by best album name, bands
+ * by owner login, and all bands ordered by name and by ID.
+ *
+ * remove_all_by_best_album and clear used to walk the whole heap and
+ * compare every album name (equalsIgnoreCase) or owner. With these
+ * indexes MinHeap looks the matching bands up directly, so the cost
+ * depends on how many bands match, not on the size of the collection.
+ *
+ * Album names are stored case-folded (see foldCase), so a lookup matches
+ * exactly the names equalsIgnoreCase would. Bands without an album or
+ * owner are not in the respective index.
+ *
+ * The name order (name, then ID to tell equal names apart) is kept in a
+ * ConcurrentSkipListMap, so show walks the bands in order instead of
+ * copying and sorting the collection, and can start anywhere in it for
+ * paging.
+ *
+ * The ID order is a TreeMap: remove_greater takes the tail after an ID
+ * (O(log n) to find, then only the bands in it) and range_by_id a sub
+ * map, instead of testing the ID of every band. It also gives the lowest
+ * and highest ID.
+ *
+ * Not thread-safe: MinHeap changes it under its write lock, together
+ * with the heap (see CollectionStatistics for the counters).
+ */
+class BandIndexes {
+    private final Map<String, LongObjectHashMap<MusicBand>> byAlbum = new HashMap<>();
+    private final Map<String, LongObjectHashMap<MusicBand>> byOwner = new HashMap<>();
+    private final ConcurrentSkipListMap<NameKey, MusicBand> byName = new ConcurrentSkipListMap<>();
+    private final TreeMap<Long, MusicBand> byIdOrder = new TreeMap<>();
+
+    /**
+     * Position of a band in name order. Bands without a name come last.
+     */
+    private static final class NameKey implements Comparable<NameKey> {
+        final String name;
+        final long id;
+
+        NameKey(String name, long id) {
+            this.name = name;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(NameKey other) {
+            if (name == null || other.name == null) {
+                if (name != other.name) {
+                    return name == null ? 1 : -1;
+                }
+            } else {
+                int byName = name.compareTo(other.name);
+                if (byName != 0) {
+                    return byName;
+                }
+            }
+            return Long.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof NameKey && compareTo((NameKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id);
+        }
+    }
+
+    void added(MusicBand band) {
+        byName.put(new NameKey(band.getName(), band.getId()), band);
+        byIdOrder.put(band.getId(), band);
+        String album = albumKey(band);
+        if (album != null) {
+            put(byAlbum, album, band);
+        }
+        if (band.getOwnerLogin() != null) {
+            put(byOwner, band.getOwnerLogin(), band);
+        }
+    }
+
+    void removed(MusicBand band) {
+        byName.remove(new NameKey(band.getName(), band.getId()));
+        byIdOrder.remove(band.getId());
+        String album = albumKey(band);
+        if (album != null) {
+            remove(byAlbum, album, band);
+        }
+        if (band.getOwnerLogin() != null) {
+            remove(byOwner, band.getOwnerLogin(), band);
+        }
+    }
+
+    /**
+     * Indexes a whole collection from scratch, dropping the old entries.
+     *
+     * @param bands Every band in the collection
+     */
+    void reset(Collection<MusicBand> bands) {
+        byAlbum.clear();
+        byOwner.clear();
+        byName.clear();
+        byIdOrder.clear();
+        for (MusicBand band : bands) {
+            added(band);
+        }
+    }
+
+    /**
+     * Gets the bands whose best album has a name, ignoring case.
+     *
+     * @param albumName The album name
+     * @return The bands (a copy), in no particular order
+     */
+    List<MusicBand> getByAlbum(String albumName) {
+        return values(byAlbum.get(foldCase(albumName)));
+    }
+
+    /**
+     * Gets the bands owned by a login.
+     *
+     * @param login The owner's login
+     * @return The bands (a copy), in no particular order
+     */
+    List<MusicBand> getByOwner(String login) {
+        return values(byOwner.get(login));
+    }
+
+    /**
+     * Gets bands in name order.
+     *
+     * @param fromName Name to start at (null for the first band)
+     * @param afterId If not null, start after the band with fromName and this ID
+     *                (the last band of the previous page)
+     * @param limit Most bands returned (0 or less for all)
+     * @return The bands, ordered by name and then ID
+     */
+    List<MusicBand> getByName(String fromName, Long afterId, int limit) {
+        Collection<MusicBand> tail;
+        if (fromName == null && afterId == null) {
+            tail = byName.values();
+        } else if (afterId == null) {
+            tail = byName.tailMap(new NameKey(fromName, Long.MIN_VALUE), true).values();
+        } else {
+            tail = byName.tailMap(new NameKey(fromName, afterId), false).values();
+        }
+        // size() of a skip list counts its nodes, so do not size the list from it
+        List<MusicBand> page = new ArrayList<>(limit > 0 ? Math.min(limit, 1024) : 1024);
+        for (MusicBand band : tail) {
+            if (limit > 0 && page.size() == limit) {
+                break;
+            }
+            page.add(band);
+        }
+        return page;
+    }
+
+    /**
+     * Gets the bands with an ID in a range.
+     *
+     * @param fromId Lowest ID
+     * @param fromInclusive Whether a band with fromId is included
+     * @param toId Highest ID (Long.MAX_VALUE for no upper bound)
+     * @return The bands (a copy), in ID order
+     */
+    List<MusicBand> getByIdRange(long fromId, boolean fromInclusive, long toId) {
+        if (fromId > toId) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(byIdOrder.subMap(fromId, fromInclusive, toId, true).values());
+    }
+
+    Long getMinId() {
+        return byIdOrder.isEmpty() ? null : byIdOrder.firstKey();
+    }
+
+    Long getMaxId() {
+        return byIdOrder.isEmpty() ? null : byIdOrder.lastKey();
+    }
+
+    int countByAlbum(String albumName) {
+        LongObjectHashMap<MusicBand> bands = byAlbum.get(foldCase(albumName));
+        return bands == null ? 0 : bands.size();
+    }
+
+    int countByOwner(String login) {
+        LongObjectHashMap<MusicBand> bands = byOwner.get(login);
+        return bands == null ? 0 : bands.size();
+    }
+
+    /**
+     * Compares the indexes with a brute-force scan of the collection.
+     *
+     * @param bands Every band in the collection
+     * @param problems Receives a description of every difference found
+     */
+    void check(Collection<MusicBand> bands, List<String> problems) {
+        BandIndexes expected = new BandIndexes();
+        expected.reset(bands);
+        compare("album", expected.byAlbum, byAlbum, problems);
+        compare("owner", expected.byOwner, byOwner, problems);
+        if (!new ArrayList<>(byName.keySet()).equals(new ArrayList<>(expected.byName.keySet()))) {
+            problems.add("name index has " + byName.size() + " bands out of order or missing, expected " + expected.byName.size());
+        }
+        for (Map.Entry<NameKey, MusicBand> entry : byName.entrySet()) {
+            if (expected.byName.get(entry.getKey()) != entry.getValue()) {
+                problems.add("name index has a stale band " + entry.getKey().id);
+            }
+        }
+        if (!byIdOrder.equals(expected.byIdOrder)) {
+            problems.add("ID order index has " + byIdOrder.size() + " bands, expected " + expected.byIdOrder.size());
+        }
+        for (Map.Entry<Long, MusicBand> entry : byIdOrder.entrySet()) {
+            if (expected.byIdOrder.get(entry.getKey()) != entry.getValue()) {
+                problems.add("ID order index has a stale band " + entry.getKey());
+            }
+        }
+    }
+
+    private static void compare(String index, Map<String, LongObjectHashMap<MusicBand>> expected,
+                                Map<String, LongObjectHashMap<MusicBand>> actual, List<String> problems) {
+        if (!expected.keySet().equals(actual.keySet())) {
+            problems.add(index + " index has keys " + actual.keySet() + ", expected " + expected.keySet());
+            return;
+        }
+        for (Map.Entry<String, LongObjectHashMap<MusicBand>> entry : expected.entrySet()) {
+            LongObjectHashMap<MusicBand> have = actual.get(entry.getKey());
+            if (have.size() != entry.getValue().size()) {
+                problems.add(index + " index has " + have.size() + " bands for '" + entry.getKey()
+                    + "', expected " + entry.getValue().size());
+                continue;
+            }
+            entry.getValue().forEachValue(band -> {
+                if (have.get(band.getId()) != band) {
+                    problems.add(index + " index is missing band " + band.getId() + " under '" + entry.getKey() + "'");
+                }
+            });
+        }
+    }
+
+    /**
+     * Folds a string the way equalsIgnoreCase compares it: every char to
+     * upper case and back to lower case.
+     *
+     * @param s The string
+     * @return The folded string
+     */
+    static String foldCase(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    private static String albumKey(MusicBand band) {
+        if (band.getBestAlbum() == null || band.getBestAlbum().getName() == null) {
+            return null;
+        }
+        return foldCase(band.getBestAlbum().getName());
+    }
+
+    private static void put(Map<String, LongObjectHashMap<MusicBand>> index, String key, MusicBand band) {
+        // Most keys hold one band or a few - start small
+        index.computeIfAbsent(key, k -> new LongObjectHashMap<>(1)).put(band.getId(), band);
+    }
+
+    private static void remove(Map<String, LongObjectHashMap<MusicBand>> index, String key, MusicBand band) {
+        LongObjectHashMap<MusicBand> bands = index.get(key);
+        if (bands != null && bands.remove(band.getId()) != null && bands.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static List<MusicBand> values(LongObjectHashMap<MusicBand> bands) {
+        List<MusicBand> list = new ArrayList<>(bands == null ? 0 : bands.size());
+        if (bands != null) {
+            bands.forEachValue(list::add);
+        }
+        return list;
+    }
+}
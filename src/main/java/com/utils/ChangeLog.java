@@ -0,0 +1,79 @@
+package com.utils;
+
+import com.common.ChangeEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ring buffer of the most recent collection changes.
+ *
+ * Lets a client that reconnects (or missed a notification) catch up from
+ * the last version it saw without downloading the whole collection.
+ * When the requested version is older than the oldest kept event,
+ * since() returns null and the caller sends a snapshot instead.
+ *
+ * Not thread-safe: MinHeap appends under its write lock and reads under
+ * its read lock.
+ */
+public class ChangeLog {
+    /** Kept events, oldest at index head */
+    private final ChangeEvent[] events;
+
+    /** Index of the oldest event */
+    private int head;
+
+    /** Number of events kept */
+    private int size;
+
+    /**
+     * Creates a change log.
+     *
+     * @param capacity How many recent events to keep
+     */
+    public ChangeLog(int capacity) {
+        this.events = new ChangeEvent[capacity];
+    }
+
+    /**
+     * Adds an event, overwriting the oldest one when full.
+     * Versions must be appended in increasing order without gaps.
+     *
+     * @param event The new event
+     */
+    public void append(ChangeEvent event) {
+        if (size < events.length) {
+            events[(head + size) % events.length] = event;
+            size++;
+        } else {
+            events[head] = event;
+            head = (head + 1) % events.length;
+        }
+    }
+
+    /**
+     * Returns the events after the given version.
+     *
+     * @param version Last version the caller has
+     * @param currentVersion Latest collection version
+     * @return Events with a higher version, oldest first (empty if up to date),
+     *         or null if some of them are no longer kept (or version is unknown)
+     */
+    public List<ChangeEvent> since(long version, long currentVersion) {
+        List<ChangeEvent> result = new ArrayList<>();
+        if (version == currentVersion) {
+            return result;
+        }
+        // A version from the future means the server restarted since
+        if (version > currentVersion || size == 0 || events[head].getVersion() > version + 1) {
+            return null;
+        }
+        for (int i = 0; i < size; i++) {
+            ChangeEvent event = events[(head + i) % events.length];
+            if (event.getVersion() > version) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,184 @@
+package com.utils;
+
+import com.model.MusicBand;
+import com.model.MusicGenre;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counters describing the collection, kept up to date by MinHeap.
+ *
+ * Every band added to or removed from the heap is passed to added() or
+ * removed(), so info, the health report and the participant commands
+ * read a counter instead of walking the heap or asking the database.
+ *
+ * Kept per collection:
+ * - the number of bands
+ * - bands per owner login and per genre
+ * - bands per number of participants, and the sum of participants
+ *
+ * The lowest and highest ID come from the ID-ordered index instead
+ * (MinHeap.getMinId / getMaxId).
+ *
+ * Not thread-safe: MinHeap changes it under its write lock and reads it
+ * under its read lock (see MinHeap.readStatistics). The one exception is
+ * getCountByParticipants, which MinHeap also calls without the lock
+ * (see MinHeap.readOptimistically) - so that map is a ConcurrentHashMap.
+ */
+public class CollectionStatistics {
+    private int total;
+
+    /** Bands per owner login (null key for bands without an owner) */
+    private final Map<String, Integer> owners = new HashMap<>();
+
+    /** Bands per genre, indexed by ordinal */
+    private final int[] genres = new int[MusicGenre.values().length];
+
+    /** Bands per number of participants (safe to read while it changes) */
+    private final Map<Integer, Integer> participants = new ConcurrentHashMap<>();
+
+    /** Sum of the participants of all bands that have a number */
+    private long participantSum;
+
+    /** Bands that have a number of participants */
+    private int participantBands;
+
+    void added(MusicBand band) {
+        total++;
+        owners.merge(band.getOwnerLogin(), 1, Integer::sum);
+        if (band.getGenre() != null) {
+            genres[band.getGenre().ordinal()]++;
+        }
+        Integer count = band.getNumberOfParticipants();
+        if (count != null) {
+            participants.merge(count, 1, Integer::sum);
+            participantSum += count;
+            participantBands++;
+        }
+    }
+
+    void removed(MusicBand band) {
+        total--;
+        decrement(owners, band.getOwnerLogin());
+        if (band.getGenre() != null) {
+            genres[band.getGenre().ordinal()]--;
+        }
+        Integer count = band.getNumberOfParticipants();
+        if (count != null) {
+            decrement(participants, count);
+            participantSum -= count;
+            participantBands--;
+        }
+    }
+
+    /**
+     * Counts a whole collection from scratch, dropping the old counters.
+     *
+     * @param bands Every band in the collection
+     */
+    void reset(Collection<MusicBand> bands) {
+        total = 0;
+        owners.clear();
+        Arrays.fill(genres, 0);
+        participants.clear();
+        participantSum = 0;
+        participantBands = 0;
+        for (MusicBand band : bands) {
+            added(band);
+        }
+    }
+
+    /**
+     * Compares these counters with ones freshly counted from the heap.
+     *
+     * @param expected Counters from reset() over the current collection
+     * @param problems Receives a description of every difference found
+     */
+    void check(CollectionStatistics expected, List<String> problems) {
+        if (total != expected.total) {
+            problems.add("statistics count " + total + " bands, heap has " + expected.total);
+        }
+        if (!owners.equals(expected.owners)) {
+            problems.add("statistics owner counts " + owners + ", expected " + expected.owners);
+        }
+        if (!Arrays.equals(genres, expected.genres)) {
+            problems.add("statistics genre counts " + Arrays.toString(genres)
+                + ", expected " + Arrays.toString(expected.genres));
+        }
+        if (!participants.equals(expected.participants) || participantSum != expected.participantSum
+                || participantBands != expected.participantBands) {
+            problems.add("statistics participants histogram " + participants + ", expected " + expected.participants);
+        }
+    }
+
+    private static <K> void decrement(Map<K, Integer> counts, K key) {
+        // Drop keys that reach zero so the map does not keep every owner ever seen
+        counts.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    // Getters below
+
+    public int getTotal() { return total; }
+
+    /**
+     * Gets the number of different owners.
+     *
+     * @return Logins owning at least one band (bands without an owner are not counted)
+     */
+    public int getOwnerCount() {
+        return owners.containsKey(null) ? owners.size() - 1 : owners.size();
+    }
+
+    public int getCountByOwner(String login) {
+        return owners.getOrDefault(login, 0);
+    }
+
+    public int getCountByGenre(MusicGenre genre) {
+        return genres[genre.ordinal()];
+    }
+
+    /**
+     * Gets the number of bands per genre, for the genres that have any.
+     *
+     * @return Genre to count, in declaration order
+     */
+    public Map<MusicGenre, Integer> getGenreCounts() {
+        Map<MusicGenre, Integer> counts = new EnumMap<>(MusicGenre.class);
+        for (MusicGenre genre : MusicGenre.values()) {
+            if (genres[genre.ordinal()] > 0) {
+                counts.put(genre, genres[genre.ordinal()]);
+            }
+        }
+        return counts;
+    }
+
+    public int getCountByParticipants(int numberOfParticipants) {
+        return participants.getOrDefault(numberOfParticipants, 0);
+    }
+
+    /**
+     * Gets the histogram of participants.
+     *
+     * @return Number of participants to number of bands, smallest first
+     */
+    public Map<Integer, Integer> getParticipantsHistogram() {
+        return Collections.unmodifiableMap(new TreeMap<>(participants));
+    }
+
+    /**
+     * Gets the average number of participants.
+     *
+     * @return Average over the bands that have a number, 0 if none do
+     */
+    public double getAverageParticipants() {
+        return participantBands == 0 ? 0.0 : (double) participantSum / participantBands;
+    }
+}
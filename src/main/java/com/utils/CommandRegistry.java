@@ -7,6 +7,7 @@ import com.model.Coordinates;
 import com.model.MusicGenre;
 import com.server.CommandHistory;
 import com.server.DatabaseManager;
+import com.server.SessionManager;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
@@ -30,7 +31,7 @@ import com.utils.CollectionFileManager;
  * - Collecting results
  *
  * Commands supported:
- * - show: Display all music bands
+ * - show: Display all music bands (or one page of them)
  * - info: Display collection info
  * - help: Display available commands
  * - clear: Clear the collection
@@ -45,6 +46,7 @@ import com.utils.CollectionFileManager;
  * - remove_any_by_best_album: Remove by album name
  * - count_by_number_of_participants: Count by participants
  * - participants_by_id: Show participants for specific ID
+ * - range_by_id: Show bands with ID in a range
  * - execute_script: Execute commands from file
  */
 public class CommandRegistry {
@@ -75,13 +77,34 @@ public class CommandRegistry {
      */
     private void registerCommands() {
         // Command: show - displays all music bands sorted by name
+        // The bands come from the name index already in order, nothing is sorted.
+        // With "limit" only one page is returned; if there are more bands, the
+        // data holds "from" and "after" to send with the request for the next page
         commands.put("show", args -> {
             MinHeap heap = MinHeap.getInstance();
-            List<String> result = heap.getAllElements().stream()
-                .sorted(Comparator.comparing(MusicBand::getName, Comparator.nullsLast(Comparator.naturalOrder())))
+            String from = args != null ? (String) args.get("from") : null;
+            Long after = args != null && args.get("after") != null ? ((Number) args.get("after")).longValue() : null;
+            int limit = args != null && args.get("limit") != null ? ((Number) args.get("limit")).intValue() : 0;
+            if (limit < 0) {
+                return Response.error("Page size must be positive");
+            }
+            // One band more than asked tells whether there is a next page
+            List<MusicBand> bands = heap.getSortedByName(from, after, limit > 0 ? limit + 1 : 0);
+            boolean more = limit > 0 && bands.size() > limit;
+            if (more) {
+                bands = bands.subList(0, limit);
+            }
+            Response response = Response.success(bands.stream()
                 .map(MusicBand::toString)
-                .collect(Collectors.toList());
-            return Response.success(String.join("\n", result));
+                .collect(Collectors.joining("\n")));
+            if (more) {
+                MusicBand last = bands.get(limit - 1);
+                HashMap<String, Object> next = new HashMap<>();
+                next.put("from", last.getName());
+                next.put("after", last.getId());
+                response.setData(next);
+            }
+            return response;
         });
 
         // Command: select - fetches a single band by ID (for update flow)
@@ -98,11 +121,19 @@ public class CommandRegistry {
         });
 
         // Command: info - displays collection information
+        // Only uses the in-memory collection (its counters, not a walk over the heap),
+        // so the answer can be cached until it changes
         commands.put("info", args -> {
-            int count = DatabaseManager.getBandCount();
-            String info = String.format("Type: MusicBand (PostgreSQL)\nInitialization date: %s\nElements: %d",
-                LocalDateTime.now().toString(),
-                count);
+            MinHeap heap = MinHeap.getInstance();
+            Long minId = heap.getMinId();
+            Long maxId = heap.getMaxId();
+            String info = heap.readStatistics(stats -> String.format(
+                "Type: MusicBand (PostgreSQL)\nInitialization date: %s\nElements: %d\nOwners: %d\nIDs: %s\nGenres: %s",
+                heap.getInitializationDate().toString(),
+                stats.getTotal(),
+                stats.getOwnerCount(),
+                minId == null || maxId == null ? "none" : minId + ".." + maxId,
+                stats.getGenreCounts().isEmpty() ? "none" : stats.getGenreCounts().toString()));
             return Response.success(info);
         });
 
@@ -116,12 +147,16 @@ public class CommandRegistry {
                 
                 "VIEW COMMANDS (no login required):\n" +
                 "  show                         - Display all music bands sorted by name\n" +
+                "  show <n> [name]              - Display bands sorted by name, n at a time (from name)\n" +
                 "  info                         - Display collection information\n" +
                 "  help                         - Display this help message\n" +
                 "  history                      - Display command history\n" +
                 "  count_by_number_of_participants <count> - Count bands with N participants\n" +
                 "  participants_by_id <id>     - Show participants for band with ID\n" +
-                "  average_of_number_of_participants - Show average participants count\n\n" +
+                "  range_by_id <low> <high>    - Show bands with ID from low to high, in ID order\n" +
+                "  average_of_number_of_participants - Show average participants count\n" +
+                "  subscribe                    - Keep a local copy updated with every change\n" +
+                "  unsubscribe                  - Stop receiving changes\n\n" +
                 
                 "MODIFY COMMANDS (login required, modify own bands only):\n" +
                 "  add                          - Add a new music band (interactive)\n" +
@@ -155,7 +190,9 @@ public class CommandRegistry {
             }
             
             if (DatabaseManager.registerUser(login, password)) {
-                return Response.success("User registered successfully: " + login);
+                Response response = Response.success("User registered successfully: " + login);
+                response.setData(SessionManager.getInstance().create(login, DatabaseManager.hashPassword(password)));
+                return response;
             } else {
                 return Response.error("Failed to register user");
             }
@@ -170,7 +207,10 @@ public class CommandRegistry {
             String password = (String) args.get("password");
             
             if (DatabaseManager.validateUser(login, password)) {
-                return Response.success("Login successful: " + login);
+                // The token stands in for login and password in later requests
+                Response response = Response.success("Login successful: " + login);
+                response.setData(SessionManager.getInstance().create(login, DatabaseManager.hashPassword(password)));
+                return response;
             } else {
                 return Response.error("Invalid login or password");
             }
@@ -207,10 +247,7 @@ public class CommandRegistry {
         // Command: average_of_number_of_participants
         commands.put("average_of_number_of_participants", args -> {
             MinHeap heap = MinHeap.getInstance();
-            double avg = heap.getAllElements().stream()
-                .mapToInt(MusicBand::getNumberOfParticipants)
-                .average()
-                .orElse(0.0);
+            double avg = heap.readStatistics(CollectionStatistics::getAverageParticipants);
             return Response.success(String.format("%.2f", avg));
         });
 
@@ -229,7 +266,9 @@ public class CommandRegistry {
                 band.setOwnerPasswordHash(passwordHash);
             }
             
-            MinHeap.getInstance().insert(band);
+            if (!MinHeap.getInstance().insert(band)) {
+                return Response.error("Element not added: a MusicBand with id " + band.getId() + " already exists");
+            }
             return Response.success("Added new band:\n" + band);
         });
 
@@ -253,7 +292,9 @@ public class CommandRegistry {
             if (currentMin != null && band.getId() >= currentMin.getId()) {
                 return Response.error("Element not added: ID must be less than current minimum (" + currentMin.getId() + ")");
             }
-            heap.insert(band);
+            if (!heap.insert(band)) {
+                return Response.error("Element not added: a MusicBand with id " + band.getId() + " already exists");
+            }
             return Response.success("Added new band (ID was less than minimum):\n" + band);
         });
 
@@ -395,6 +436,26 @@ public class CommandRegistry {
             return Response.success("Band: " + band.getName() + ", Participants: " + band.getNumberOfParticipants());
         });
 
+        // Command: range_by_id - bands with an ID from low to high (both included)
+        // The bands come from the ID order index, only the range is walked.
+        commands.put("range_by_id", args -> {
+            if (args == null || args.get("low") == null || args.get("high") == null) {
+                return Response.error("Missing ID range for range_by_id command");
+            }
+            long low = ((Number) args.get("low")).longValue();
+            long high = ((Number) args.get("high")).longValue();
+            if (low > high) {
+                return Response.error("Invalid ID range: " + low + " is greater than " + high);
+            }
+            List<MusicBand> bands = MinHeap.getInstance().getRangeById(low, high);
+            if (bands.isEmpty()) {
+                return Response.success("No MusicBand found with id from " + low + " to " + high);
+            }
+            return Response.success(bands.stream()
+                .map(MusicBand::toString)
+                .collect(Collectors.joining("\n")));
+        });
+
         // Command: execute_script - executes commands from a file
         commands.put("execute_script", args -> {
             if (args == null || args.get("path") == null) {
@@ -506,6 +567,21 @@ public class CommandRegistry {
                 }
                 return Response.error("Missing ID");
 
+            case "range_by_id":
+                if (parts.length > 2) {
+                    try {
+                        Long low = Long.parseLong(parts[1]);
+                        Long high = Long.parseLong(parts[2]);
+                        Map<String, Object> args = new HashMap<>();
+                        args.put("low", low);
+                        args.put("high", high);
+                        return execute("range_by_id", args);
+                    } catch (NumberFormatException e) {
+                        return Response.error("Invalid ID range: " + parts[1] + " " + parts[2]);
+                    }
+                }
+                return Response.error("Missing ID range");
+
             case "add":
             case "add_if_min":
             case "update":
@@ -0,0 +1,317 @@
+package com.utils;
+
+import com.model.MusicBand;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Binary min-heap of bands (by their natural order) that can also find,
+ * replace and remove a band by ID.
+ *
+ * A PriorityQueue only finds an element by scanning, so every command
+ * working on one ID (update, remove_by_id, show by ID) cost O(n), and
+ * removeIf rebuilt the heap afterwards. Here every band sits in a node
+ * that remembers its position in the heap array, and the nodes are
+ * indexed by ID in a LongObjectHashMap. Looking a band up is O(1);
+ * removing or replacing it moves only that node up or down, O(log n).
+ *
+ * IDs are unique: adding a band whose ID is already there replaces it.
+ * Iteration is in heap order, like PriorityQueue's.
+ *
+ * Not thread-safe: MinHeap uses it under its lock.
+ */
+public class IndexedBandHeap extends AbstractCollection<MusicBand> {
+    /**
+     * A band and its position in the heap array.
+     */
+    private static final class Node {
+        MusicBand band;
+        int index;
+
+        Node(MusicBand band) {
+            this.band = band;
+        }
+    }
+
+    private Node[] nodes;
+    private int size;
+    private final LongObjectHashMap<Node> byId;
+
+    public IndexedBandHeap() {
+        nodes = new Node[16];
+        byId = new LongObjectHashMap<>();
+    }
+
+    /**
+     * Builds a heap from a collection in one O(n) pass.
+     *
+     * @param bands The bands (a later band replaces an earlier one with the same ID)
+     */
+    public IndexedBandHeap(Collection<MusicBand> bands) {
+        nodes = new Node[Math.max(16, bands.size())];
+        byId = new LongObjectHashMap<>(bands.size());
+        for (MusicBand band : bands) {
+            Node node = byId.get(band.getId());
+            if (node != null) {
+                node.band = band;
+                continue;
+            }
+            node = new Node(band);
+            node.index = size;
+            nodes[size++] = node;
+            byId.put(band.getId(), node);
+        }
+        heapify();
+    }
+
+    private void heapify() {
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Adds a band, or replaces the band with the same ID.
+     *
+     * @param band The band
+     * @return The band it replaced, or null
+     */
+    public MusicBand put(MusicBand band) {
+        Node node = byId.get(band.getId());
+        if (node != null) {
+            MusicBand old = node.band;
+            node.band = band;
+            // The name (and so the order) may have changed either way
+            siftUp(node.index);
+            siftDown(node.index);
+            return old;
+        }
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size + (size >> 1));
+        }
+        node = new Node(band);
+        node.index = size;
+        nodes[size++] = node;
+        byId.put(band.getId(), node);
+        siftUp(node.index);
+        return null;
+    }
+
+    /**
+     * Adds a band, replacing the one with the same ID.
+     *
+     * @return Always true
+     */
+    @Override
+    public boolean add(MusicBand band) {
+        put(band);
+        return true;
+    }
+
+    /**
+     * Gets the band with an ID.
+     *
+     * @param id The ID
+     * @return The band, or null if there is none
+     */
+    public MusicBand get(long id) {
+        Node node = byId.get(id);
+        return node == null ? null : node.band;
+    }
+
+    public boolean containsId(long id) {
+        return byId.containsKey(id);
+    }
+
+    /**
+     * Removes the band with an ID.
+     *
+     * @param id The ID
+     * @return The removed band, or null if there was none
+     */
+    public MusicBand removeById(long id) {
+        Node node = byId.remove(id);
+        if (node == null) {
+            return null;
+        }
+        removeAt(node.index);
+        return node.band;
+    }
+
+    /**
+     * Removes the band with the same ID (MusicBand equality is by ID).
+     */
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof MusicBand && removeById(((MusicBand) o).getId()) != null;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof MusicBand && containsId(((MusicBand) o).getId());
+    }
+
+    public MusicBand peek() {
+        return size == 0 ? null : nodes[0].band;
+    }
+
+    /**
+     * Removes the smallest band.
+     *
+     * @return The band, or null if the heap is empty
+     */
+    public MusicBand poll() {
+        if (size == 0) {
+            return null;
+        }
+        Node min = nodes[0];
+        byId.remove(min.band.getId());
+        removeAt(0);
+        return min.band;
+    }
+
+    /**
+     * Takes the node at index out of the array and fills the hole with
+     * the last node. The node must already be out of byId.
+     */
+    private void removeAt(int index) {
+        size--;
+        Node last = nodes[size];
+        nodes[size] = null;
+        if (index == size) {
+            return;
+        }
+        nodes[index] = last;
+        last.index = index;
+        siftDown(index);
+        if (nodes[index] == last) {
+            siftUp(index);
+        }
+    }
+
+    /**
+     * Removes every band matching the filter, then rebuilds the heap in
+     * one pass (cheaper than removing them one by one when many match).
+     */
+    @Override
+    public boolean removeIf(Predicate<? super MusicBand> filter) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            Node node = nodes[i];
+            if (filter.test(node.band)) {
+                byId.remove(node.band.getId());
+            } else {
+                node.index = kept;
+                nodes[kept++] = node;
+            }
+        }
+        if (kept == size) {
+            return false;
+        }
+        Arrays.fill(nodes, kept, size, null);
+        size = kept;
+        heapify();
+        return true;
+    }
+
+    private void siftUp(int index) {
+        Node node = nodes[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            Node above = nodes[parent];
+            if (node.band.compareTo(above.band) >= 0) {
+                break;
+            }
+            nodes[index] = above;
+            above.index = index;
+            index = parent;
+        }
+        nodes[index] = node;
+        node.index = index;
+    }
+
+    private void siftDown(int index) {
+        Node node = nodes[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && nodes[right].band.compareTo(nodes[child].band) < 0) {
+                child = right;
+            }
+            if (node.band.compareTo(nodes[child].band) <= 0) {
+                break;
+            }
+            nodes[index] = nodes[child];
+            nodes[index].index = index;
+            index = child;
+        }
+        nodes[index] = node;
+        node.index = index;
+    }
+
+    /**
+     * Checks the heap order, the positions stored in the nodes and the
+     * ID index.
+     *
+     * @param problems Receives a description of every inconsistency found
+     */
+    void check(List<String> problems) {
+        if (byId.size() != size) {
+            problems.add("ID index has " + byId.size() + " bands, heap has " + size);
+        }
+        for (int i = 0; i < size; i++) {
+            Node node = nodes[i];
+            if (node.index != i) {
+                problems.add("band " + node.band.getId() + " is at " + i + " but thinks it is at " + node.index);
+            }
+            if (i > 0 && node.band.compareTo(nodes[(i - 1) >>> 1].band) < 0) {
+                problems.add("band " + node.band.getId() + " is smaller than its parent");
+            }
+            if (byId.get(node.band.getId()) != node) {
+                problems.add("ID index does not find band " + node.band.getId());
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(nodes, 0, size, null);
+        size = 0;
+        byId.clear();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Iterates in heap order. The heap must not change meanwhile.
+     */
+    @Override
+    public Iterator<MusicBand> iterator() {
+        return new Iterator<MusicBand>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public MusicBand next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return nodes[next++].band;
+            }
+        };
+    }
+}
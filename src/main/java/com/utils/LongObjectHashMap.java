@@ -0,0 +1,218 @@
+package com.utils;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Hash map from primitive long keys to objects.
+ *
+ * Keys are kept in a long[] next to a value array (open addressing with
+ * linear probing), so looking up a band ID does not box it into a Long
+ * and does not follow a pointer to a HashMap node. A slot is free when
+ * its value is null, which is why null values are not allowed.
+ *
+ * Removal moves the following entries of the probe run back instead of
+ * leaving a tombstone, so lookups never slow down after many removals.
+ * The table doubles when it is more than half full.
+ *
+ * Not thread-safe. A lookup racing with a change may return a wrong
+ * answer or throw, but always ends (it probes at most the whole table
+ * once), so callers that validate afterwards, like MinHeap's optimistic
+ * reads, may call get() without a lock.
+ *
+ * @param <V> Type of the values
+ */
+public class LongObjectHashMap<V> {
+    private static final int MIN_CAPACITY = 4;
+
+    private long[] keys;
+    private Object[] values;
+
+    /** keys.length - 1 (the capacity is a power of two) */
+    private int mask;
+    private int size;
+
+    public LongObjectHashMap() {
+        this(8);
+    }
+
+    /**
+     * Creates a map that holds expectedSize entries without growing.
+     *
+     * @param expectedSize Number of entries expected
+     */
+    public LongObjectHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        // At most half full
+        long wanted = Math.max(MIN_CAPACITY, (long) expectedSize * 2);
+        if (wanted > 1 << 30) {
+            return 1 << 30;
+        }
+        return Integer.highestOneBit((int) wanted - 1) << 1;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        return slot(key, mask);
+    }
+
+    private static int slot(long key, int mask) {
+        // Fibonacci hashing spreads sequential and random IDs alike
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Finds the slot of a key.
+     *
+     * @return The slot, or -1 if the key is not in the map
+     */
+    private int find(long key) {
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the value of a key. Reads the arrays once into locals and
+     * probes at most every slot once, so a call racing with grow() or
+     * remove() ends too (see class comment).
+     *
+     * @param key The key
+     * @return The value, or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long[] k = keys;
+        Object[] v = values;
+        int m = v.length - 1;
+        int i = slot(key, m);
+        for (int probes = 0; probes <= m; probes++) {
+            Object value = v[i];
+            if (value == null) {
+                return null;
+            }
+            if (k[i] == key) {
+                return (V) value;
+            }
+            i = (i + 1) & m;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Maps a key to a value.
+     *
+     * @param key The key
+     * @param value The value (not null)
+     * @return The value the key had before, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("LongObjectHashMap does not allow null values");
+        }
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return null;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key The key
+     * @return The value the key had, or null if it was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = find(key);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) values[i];
+        size--;
+        // Move later entries of the run into the gap if their home slot allows it
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (values[j] != null) {
+            int home = slot(keys[j]);
+            // Entry j may move to gap unless its home lies cyclically in (gap, j]
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        values[gap] = null;
+        return old;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Calls the action with every value, in no particular order.
+     *
+     * @param action Receives the values
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+}
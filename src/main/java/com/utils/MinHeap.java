@@ -1,40 +1,123 @@
 package com.utils;
 
+import com.common.ChangeEvent;
 import com.model.MusicBand;
+import com.server.BulkCopy;
 import com.server.DatabaseManager;
-import java.sql.ResultSet;
+import com.server.SqlStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.RecursiveAction;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Singleton class representing a MinHeap data structure for storing MusicBand objects.
  * This class implements the collection management functionality for the application.
  * 
  * <p>Data is loaded from PostgreSQL on initialization and persisted back to the database
- * only when save is explicitly called. All operations work with the in-memory heap.</p>
+ * only when save is explicitly called. All operations work with the in-memory heap.
+ * Every change is also recorded as pending (see PendingChanges), so a save only
+ * writes the rows that changed since the last one.</p>
  * 
- * <p>Uses ReentrantReadWriteLock for thread-safe access to the collection.</p>
+ * <p>Uses a StampedLock for thread-safe access to the collection. Changes
+ * take its write lock. The point lookups and counters (peek, findById,
+ * getElementCount, countByNumberOfParticipants, ...) first read without
+ * locking and check afterwards that no change happened meanwhile (see
+ * readOptimistically); only if one did they retry, and in the end take
+ * the read lock. So dashboards polling the counters neither contend on a
+ * shared reader count nor hold up writers. The lock is not reentrant:
+ * nothing called while holding it may call back into MinHeap.</p>
+ *
+ * <p>The bands are kept in an IndexedBandHeap, so looking up, updating or
+ * removing one band by ID costs O(1) / O(log n) instead of a scan. They
+ * are also indexed by album name and owner (BandIndexes) and counted
+ * (CollectionStatistics); every change updates all of them under the
+ * write lock, and checkConsistency() compares them with the heap.</p>
+ *
+ * <p>Every change bumps the collection version and is published as a
+ * ChangeEvent to the registered listeners (while the write lock is still
+ * held, so listeners see changes in version order). The last
+ * CHANGE_LOG_SIZE events are kept so subscribers can catch up.</p>
  */
 public class MinHeap {
     private static MinHeap instance;
     private ArrayList<String> history;
-    private PriorityQueue<MusicBand> heap;
+    private IndexedBandHeap heap;
     private LocalDateTime initializationDate;
     private String heapType;
     private List<String> metadataHistory;
     private List<String> startupWarnings;
-    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    private final StampedLock lock = new StampedLock();
+    private final Lock readLock = lock.asReadLock();
+    private final Lock writeLock = lock.asWriteLock();
+
+    /** Optimistic reads tried before a cheap read falls back to the read lock */
+    private static final int OPTIMISTIC_ATTEMPTS = 3;
+
+    /** How many recent change events are kept for catching up */
+    private static final int CHANGE_LOG_SIZE = 1024;
+
+    /** Version of the collection - incremented by every change */
+    private long version;
+
+    /** Recent changes, for subscribers that resume from a version */
+    private final ChangeLog changeLog = new ChangeLog(CHANGE_LOG_SIZE);
+
+    /** Called with every change, under the write lock */
+    private final List<Consumer<ChangeEvent>> changeListeners = new CopyOnWriteArrayList<>();
+
+    /** Changes not saved to the database yet (guarded by the write lock) */
+    private final PendingChanges pending = new PendingChanges();
+
+    /** Counters over the collection (guarded by the lock like the heap) */
+    private final CollectionStatistics statistics = new CollectionStatistics();
+
+    /** Bands by album name and by owner (guarded by the lock like the heap) */
+    private final BandIndexes indexes = new BandIndexes();
+
+    /** Reconciliation checks that found the database count different from the heap */
+    private final AtomicLong reconcileMismatches = new AtomicLong();
+
+    /** Lets only one save write to the database at a time */
+    private final ReentrantLock persistLock = new ReentrantLock();
+
+    /** Set in write-behind mode: saves go to this journal instead of the database */
+    private volatile WriteBehindJournal journal;
+
+    /** Table the collection is saved in */
+    private static final String TABLE = "music_bands";
+
+    /** Connections the collection is loaded over in parallel (see BulkCopy.loadAll) */
+    private static volatile int loadThreads = 4;
+
+    /** New rows from this many on are written with COPY instead of INSERTs */
+    private static final int COPY_THRESHOLD = 500;
+
+    /** Removals of more bands than this (and over 1/8 of the heap) rebuild the heap once */
+    private static final int BULK_REMOVE_MIN = 64;
+
+    /** Columns set by bindBand(), id comes after them */
+    private static final int BAND_COLUMNS = 11;
 
     public MinHeap() {
         history = new ArrayList<String>();
-        heap = new PriorityQueue<>();
+        heap = new IndexedBandHeap();
         initializationDate = LocalDateTime.now();
         heapType = "MinHeap (PriorityQueue)";
         metadataHistory = new ArrayList<>();
@@ -44,6 +127,22 @@ public class MinHeap {
         loadFromDatabase();
     }
 
+    /**
+     * Creates a collection holding the given bands, without loading the
+     * database. For tests.
+     *
+     * @param bands The initial bands
+     */
+    MinHeap(Collection<MusicBand> bands) {
+        history = new ArrayList<String>();
+        heap = new IndexedBandHeap(bands);
+        reindex();
+        initializationDate = LocalDateTime.now();
+        heapType = "MinHeap (PriorityQueue)";
+        metadataHistory = new ArrayList<>();
+        startupWarnings = new ArrayList<>();
+    }
+
     public static MinHeap getInstance() {
         if (instance == null) {
             synchronized (MinHeap.class) {
@@ -59,177 +158,293 @@ public class MinHeap {
         return "PostgreSQL Database";
     }
 
+    /**
+     * Sets how many connections the collection is loaded over in parallel.
+     * Takes effect for the next load, so call it before getInstance().
+     *
+     * @param threads Number of connections (at least 1)
+     */
+    public static void setLoadThreads(int threads) {
+        loadThreads = Math.max(1, threads);
+    }
+
+    /**
+     * Replaces the collection with the rows of music_bands.
+     * Rows are streamed with COPY (see BulkCopy), large tables in parallel
+     * ID ranges. The rows are read without holding the lock; the heap is
+     * only replaced once all of them arrived, and is built from them in
+     * one heapify pass. Logs the time taken and rows per second.
+     */
     public void loadFromDatabase() {
-        rwLock.writeLock().lock();
+        long started = System.nanoTime();
+        List<MusicBand> loaded;
         try {
-            ResultSet rs = DatabaseManager.executeQuery("SELECT * FROM music_bands");
-            heap.clear();
-            while (rs.next()) {
-                MusicBand band = resultSetToBand(rs);
-                heap.add(band);
-            }
-            rs.close();
-            System.out.println("Loaded " + heap.size() + " elements from database");
+            // Read outside the lock - commands keep working on the old heap meanwhile
+            loaded = BulkCopy.loadAll(TABLE, loadThreads);
         } catch (SQLException e) {
             System.out.println("Error loading from database: " + e.getMessage());
+            writeLock.lock();
+            try {
+                // Unknown what the table holds - the next save replaces it
+                pending.truncated();
+                for (MusicBand band : heap) {
+                    pending.inserted(band);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            recordMetadata("Loaded from database");
+            return;
+        }
+        writeLock.lock();
+        try {
+            // Builds the heap in one O(n) pass instead of n offers
+            heap = new IndexedBandHeap(loaded);
+            reindex();
+            // The database now matches the heap
+            pending.reset();
+            publish(ChangeEvent.snapshot(version + 1, new ArrayList<>(heap)));
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
+        long elapsedMs = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        System.out.println("Loaded " + loaded.size() + " elements from database in " + elapsedMs + " ms ("
+            + (loaded.size() * 1000L / elapsedMs) + " rows/s)");
         recordMetadata("Loaded from database");
     }
 
+    /**
+     * Writes the changes made since the last save to the database.
+     *
+     * Only the changed rows are written (see PendingChanges), all in one
+     * transaction. If the transaction fails, the changes stay pending and
+     * the next save tries again. Saves run one at a time, so changes reach
+     * the database in the order they were made.
+     *
+     * In write-behind mode (see setJournal) the changes are only written
+     * to the journal, and the save returns once they are on disk.
+     *
+     * @return true if everything pending was written
+     */
     public boolean saveToDatabase() {
+        WriteBehindJournal currentJournal = journal;
+        if (currentJournal != null) {
+            return saveToJournal(currentJournal);
+        }
         boolean success = true;
-        rwLock.readLock().lock();
+        persistLock.lock();
         try {
-            DatabaseManager.executeUpdate("DELETE FROM music_bands");
-            
-            if (heap.isEmpty()) {
-                System.out.println("Saved 0 elements to database");
+            PendingChanges changes;
+            writeLock.lock();
+            try {
+                changes = pending.drain();
+            } finally {
+                writeLock.unlock();
+            }
+            if (changes.isEmpty()) {
                 return true;
             }
-            
-            List<MusicBand> bands = new ArrayList<>(heap);
-            ForkJoinPool pool = new ForkJoinPool();
-            InsertBatchTask task = new InsertBatchTask(bands, 0, bands.size());
-            pool.invoke(task);
-            
-            if (task.hasErrors()) {
-                System.err.println("Some inserts failed during save");
+            try {
+                DatabaseManager.inTransaction(conn -> {
+                    writeChanges(conn, changes);
+                    return null;
+                });
+            } catch (SQLException e) {
+                System.out.println("Error saving to database: " + e.getMessage());
                 success = false;
+                writeLock.lock();
+                try {
+                    pending.restore(changes);
+                } finally {
+                    writeLock.unlock();
+                }
             }
-            
-            System.out.println("Saved " + heap.size() + " elements to database");
-        } catch (SQLException e) {
-            System.out.println("Error saving to database: " + e.getMessage());
-            success = false;
         } finally {
-            rwLock.readLock().unlock();
+            persistLock.unlock();
         }
         recordMetadata("Saved to database");
         return success;
     }
-    
-    private class InsertBatchTask extends RecursiveAction {
-        private final List<MusicBand> bands;
-        private final int start;
-        private final int end;
-        private static final int THRESHOLD = 10;
-        private volatile boolean hasError = false;
-        
-        public InsertBatchTask(List<MusicBand> bands, int start, int end) {
-            this.bands = bands;
-            this.start = start;
-            this.end = end;
-        }
-        
-        public boolean hasErrors() {
-            return hasError;
-        }
-        
-        @Override
-        protected void compute() {
-            if (end - start <= THRESHOLD) {
-                for (int i = start; i < end; i++) {
-                    try {
-                        String sql = buildInsertSql(bands.get(i));
-                        DatabaseManager.executeUpdate(sql);
-                    } catch (SQLException e) {
-                        System.err.println("Error inserting band: " + e.getMessage());
-                        hasError = true;
-                    }
-                }
-            } else {
-                int mid = start + (end - start) / 2;
-                InsertBatchTask left = new InsertBatchTask(bands, start, mid);
-                InsertBatchTask right = new InsertBatchTask(bands, mid, end);
-                invokeAll(left, right);
-                if (left.hasErrors() || right.hasErrors()) {
-                    hasError = true;
-                }
+
+    /**
+     * Hands the pending changes to the journal and waits until they are
+     * on disk.
+     *
+     * The save lock is held until then, so a batch that fails is back in
+     * the pending changes before the next one is drained - otherwise the
+     * next batch could be saved before it and the two would reach the
+     * database out of order. Saves that wait for the lock meanwhile find
+     * their changes all drained together by the next save, which then
+     * costs one sync for all of them (group commit).
+     */
+    private boolean saveToJournal(WriteBehindJournal currentJournal) {
+        persistLock.lock();
+        try {
+            PendingChanges changes;
+            writeLock.lock();
+            try {
+                changes = pending.drain();
+            } finally {
+                writeLock.unlock();
             }
+            if (changes.isEmpty()) {
+                return true;
+            }
+            try {
+                currentJournal.append(changes).get();
+                return true;
+            } catch (ExecutionException e) {
+                System.out.println("Error writing to journal: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writeLock.lock();
+            try {
+                pending.restore(changes);
+            } finally {
+                writeLock.unlock();
+            }
+            return false;
+        } finally {
+            persistLock.unlock();
         }
     }
 
-    private String buildInsertSql(MusicBand band) {
-        StringBuilder sql = new StringBuilder();
-        sql.append("INSERT INTO music_bands (name, x, y, creation_date, number_of_participants, description, genre, album_name, album_sales, owner_login, owner_password_hash) VALUES (");
-        sql.append("'").append(escapeString(band.getName())).append("', ");
-        sql.append(band.getCoordinates() != null ? band.getCoordinates().getX() : "NULL").append(", ");
-        sql.append(band.getCoordinates() != null ? band.getCoordinates().getY() : "NULL").append(", ");
-        if (band.getCreationDate() != null) {
-            sql.append("'").append(band.getCreationDate()).append("', ");
-        } else {
-            sql.append("CURRENT_TIMESTAMP, ");
-        }
-        sql.append(band.getNumberOfParticipants()).append(", ");
-        if (band.getDescription() != null) {
-            sql.append("'").append(escapeString(band.getDescription())).append("', ");
-        } else {
-            sql.append("NULL, ");
+    /**
+     * Switches between write-through and write-behind persistence.
+     *
+     * @param journal Started journal to save to, or null to write to the database directly
+     */
+    public void setJournal(WriteBehindJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Replaces the whole table with the current collection, using COPY.
+     * Needed when the table content cannot be trusted (e.g. it was
+     * changed outside the server); normal saves only write changes.
+     *
+     * @return true if the table was replaced
+     */
+    public boolean saveAllToDatabase() {
+        writeLock.lock();
+        try {
+            pending.truncated();
+            for (MusicBand band : heap) {
+                pending.inserted(band);
+            }
+        } finally {
+            writeLock.unlock();
         }
-        if (band.getGenre() != null) {
-            sql.append("'").append(band.getGenre().name()).append("', ");
-        } else {
-            sql.append("NULL, ");
+        return saveToDatabase();
+    }
+
+    /**
+     * Runs the statements for a set of pending changes:
+     * the optional DELETE of everything and DELETEs by owner, then DELETEs,
+     * UPDATEs and INSERTs as batches of the connection's cached
+     * SqlStatements. An UPDATE that finds no row inserts it instead, and an
+     * INSERT that finds the row overwrites it, so a batch never fails on
+     * the primary key. Many new rows after the table was emptied (a full
+     * save) go in with one COPY.
+     */
+    static void writeChanges(Connection conn, PendingChanges changes) throws SQLException {
+        if (changes.isTruncate()) {
+            DatabaseManager.prepare(conn, SqlStatement.DELETE_ALL_BANDS).executeUpdate();
         }
-        if (band.getBestAlbum() != null) {
-            sql.append("'").append(escapeString(band.getBestAlbum().getName())).append("', ");
-            sql.append(band.getBestAlbum().getSales());
-        } else {
-            sql.append("NULL, NULL");
+        if (!changes.getClearedOwners().isEmpty()) {
+            PreparedStatement ps = DatabaseManager.prepare(conn, SqlStatement.DELETE_BANDS_BY_OWNER);
+            for (String ownerLogin : changes.getClearedOwners()) {
+                ps.setString(1, ownerLogin);
+                ps.addBatch();
+            }
+            ps.executeBatch();
         }
-        
-        if (band.getOwnerLogin() != null) {
-            sql.append(", '").append(escapeString(band.getOwnerLogin())).append("'");
-            sql.append(", '").append(escapeString(band.getOwnerPasswordHash())).append("'");
-        } else {
-            sql.append(", NULL, NULL");
+        List<Long> deletes = new ArrayList<>();
+        List<MusicBand> updates = new ArrayList<>();
+        List<MusicBand> inserts = new ArrayList<>();
+        for (Map.Entry<Long, PendingChanges.Op> entry : changes.getOps().entrySet()) {
+            switch (entry.getValue()) {
+                case DELETE:
+                    deletes.add(entry.getKey());
+                    break;
+                case UPDATE:
+                    updates.add(changes.getBand(entry.getKey()));
+                    break;
+                default:
+                    inserts.add(changes.getBand(entry.getKey()));
+                    break;
+            }
         }
-        sql.append(")");
-        return sql.toString();
-    }
 
-    private MusicBand resultSetToBand(ResultSet rs) throws SQLException {
-        MusicBand band = new MusicBand();
-        band.setId(rs.getLong("id"));
-        band.setName(rs.getString("name"));
-        
-        long x = rs.getLong("x");
-        int y = rs.getInt("y");
-        if (!rs.wasNull()) {
-            band.setCoordinates(new com.model.Coordinates(x, y));
-        }
-        
-        band.setCreationDate(new java.util.Date(rs.getTimestamp("creation_date").getTime()));
-        band.setNumberOfParticipants(rs.getInt("number_of_participants"));
-        
-        String desc = rs.getString("description");
-        if (desc != null) band.setDescription(desc);
-        
-        String genre = rs.getString("genre");
-        if (genre != null) {
-            band.setGenre(com.model.MusicGenre.valueOf(genre));
+        if (!deletes.isEmpty()) {
+            PreparedStatement ps = DatabaseManager.prepare(conn, SqlStatement.DELETE_BAND);
+            for (Long id : deletes) {
+                ps.setLong(1, id);
+                ps.addBatch();
+            }
+            ps.executeBatch();
         }
-        
-        String albumName = rs.getString("album_name");
-        double albumSales = rs.getDouble("album_sales");
-        if (!rs.wasNull()) {
-            band.setBestAlbum(new com.model.Album(albumName, albumSales));
+        if (!updates.isEmpty()) {
+            PreparedStatement ps = DatabaseManager.prepare(conn, SqlStatement.UPDATE_BAND);
+            for (MusicBand band : updates) {
+                bindBand(ps, band);
+                ps.setLong(BAND_COLUMNS + 1, band.getId());
+                ps.addBatch();
+            }
+            int[] counts = ps.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    // Row was never saved - insert it
+                    inserts.add(updates.get(i));
+                }
+            }
         }
-        
-        String ownerLogin = rs.getString("owner_login");
-        if (ownerLogin != null) {
-            band.setOwnerLogin(ownerLogin);
-            band.setOwnerPasswordHash(rs.getString("owner_password_hash"));
+        // INSERT_BAND is an upsert, so a row already in the table is overwritten instead of
+        // failing the transaction (and every later save, which retries the same batch).
+        // COPY cannot do that, so it is only used when the table was emptied first
+        if (changes.isTruncate() && inserts.size() >= COPY_THRESHOLD) {
+            BulkCopy.copyIn(conn, TABLE, inserts);
+        } else if (!inserts.isEmpty()) {
+            PreparedStatement ps = DatabaseManager.prepare(conn, SqlStatement.INSERT_BAND);
+            for (MusicBand band : inserts) {
+                bindBand(ps, band);
+                ps.setLong(BAND_COLUMNS + 1, band.getId());
+                ps.addBatch();
+            }
+            ps.executeBatch();
         }
-        
-        return band;
+        System.out.println("Saved " + changes.size() + " changed elements to database"
+            + (changes.isTruncate() ? " (table cleared first)" : "")
+            + (!changes.getClearedOwners().isEmpty() ? " (bands of " + changes.getClearedOwners().size() + " owner(s) cleared first)" : ""));
     }
 
-    private String escapeString(String value) {
-        if (value == null) return "";
-        return value.replace("'", "''");
+    /**
+     * Sets the band columns (everything but id) as parameters 1 to BAND_COLUMNS.
+     */
+    private static void bindBand(PreparedStatement ps, MusicBand band) throws SQLException {
+        ps.setString(1, band.getName());
+        if (band.getCoordinates() != null) {
+            ps.setObject(2, band.getCoordinates().getX(), Types.BIGINT);
+            ps.setObject(3, band.getCoordinates().getY(), Types.INTEGER);
+        } else {
+            ps.setNull(2, Types.BIGINT);
+            ps.setNull(3, Types.INTEGER);
+        }
+        java.util.Date created = band.getCreationDate() != null ? band.getCreationDate() : new java.util.Date();
+        ps.setTimestamp(4, new Timestamp(created.getTime()));
+        ps.setObject(5, band.getNumberOfParticipants(), Types.INTEGER);
+        ps.setString(6, band.getDescription());
+        ps.setString(7, band.getGenre() != null ? band.getGenre().name() : null);
+        if (band.getBestAlbum() != null) {
+            ps.setString(8, band.getBestAlbum().getName());
+            ps.setObject(9, band.getBestAlbum().getSales(), Types.DOUBLE);
+        } else {
+            ps.setNull(8, Types.VARCHAR);
+            ps.setNull(9, Types.DOUBLE);
+        }
+        ps.setString(10, band.getOwnerLogin());
+        ps.setString(11, band.getOwnerLogin() != null ? band.getOwnerPasswordHash() : null);
     }
 
     public void loadFromFile() {
@@ -248,142 +463,378 @@ public class MinHeap {
         loadFromDatabase();
     }
 
-    public void insert(MusicBand band) {
-        rwLock.writeLock().lock();
+    /**
+     * Adds a band with a new ID. A band with the same ID is never
+     * replaced (it may belong to someone else) - that is what
+     * updateElement is for.
+     *
+     * @param band The band
+     * @return false if a band with that ID is already in the collection
+     */
+    public boolean insert(MusicBand band) {
+        writeLock.lock();
         try {
-            heap.offer(band);
+            if (heap.containsId(band.getId())) {
+                return false;
+            }
+            heap.put(band);
+            index(band);
+            pending.inserted(band);
+            publish(ChangeEvent.inserted(version + 1, band));
+            return true;
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     public MusicBand extractMin() {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
-            return heap.poll();
+            MusicBand min = heap.poll();
+            if (min != null) {
+                unindex(min);
+                pending.removed(min.getId());
+                publish(ChangeEvent.removed(version + 1, List.of(min.getId())));
+            }
+            return min;
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     public MusicBand peek() {
-        rwLock.readLock().lock();
-        try {
-            return heap.peek();
-        } finally {
-            rwLock.readLock().unlock();
-        }
+        return readOptimistically(OPTIMISTIC_ATTEMPTS, () -> heap.peek());
     }
 
     public void printAll() {
-        if (heap.isEmpty()) {
+        List<MusicBand> bands = getSortedByName(null, null, 0);
+        if (bands.isEmpty()) {
             System.out.println("No elements in the collection.");
             return;
         }
         System.out.println("\n========== MUSIC BAND COLLECTION ==========\n");
-        for (MusicBand band : heap) {
+        for (MusicBand band : bands) {
             System.out.println(band);
         }
     }
 
-    public boolean removeElById(Long id) {
-        rwLock.writeLock().lock();
+    /**
+     * Gets bands ordered by name (then ID), read from the name index
+     * without sorting. Pass the name and ID of the last band of a page to
+     * get the next page.
+     *
+     * @param fromName Name to start at, null for the first band
+     * @param afterId If not null, start after the band with fromName and this ID
+     * @param limit Most bands returned (0 or less for all)
+     * @return The bands in name order
+     */
+    public List<MusicBand> getSortedByName(String fromName, Long afterId, int limit) {
+        readLock.lock();
         try {
-            return heap.removeIf(band -> band.getId() == id);
+            return indexes.getByName(fromName, afterId, limit);
         } finally {
-            rwLock.writeLock().unlock();
+            readLock.unlock();
         }
     }
 
-    public MusicBand findById(Long id) {
-        rwLock.readLock().lock();
+    public boolean removeElById(Long id) {
+        writeLock.lock();
         try {
-            for (MusicBand band : heap) {
-                if (band.getId() == id) {
-                    return band;
-                }
+            MusicBand removed = heap.removeById(id);
+            if (removed == null) {
+                return false;
             }
-            return null;
+            unindex(removed);
+            pending.removed(id);
+            publish(ChangeEvent.removed(version + 1, List.of(id)));
+            return true;
         } finally {
-            rwLock.readLock().unlock();
+            writeLock.unlock();
         }
     }
 
+    public MusicBand findById(Long id) {
+        long key = id;
+        return readOptimistically(OPTIMISTIC_ATTEMPTS, () -> heap.get(key));
+    }
+
     public void updateElement(MusicBand updatedBand) {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
-            heap.removeIf(band -> band.getId() == updatedBand.getId());
-            heap.offer(updatedBand);
+            MusicBand old = heap.put(updatedBand);
+            if (old != null) {
+                unindex(old);
+            }
+            index(updatedBand);
+            pending.updated(updatedBand);
+            publish(ChangeEvent.updated(version + 1, updatedBand));
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     public boolean removeElByBestAlbum(String albumName) {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
-            return heap.removeIf(band -> band.getBestAlbum() != null && 
-                                  band.getBestAlbum().getName().equalsIgnoreCase(albumName));
+            return !removeBands(indexes.getByAlbum(albumName)).isEmpty();
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     public int removeElByBestAlbumOwned(String albumName, String ownerLogin) {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
-            int sizeBefore = heap.size();
-            heap.removeIf(band -> band.getBestAlbum() != null && 
-                                  band.getBestAlbum().getName().equalsIgnoreCase(albumName) &&
-                                  ownerLogin.equals(band.getOwnerLogin()));
-            return sizeBefore - heap.size();
+            // Start from whichever index has fewer bands and check the other condition
+            List<MusicBand> matching = new ArrayList<>();
+            if (indexes.countByOwner(ownerLogin) < indexes.countByAlbum(albumName)) {
+                for (MusicBand band : indexes.getByOwner(ownerLogin)) {
+                    if (band.getBestAlbum() != null && albumName.equalsIgnoreCase(band.getBestAlbum().getName())) {
+                        matching.add(band);
+                    }
+                }
+            } else {
+                for (MusicBand band : indexes.getByAlbum(albumName)) {
+                    if (ownerLogin.equals(band.getOwnerLogin())) {
+                        matching.add(band);
+                    }
+                }
+            }
+            return removeBands(matching).size();
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     public int removeElementsGreaterThanId(Long id) {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
-            int sizeBefore = heap.size();
-            heap.removeIf(band -> band.getId() > id);
-            return sizeBefore - heap.size();
+            return removeBands(indexes.getByIdRange(id, false, Long.MAX_VALUE)).size();
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     public int removeElementsGreaterThanIdOwned(Long id, String ownerLogin) {
-        rwLock.writeLock().lock();
+        writeLock.lock();
+        try {
+            List<MusicBand> owned = new ArrayList<>();
+            for (MusicBand band : indexes.getByIdRange(id, false, Long.MAX_VALUE)) {
+                if (ownerLogin.equals(band.getOwnerLogin())) {
+                    owned.add(band);
+                }
+            }
+            return removeBands(owned).size();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the bands with an ID from lowId to highId, both included.
+     *
+     * @param lowId Lowest ID
+     * @param highId Highest ID
+     * @return The bands in ID order (empty if lowId > highId)
+     */
+    public List<MusicBand> getRangeById(long lowId, long highId) {
+        readLock.lock();
+        try {
+            return indexes.getByIdRange(lowId, true, highId);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the lowest ID in the collection.
+     *
+     * @return The ID, or null if the collection is empty
+     */
+    public Long getMinId() {
+        readLock.lock();
+        try {
+            return indexes.getMinId();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the highest ID in the collection.
+     *
+     * @return The ID, or null if the collection is empty
+     */
+    public Long getMaxId() {
+        readLock.lock();
         try {
-            int sizeBefore = heap.size();
-            heap.removeIf(band -> band.getId() > id && ownerLogin.equals(band.getOwnerLogin()));
-            return sizeBefore - heap.size();
+            return indexes.getMaxId();
         } finally {
-            rwLock.writeLock().unlock();
+            readLock.unlock();
         }
     }
 
     public void clear() {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             heap.clear();
+            reindex();
+            pending.truncated();
+            publish(ChangeEvent.snapshot(version + 1, List.of()));
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
     
     public int clearOwned(String ownerLogin) {
-        rwLock.writeLock().lock();
+        writeLock.lock();
+        try {
+            List<Long> removed = new ArrayList<>();
+            for (MusicBand band : indexes.getByOwner(ownerLogin)) {
+                heap.removeById(band.getId());
+                unindex(band);
+                removed.add(band.getId());
+            }
+            if (!removed.isEmpty()) {
+                // One DELETE by owner instead of one per band
+                pending.clearedOwner(ownerLogin);
+                publish(ChangeEvent.clearedOwner(version + 1, ownerLogin, removed));
+            }
+            return removed.size();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the given bands (found through an index) and publishes one
+     * REMOVED event. Caller must hold the write lock.
+     *
+     * A few bands are taken out of the heap one by one (O(log n) each);
+     * for many it is cheaper to filter the heap once and rebuild it.
+     *
+     * @param bands Bands currently in the heap
+     * @return IDs of the removed bands
+     */
+    private List<Long> removeBands(List<MusicBand> bands) {
+        List<Long> removed = new ArrayList<>(bands.size());
+        if (bands.size() > BULK_REMOVE_MIN && bands.size() > heap.size() / 8) {
+            LongObjectHashMap<MusicBand> doomed = new LongObjectHashMap<>(bands.size());
+            for (MusicBand band : bands) {
+                doomed.put(band.getId(), band);
+            }
+            heap.removeIf(band -> doomed.containsKey(band.getId()));
+        } else {
+            for (MusicBand band : bands) {
+                heap.removeById(band.getId());
+            }
+        }
+        for (MusicBand band : bands) {
+            unindex(band);
+            pending.removed(band.getId());
+            removed.add(band.getId());
+        }
+        if (!removed.isEmpty()) {
+            publish(ChangeEvent.removed(version + 1, removed));
+        }
+        return removed;
+    }
+
+    /**
+     * Adds a band that was put in the heap to the counters and indexes.
+     * Caller must hold the write lock.
+     */
+    private void index(MusicBand band) {
+        statistics.added(band);
+        indexes.added(band);
+    }
+
+    /**
+     * Removes a band that was taken out of the heap from the counters and
+     * indexes. Caller must hold the write lock.
+     */
+    private void unindex(MusicBand band) {
+        statistics.removed(band);
+        indexes.removed(band);
+    }
+
+    /**
+     * Rebuilds the counters and indexes from the heap.
+     * Caller must hold the write lock.
+     */
+    private void reindex() {
+        statistics.reset(heap);
+        indexes.reset(heap);
+    }
+
+    /**
+     * Records a change and tells the listeners.
+     * Caller must hold the write lock; the event must carry version + 1.
+     *
+     * @param event The change
+     */
+    private void publish(ChangeEvent event) {
+        version = event.getVersion();
+        changeLog.append(event);
+        for (Consumer<ChangeEvent> listener : changeListeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                System.err.println("Change listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Registers a listener for collection changes.
+     * Listeners run on the thread making the change, while the write lock
+     * is held, so they must not block or touch the collection.
+     *
+     * @param listener Called with every change event
+     */
+    public void addChangeListener(Consumer<ChangeEvent> listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(Consumer<ChangeEvent> listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Hands the changes after fromVersion to the caller, with no change
+     * able to happen until the handler returns. A subscriber registered
+     * inside the handler therefore gets every later event exactly once.
+     *
+     * If the change log no longer reaches back to fromVersion, the handler
+     * gets a single SNAPSHOT event with the current collection.
+     *
+     * @param fromVersion Last version the subscriber has (0 for none)
+     * @param handler Receives the missed events, oldest first
+     * @return The current collection version
+     */
+    public long replaySince(long fromVersion, Consumer<List<ChangeEvent>> handler) {
+        readLock.lock();
         try {
-            int sizeBefore = heap.size();
-            heap.removeIf(band -> ownerLogin.equals(band.getOwnerLogin()));
-            return sizeBefore - heap.size();
+            List<ChangeEvent> missed = changeLog.since(fromVersion, version);
+            if (missed == null) {
+                missed = List.of(ChangeEvent.snapshot(version, new ArrayList<>(heap)));
+            }
+            handler.accept(missed);
+            return version;
         } finally {
-            rwLock.writeLock().unlock();
+            readLock.unlock();
         }
     }
 
+    /**
+     * Gets the current collection version.
+     *
+     * @return Number of changes since startup
+     */
+    public long getVersion() {
+        return readOptimistically(OPTIMISTIC_ATTEMPTS, () -> version);
+    }
+
     public void printHistory(){
         int start = Math.max(0, this.history.size() - 11);
         System.out.println(new ArrayList<>(this.history.subList(start, this.history.size())));
@@ -402,48 +853,178 @@ public class MinHeap {
     }
 
     public int getElementCount() {
-        rwLock.readLock().lock();
-        try {
-            return heap.size();
-        } finally {
-            rwLock.readLock().unlock();
-        }
+        return readOptimistically(OPTIMISTIC_ATTEMPTS, () -> heap.size());
     }
 
     public boolean isEmpty() {
-        rwLock.readLock().lock();
+        return readOptimistically(OPTIMISTIC_ATTEMPTS, () -> heap.isEmpty());
+    }
+
+    public List<MusicBand> getAllElements() {
+        // Copying a large heap takes long enough for a change to come in,
+        // so only try once without the lock
+        return readOptimistically(1, () -> new ArrayList<>(heap));
+    }
+
+    public int countByNumberOfParticipants(int numberOfParticipants) {
+        return readOptimistically(OPTIMISTIC_ATTEMPTS,
+            () -> statistics.getCountByParticipants(numberOfParticipants));
+    }
+
+    /**
+     * Runs a read without locking, and keeps the result only if no change
+     * started or finished meanwhile (the StampedLock stamp is still
+     * valid). After the given number of failed attempts the read runs
+     * under the read lock.
+     *
+     * A read overlapping a change may see the structures half updated:
+     * an array already replaced, a slot not filled yet. It must therefore
+     * only return what it read, never act on it, and an exception it
+     * throws only means the attempt failed. The reads used here cannot
+     * loop forever on such a state: size fields, the heap array (copied
+     * up to its length), LongObjectHashMap.get (at most one pass over the
+     * table) and the participant counts (a ConcurrentHashMap).
+     *
+     * @param attempts Optimistic attempts before taking the read lock
+     * @param reader The read
+     * @return What the reader returned
+     */
+    private <T> T readOptimistically(int attempts, Supplier<T> reader) {
+        for (int i = 0; i < attempts; i++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) {
+                // A change is in progress - reading now would fail anyway
+                Thread.onSpinWait();
+                continue;
+            }
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Saw a change halfway - try again
+            }
+        }
+        readLock.lock();
         try {
-            return heap.isEmpty();
+            return reader.get();
         } finally {
-            rwLock.readLock().unlock();
+            readLock.unlock();
         }
     }
 
-    public List<MusicBand> getAllElements() {
-        rwLock.readLock().lock();
+    /**
+     * Reads the collection counters, with no change able to happen
+     * meanwhile. The reader must not keep the statistics object - it is
+     * only safe to use inside the call, and must not call MinHeap (the
+     * lock is not reentrant).
+     *
+     * @param reader Picks what it needs from the counters
+     * @return What the reader returned
+     */
+    public <T> T readStatistics(Function<CollectionStatistics, T> reader) {
+        readLock.lock();
         try {
-            return new ArrayList<>(heap);
+            return reader.apply(statistics);
         } finally {
-            rwLock.readLock().unlock();
+            readLock.unlock();
         }
     }
 
-    public int countByNumberOfParticipants(int numberOfParticipants) {
-        rwLock.readLock().lock();
+    /**
+     * Compares the counters with the heap and the database.
+     *
+     * The number of bands is checked against the heap (if the counters
+     * drifted they are rebuilt) and against SELECT COUNT(*). The database
+     * only has to match when nothing is waiting to be saved, so the check
+     * is skipped while changes are pending or the write-behind journal has
+     * batches left. It holds the save lock, so no save can change the
+     * table between looking at the pending changes and counting the rows.
+     *
+     * A different database count is logged and counted (see
+     * getReconcileMismatches) but not repaired - the heap stays the
+     * authoritative copy and the next save writes it.
+     *
+     * @return false if the database count differed, true otherwise (also when skipped)
+     * @throws SQLException If the rows cannot be counted
+     */
+    public boolean reconcileWithDatabase() throws SQLException {
+        persistLock.lock();
         try {
-            int count = 0;
-            for (MusicBand band : heap) {
-                if (band.getNumberOfParticipants() != null && 
-                    band.getNumberOfParticipants().equals(numberOfParticipants)) {
-                    count++;
+            int expected;
+            writeLock.lock();
+            try {
+                if (statistics.getTotal() != heap.size()) {
+                    System.err.println("Collection statistics drifted (" + statistics.getTotal()
+                        + " counted, " + heap.size() + " in heap), recounting");
+                    reindex();
+                }
+                WriteBehindJournal currentJournal = journal;
+                if (!pending.isEmpty() || (currentJournal != null && !currentJournal.isSettled())) {
+                    return true;
                 }
+                expected = heap.size();
+            } finally {
+                writeLock.unlock();
+            }
+            int actual = DatabaseManager.getBandCount();
+            if (actual != expected) {
+                reconcileMismatches.incrementAndGet();
+                System.err.println("Reconciliation: database has " + actual + " bands, collection has " + expected);
+                return false;
             }
-            return count;
+            return true;
         } finally {
-            rwLock.readLock().unlock();
+            persistLock.unlock();
         }
     }
 
+    /**
+     * Checks the ID index, the secondary indexes and the counters against
+     * a brute-force scan of the heap.
+     *
+     * @return A description of every inconsistency found, empty if there is none
+     */
+    public List<String> checkConsistency() {
+        readLock.lock();
+        try {
+            List<String> problems = new ArrayList<>();
+            heap.check(problems);
+            indexes.check(heap, problems);
+            CollectionStatistics expected = new CollectionStatistics();
+            expected.reset(heap);
+            statistics.check(expected, problems);
+            return problems;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Takes out the changes the next save would write. For tests.
+     *
+     * @return The pending changes
+     */
+    PendingChanges drainPendingChanges() {
+        writeLock.lock();
+        try {
+            return pending.drain();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of reconciliation checks that found a different
+     * database count.
+     *
+     * @return Mismatches since startup
+     */
+    public long getReconcileMismatches() {
+        return reconcileMismatches.get();
+    }
+
     public List<String> getMetadataHistory() {
         return new ArrayList<>(metadataHistory);
     }
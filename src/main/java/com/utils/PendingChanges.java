@@ -0,0 +1,214 @@
+package com.utils;
+
+import com.model.MusicBand;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Changes to the collection that are not in the database yet.
+ *
+ * MinHeap records every insert, update and removal here. On save only
+ * these rows are written, so the cost of persisting a command depends on
+ * how much it changed, not on the size of the collection.
+ *
+ * Several changes to one ID fold into a single statement:
+ * - INSERT then UPDATE is still an INSERT (with the newest state)
+ * - INSERT then DELETE never reaches the database
+ * - DELETE then INSERT becomes an UPDATE (the row is still there)
+ *
+ * truncate means the table has to be emptied before the rows are written
+ * (after clear(), or when the database content is unknown). Likewise the
+ * rows of every login in clearedOwners are deleted with one statement
+ * before the other rows (after clearOwned()).
+ *
+ * Not thread-safe: MinHeap uses it under its write lock.
+ */
+class PendingChanges {
+    /** Statement a pending row needs */
+    enum Op {
+        INSERT,
+        UPDATE,
+        DELETE
+    }
+
+    /** Pending statement per ID, in the order the IDs were first changed */
+    private final Map<Long, Op> ops = new LinkedHashMap<>();
+
+    /** Newest state of inserted and updated bands */
+    private final Map<Long, MusicBand> bands = new LinkedHashMap<>();
+
+    /** Whether all rows must be deleted first */
+    private boolean truncate;
+
+    /** Owners whose rows must be deleted first */
+    private final Set<String> clearedOwners = new LinkedHashSet<>();
+
+    void inserted(MusicBand band) {
+        long id = band.getId();
+        Op old = ops.get(id);
+        ops.put(id, old == Op.DELETE || old == Op.UPDATE ? Op.UPDATE : Op.INSERT);
+        bands.put(id, band);
+    }
+
+    void updated(MusicBand band) {
+        long id = band.getId();
+        ops.put(id, ops.get(id) == Op.INSERT ? Op.INSERT : Op.UPDATE);
+        bands.put(id, band);
+    }
+
+    void removed(long id) {
+        Op old = ops.get(id);
+        bands.remove(id);
+        if (old == Op.INSERT) {
+            // Never reached the database
+            ops.remove(id);
+        } else {
+            ops.put(id, Op.DELETE);
+        }
+    }
+
+    /**
+     * Records that every row is gone (clear()).
+     */
+    void truncated() {
+        ops.clear();
+        bands.clear();
+        clearedOwners.clear();
+        truncate = true;
+    }
+
+    /**
+     * Records that every row of an owner is gone (clearOwned()). The rows
+     * are deleted by owner before anything else is written, so pending
+     * inserts of the owner's bands are dropped. Pending updates become
+     * deletes: the row may still belong to someone else (or nobody) in
+     * the database.
+     *
+     * @param ownerLogin The owner
+     */
+    void clearedOwner(String ownerLogin) {
+        bands.values().removeIf(band -> {
+            if (!ownerLogin.equals(band.getOwnerLogin())) {
+                return false;
+            }
+            if (ops.get(band.getId()) == Op.INSERT) {
+                ops.remove(band.getId());
+            } else {
+                ops.put(band.getId(), Op.DELETE);
+            }
+            return true;
+        });
+        if (!truncate) {
+            clearedOwners.add(ownerLogin);
+        }
+    }
+
+    /**
+     * Takes all pending changes out, leaving this empty.
+     *
+     * @return The changes to write
+     */
+    PendingChanges drain() {
+        PendingChanges drained = new PendingChanges();
+        drained.ops.putAll(ops);
+        drained.bands.putAll(bands);
+        drained.truncate = truncate;
+        drained.clearedOwners.addAll(clearedOwners);
+        ops.clear();
+        bands.clear();
+        clearedOwners.clear();
+        truncate = false;
+        return drained;
+    }
+
+    /**
+     * Puts changes that failed to save back in front of the ones made since.
+     *
+     * @param failed Changes returned by drain() that were not written
+     */
+    void restore(PendingChanges failed) {
+        PendingChanges newer = drain();
+        merge(failed);
+        merge(newer);
+    }
+
+    /**
+     * Applies later changes on top of these, as if they had been recorded here.
+     *
+     * @param newer Changes made after these
+     */
+    void merge(PendingChanges newer) {
+        if (newer.truncate) {
+            // Emptied since - older changes no longer matter
+            truncated();
+        }
+        for (String ownerLogin : newer.clearedOwners) {
+            clearedOwner(ownerLogin);
+        }
+        for (Map.Entry<Long, Op> entry : newer.ops.entrySet()) {
+            long id = entry.getKey();
+            switch (entry.getValue()) {
+                case INSERT:
+                    inserted(newer.bands.get(id));
+                    break;
+                case UPDATE:
+                    updated(newer.bands.get(id));
+                    break;
+                default:
+                    removed(id);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Turns INSERTs into UPDATEs (which insert the row if it is missing),
+     * for changes that may already have reached the database once, e.g.
+     * when a journal is replayed after a crash.
+     */
+    void makeRepeatable() {
+        if (truncate) {
+            // The table is emptied first, so INSERTs cannot collide
+            return;
+        }
+        for (Map.Entry<Long, Op> entry : ops.entrySet()) {
+            if (entry.getValue() == Op.INSERT) {
+                entry.setValue(Op.UPDATE);
+            }
+        }
+    }
+
+    /**
+     * Forgets everything, e.g. after the collection was reloaded from the database.
+     */
+    void reset() {
+        drain();
+    }
+
+    boolean isEmpty() {
+        return ops.isEmpty() && !truncate && clearedOwners.isEmpty();
+    }
+
+    int size() {
+        return ops.size();
+    }
+
+    boolean isTruncate() {
+        return truncate;
+    }
+
+    Set<String> getClearedOwners() {
+        return clearedOwners;
+    }
+
+    Map<Long, Op> getOps() {
+        return ops;
+    }
+
+    MusicBand getBand(long id) {
+        return bands.get(id);
+    }
+}
@@ -0,0 +1,527 @@
+package com.utils;
+
+import com.model.MusicBand;
+import com.server.BulkCopy;
+import com.server.DatabaseManager;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Write-behind persistence through a local append-only journal.
+ *
+ * In write-behind mode MinHeap.saveToDatabase() does not wait for
+ * PostgreSQL. It hands its changes to append(), which returns once they
+ * are on disk in the journal file; the client gets its answer right
+ * away. A flusher thread later writes everything journaled to the
+ * database in one transaction, and empties the journal once the database
+ * has caught up.
+ *
+ * Group commit: a single writer thread takes every batch queued since
+ * its last write, writes them together and calls force() once, so
+ * concurrent requests share one fsync.
+ *
+ * After a crash, replay() (run at startup, before the collection is
+ * loaded) writes the journaled changes to the database. Some of them may
+ * already be there, so INSERTs are replayed as UPDATE-or-insert.
+ *
+ * File format, one record per batch:
+ *   int payload length, int CRC32 of the payload, payload
+ * Payload: boolean truncate, int count, then per row:
+ *   byte op, long id, and for INSERT/UPDATE the band as a BulkCopy CSV
+ *   row (int length + UTF-8 bytes)
+ *   then int count and the logins of the owners whose bands were cleared
+ *   (writeUTF)
+ * A record cut short by a crash fails its length or CRC check and is
+ * ignored (its request was never answered). A write that fails while the
+ * server keeps running is cut off the file again (see appendGroup), so a
+ * torn record is only ever the last one and never hides acknowledged
+ * records after it.
+ *
+ * After a failed write the journal takes no more appends: batches queued
+ * behind the failed one, and every later one, fail as well. Otherwise a
+ * later batch could reach the database before the failed one is saved
+ * again, and the two would be applied out of order.
+ */
+public class WriteBehindJournal implements AutoCloseable {
+    private static final byte OP_INSERT = 1;
+    private static final byte OP_UPDATE = 2;
+    private static final byte OP_DELETE = 3;
+
+    /** Longest pause between retries while the database is unavailable */
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+
+    private final Path path;
+
+    /** Opened for appending; truncated when the database has caught up */
+    private final FileChannel channel;
+
+    /** Pause between database flushes */
+    private final long flushIntervalMs;
+
+    /** Batches waiting for the writer thread */
+    private final BlockingQueue<Append> toWrite = new LinkedBlockingQueue<>();
+
+    /** Batches in the file but not in the database yet, oldest first (guarded by this) */
+    private final Deque<PendingChanges> toApply = new ArrayDeque<>();
+
+    /** Held while the file is written or truncated; taken before this */
+    private final Object fileLock = new Object();
+
+    private final LongAdder batchesWritten = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder batchesApplied = new LongAdder();
+
+    /** Batches handed to append(), and those of them in the database or failed to write */
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong settled = new AtomicLong();
+
+    private volatile boolean running;
+
+    /** Set when a write failed; appends fail from then on */
+    private volatile boolean broken;
+    private Thread writer;
+    private Thread flusher;
+
+    /**
+     * Opens (or creates) a journal file.
+     *
+     * @param path Journal file path
+     * @param flushIntervalMs Pause between database flushes
+     * @throws IOException If the file cannot be opened
+     */
+    public WriteBehindJournal(String path, long flushIntervalMs) throws IOException {
+        this(Paths.get(path), FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND), flushIntervalMs);
+    }
+
+    /**
+     * Uses a journal file that is already open. For tests.
+     *
+     * @param path Journal file path (read by replay())
+     * @param channel The file, opened for appending
+     * @param flushIntervalMs Pause between database flushes
+     */
+    WriteBehindJournal(Path path, FileChannel channel, long flushIntervalMs) {
+        this.path = path;
+        this.channel = channel;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    /**
+     * Writes changes left in the journal by an earlier run to the database
+     * and empties the journal. Must run before the collection is loaded.
+     *
+     * @return Number of journaled batches that were replayed
+     * @throws IOException If the journal cannot be read
+     * @throws SQLException If the database cannot be updated
+     */
+    public int replay() throws IOException, SQLException {
+        PendingChanges all = new PendingChanges();
+        int batches = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            PendingChanges batch;
+            while ((batch = readRecord(new DataInputStream(in))) != null) {
+                all.merge(batch);
+                batches++;
+            }
+        }
+        if (!all.isEmpty()) {
+            all.makeRepeatable();
+            DatabaseManager.inTransaction(conn -> {
+                MinHeap.writeChanges(conn, all);
+                return null;
+            });
+        }
+        synchronized (fileLock) {
+            channel.truncate(0);
+            channel.force(true);
+        }
+        return batches;
+    }
+
+    /**
+     * Starts the writer and flusher threads.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "journal-writer");
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        writer.setDaemon(true);
+        flusher.setDaemon(true);
+        writer.start();
+        flusher.start();
+    }
+
+    /**
+     * Queues changes for the journal.
+     *
+     * @param changes Changes drained from MinHeap, in the order they were made
+     * @return Future completed once the changes are on disk
+     */
+    public CompletableFuture<Void> append(PendingChanges changes) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        if (!running || broken) {
+            durable.completeExceptionally(new IOException(broken
+                ? "Journal is broken after a failed write" : "Journal is not running"));
+            return durable;
+        }
+        appended.incrementAndGet();
+        toWrite.add(new Append(changes, durable));
+        return durable;
+    }
+
+    /**
+     * Writer thread: writes every queued batch, syncs once, then answers
+     * all of their futures.
+     */
+    private void writeLoop() {
+        List<Append> group = new ArrayList<>();
+        while (running || !toWrite.isEmpty()) {
+            try {
+                Append first = toWrite.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                toWrite.drainTo(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                for (Append append : group) {
+                    writeRecord(bytes, append.changes);
+                }
+                synchronized (fileLock) {
+                    if (broken) {
+                        throw new IOException("Journal is broken after a failed write");
+                    }
+                    appendGroup(channel, bytes.toByteArray());
+                    // Inside fileLock, so the flusher never truncates these away
+                    synchronized (this) {
+                        for (Append append : group) {
+                            toApply.addLast(append.changes);
+                        }
+                    }
+                }
+                syncs.increment();
+                batchesWritten.add(group.size());
+                for (Append append : group) {
+                    append.durable.complete(null);
+                }
+            } catch (IOException e) {
+                if (!broken) {
+                    broken = true;
+                    System.err.println("Journal write failed - no more appends: " + e.getMessage());
+                }
+                // MinHeap puts these back into its pending changes
+                settled.addAndGet(group.size());
+                for (Append append : group) {
+                    append.durable.completeExceptionally(e);
+                }
+            }
+            group.clear();
+        }
+    }
+
+    /**
+     * Flusher thread: writes journaled changes to the database every
+     * flushIntervalMs, backing off while the database is unavailable.
+     */
+    private void flushLoop() {
+        long delay = flushIntervalMs;
+        while (running) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                flushOnce();
+                delay = flushIntervalMs;
+            } catch (SQLException | IOException e) {
+                if (delay == flushIntervalMs) {
+                    System.err.println("Journal flush failed, will retry: " + e.getMessage());
+                }
+                delay = Math.min(MAX_RETRY_DELAY_MS, delay * 2);
+            }
+        }
+    }
+
+    /**
+     * Writes all journaled batches to the database in one transaction and
+     * empties the file if nothing newer was journaled meanwhile.
+     */
+    private void flushOnce() throws SQLException, IOException {
+        List<PendingChanges> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(toApply);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        PendingChanges merged = new PendingChanges();
+        for (PendingChanges changes : batch) {
+            merged.merge(changes);
+        }
+        if (!merged.isEmpty()) {
+            DatabaseManager.inTransaction(conn -> {
+                MinHeap.writeChanges(conn, merged);
+                return null;
+            });
+        }
+        synchronized (fileLock) {
+            synchronized (this) {
+                for (int i = 0; i < batch.size(); i++) {
+                    toApply.removeFirst();
+                }
+                settled.addAndGet(batch.size());
+                if (!toApply.isEmpty()) {
+                    return;
+                }
+            }
+            // Everything in the file is in the database now
+            channel.truncate(0);
+        }
+        batchesApplied.add(batch.size());
+    }
+
+    /**
+     * Writes what is still queued, tries a last database flush and closes
+     * the file. Whatever could not be flushed is replayed on next start.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            if (writer != null) {
+                writer.join();
+            }
+            if (flusher != null) {
+                flusher.interrupt();
+                flusher.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flushOnce();
+        } catch (SQLException | IOException e) {
+            System.err.println("Journal not flushed, it will be replayed on next start: " + e.getMessage());
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        System.out.println("Journal closed: " + batchesWritten.sum() + " batches written with "
+            + syncs.sum() + " syncs, " + batchesApplied.sum() + " applied to database");
+    }
+
+    /**
+     * Writes a group of records at the end of the file and syncs it. If
+     * that fails, the file is cut back to where the group started, so no
+     * half-written record stays in front of later ones (readRecord stops
+     * at the first bad record, and would skip everything after it).
+     *
+     * @param channel The journal file
+     * @param records The encoded records
+     * @throws TornJournalException If the write failed and could not be cut off
+     * @throws IOException If the write failed (the file is as before)
+     */
+    static void appendGroup(FileChannel channel, byte[] records) throws IOException {
+        long start = channel.size();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            try {
+                channel.truncate(start);
+                channel.force(false);
+            } catch (IOException truncateFailed) {
+                e.addSuppressed(truncateFailed);
+                throw new TornJournalException(e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A write failed and part of it may still be in the file.
+     */
+    static final class TornJournalException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        TornJournalException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    static void writeRecord(ByteArrayOutputStream out, PendingChanges changes) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        payload.writeBoolean(changes.isTruncate());
+        payload.writeInt(changes.size());
+        StringBuilder row = new StringBuilder();
+        for (Map.Entry<Long, PendingChanges.Op> entry : changes.getOps().entrySet()) {
+            long id = entry.getKey();
+            switch (entry.getValue()) {
+                case INSERT:
+                case UPDATE:
+                    payload.writeByte(entry.getValue() == PendingChanges.Op.INSERT ? OP_INSERT : OP_UPDATE);
+                    payload.writeLong(id);
+                    row.setLength(0);
+                    BulkCopy.appendRow(row, changes.getBand(id));
+                    byte[] text = row.toString().getBytes(StandardCharsets.UTF_8);
+                    payload.writeInt(text.length);
+                    payload.write(text);
+                    break;
+                default:
+                    payload.writeByte(OP_DELETE);
+                    payload.writeLong(id);
+                    break;
+            }
+        }
+        payload.writeInt(changes.getClearedOwners().size());
+        for (String ownerLogin : changes.getClearedOwners()) {
+            payload.writeUTF(ownerLogin);
+        }
+        payload.flush();
+
+        byte[] data = payloadBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        DataOutputStream record = new DataOutputStream(out);
+        record.writeInt(data.length);
+        record.writeInt((int) crc.getValue());
+        record.write(data);
+        record.flush();
+    }
+
+    /**
+     * Reads one record.
+     *
+     * @return The batch, or null at the end of the file or at a torn record
+     */
+    static PendingChanges readRecord(DataInputStream in) throws IOException {
+        byte[] data;
+        try {
+            int length = in.readInt();
+            int expectedCrc = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            data = in.readNBytes(length);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            if (data.length != length || (int) crc.getValue() != expectedCrc) {
+                System.err.println("Journal ends with an incomplete record - ignoring it");
+                return null;
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+
+        DataInputStream payload = new DataInputStream(new java.io.ByteArrayInputStream(data));
+        PendingChanges changes = new PendingChanges();
+        if (payload.readBoolean()) {
+            changes.truncated();
+        }
+        int count = payload.readInt();
+        // Rows go on top of the cleared owners - that is the order they are written in
+        PendingChanges rows = new PendingChanges();
+        for (int i = 0; i < count; i++) {
+            byte op = payload.readByte();
+            long id = payload.readLong();
+            if (op == OP_DELETE) {
+                rows.removed(id);
+                continue;
+            }
+            byte[] text = new byte[payload.readInt()];
+            payload.readFully(text);
+            MusicBand band = BulkCopy.parseRow(new String(text, StandardCharsets.UTF_8));
+            if (op == OP_INSERT) {
+                rows.inserted(band);
+            } else {
+                rows.updated(band);
+            }
+        }
+        int owners = payload.readInt();
+        for (int i = 0; i < owners; i++) {
+            changes.clearedOwner(payload.readUTF());
+        }
+        changes.merge(rows);
+        return changes;
+    }
+
+    /**
+     * Gets the number of journaled batches not in the database yet.
+     *
+     * @return Batches waiting for the flusher
+     */
+    public synchronized int getUnappliedBatches() {
+        return toApply.size();
+    }
+
+    /**
+     * Tells whether every appended batch reached the database (or failed
+     * to be journaled and went back to MinHeap). Batches the writer thread
+     * is still writing count as unsettled, unlike getUnappliedBatches().
+     *
+     * @return true if the database has all journaled changes
+     */
+    public boolean isSettled() {
+        return settled.get() == appended.get();
+    }
+
+    public long getBatchesWritten() { return batchesWritten.sum(); }
+
+    public long getSyncs() { return syncs.sum(); }
+
+    /**
+     * A batch waiting for the writer thread.
+     */
+    private static final class Append {
+        final PendingChanges changes;
+        final CompletableFuture<Void> durable;
+
+        Append(PendingChanges changes, CompletableFuture<Void> durable) {
+            this.changes = changes;
+            this.durable = durable;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.benchmark;
+
+import com.common.BinaryCodec;
+import com.common.JavaCodec;
+import com.common.Request;
+import com.common.Response;
+import com.common.WireCodec;
+import com.model.Album;
+import com.model.Coordinates;
+import com.model.MusicBand;
+import com.model.MusicGenre;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares Java serialization with the binary codec.
+ *
+ * Measures ns per encode and per decode for typical messages, and
+ * prints the encoded size of each message before the run.
+ *
+ * Run with:
+ *   mvn test-compile
+ *   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *       com.benchmark.CodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    /** Which codec to measure */
+    @Param({"java", "binary"})
+    public String codecName;
+
+    /** Which message to measure */
+    @Param({"remove_by_id", "add", "show_response"})
+    public String message;
+
+    private WireCodec codec;
+    private Serializable value;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        codec = WireCodec.forName(codecName);
+        value = createMessage(message);
+        encoded = encode(codec, value);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return encode(codec, value);
+    }
+
+    @Benchmark
+    public Object decode() throws IOException, ClassNotFoundException {
+        return codec.decode(encoded);
+    }
+
+    /**
+     * Builds one of the sample messages.
+     *
+     * @param name remove_by_id, add or show_response
+     * @return The message
+     */
+    static Serializable createMessage(String name) {
+        Map<String, Object> args = new HashMap<>();
+        args.put("login", "alice");
+        args.put("passwordHash", "9a0364b9e99bb480dd25e1f0284c8555f7ec2d3d0c2a8c4b5d8e3e5f6a7b8c9d0e1f2a3b4c5d6e7f8a9b0c1d2e3f4a5");
+        switch (name) {
+            case "remove_by_id": {
+                args.put("id", 42L);
+                return new Request(Request.RequestType.COMMAND, "remove_by_id", args);
+            }
+            case "add": {
+                Request request = new Request(Request.RequestType.COMMAND, "add", args);
+                request.setData(sampleBand(1));
+                return request;
+            }
+            case "show_response": {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < 20; i++) {
+                    sb.append(sampleBand(i));
+                }
+                return Response.success(sb.toString());
+            }
+            default:
+                throw new IllegalArgumentException("Unknown message: " + name);
+        }
+    }
+
+    private static MusicBand sampleBand(int i) {
+        MusicBand band = new MusicBand();
+        band.setId(1000 + i);
+        band.setName("Band " + i);
+        band.setCoordinates(new Coordinates(100 + i, 200));
+        band.setNumberOfParticipants(4);
+        band.setDescription("A band used for benchmarking");
+        band.setGenre(MusicGenre.POST_ROCK);
+        band.setBestAlbum(new Album("Album " + i, 12345.0));
+        band.setOwnerLogin("alice");
+        return band;
+    }
+
+    private static byte[] encode(WireCodec codec, Serializable value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        codec.encode(value, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Prints bytes per message for both codecs, then runs the benchmark.
+     */
+    public static void main(String[] args) throws IOException, RunnerException {
+        System.out.printf("%-15s %10s %10s%n", "message", "java", "binary");
+        for (String name : new String[] {"remove_by_id", "add", "show_response"}) {
+            Serializable value = createMessage(name);
+            System.out.printf("%-15s %10d %10d%n", name,
+                encode(JavaCodec.INSTANCE, value).length, encode(BinaryCodec.INSTANCE, value).length);
+        }
+        new Runner(new OptionsBuilder().include(CodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
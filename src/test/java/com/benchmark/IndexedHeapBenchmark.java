@@ -0,0 +1,140 @@
+package com.benchmark;
+
+import com.model.MusicBand;
+import com.utils.IndexedBandHeap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the operations by ID that MinHeap runs for update,
+ * remove_by_id and show by ID.
+ *
+ * structure=priority-queue does what MinHeap did before: a scan for
+ * findById, removeIf + offer for update. structure=indexed uses
+ * IndexedBandHeap (hash lookup, sift of one node).
+ *
+ * Each remove puts the band back, so the heap keeps its size.
+ *
+ * Run with:
+ *   mvn test-compile
+ *   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *       com.benchmark.IndexedHeapBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class IndexedHeapBenchmark {
+    /** Bands in the collection */
+    @Param({"1000000"})
+    public int size;
+
+    /** priority-queue or indexed (see class comment) */
+    @Param({"priority-queue", "indexed"})
+    public String structure;
+
+    private PriorityQueue<MusicBand> queue;
+    private IndexedBandHeap indexed;
+    private long[] ids;
+    private MusicBand[] renamed;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<MusicBand> bands = new ArrayList<>(size);
+        ids = new long[size];
+        renamed = new MusicBand[size];
+        for (int i = 0; i < size; i++) {
+            // Random positive IDs, like new MusicBand() makes
+            long id = random.nextLong() & Long.MAX_VALUE;
+            ids[i] = id;
+            bands.add(band(id, "Band " + random.nextInt(size)));
+            renamed[i] = band(id, "Band " + random.nextInt(size));
+        }
+        if (structure.equals("indexed")) {
+            indexed = new IndexedBandHeap(bands);
+        } else {
+            queue = new PriorityQueue<>(bands);
+        }
+    }
+
+    private static MusicBand band(long id, String name) {
+        MusicBand band = new MusicBand();
+        band.setId(id);
+        band.setName(name);
+        band.setNumberOfParticipants(4);
+        return band;
+    }
+
+    /** Cycles through the IDs in a fixed random order */
+    private int nextIndex() {
+        next = (int) ((next + 0x9E3779B9L) % size);
+        return next;
+    }
+
+    @Benchmark
+    public MusicBand findById() {
+        long id = ids[nextIndex()];
+        if (indexed != null) {
+            return indexed.get(id);
+        }
+        for (MusicBand band : queue) {
+            if (band.getId() == id) {
+                return band;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public boolean updateById() {
+        MusicBand band = renamed[nextIndex()];
+        if (indexed != null) {
+            return indexed.put(band) != null;
+        }
+        boolean removed = queue.removeIf(existing -> existing.getId() == band.getId());
+        queue.offer(band);
+        return removed;
+    }
+
+    @Benchmark
+    public boolean removeById() {
+        int index = nextIndex();
+        long id = ids[index];
+        if (indexed != null) {
+            MusicBand removed = indexed.removeById(id);
+            indexed.put(removed);
+            return removed != null;
+        }
+        boolean removed = queue.removeIf(existing -> existing.getId() == id);
+        queue.offer(renamed[index]);
+        return removed;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IndexedHeapBenchmark.class.getSimpleName()).build()).run();
+    }
+}
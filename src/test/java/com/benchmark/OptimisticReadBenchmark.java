@@ -0,0 +1,197 @@
+package com.benchmark;
+
+import com.model.MusicBand;
+import com.utils.IndexedBandHeap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Compares the locking MinHeap uses for its point lookups and counters
+ * under a mix of reads and writes from many threads.
+ *
+ * locking=read-write takes a ReentrantReadWriteLock read lock for every
+ * read, as MinHeap did before. locking=stamped-optimistic reads without
+ * locking and validates a StampedLock stamp, retrying and in the end
+ * taking the read lock, as MinHeap.readOptimistically does now. Writes
+ * take the write lock either way.
+ *
+ * Every thread runs the same mix: writePercent of the operations replace
+ * a band (like update), the rest are findById, the element count and
+ * peek in turn.
+ *
+ * The thread count is not a JMH parameter; main() runs 1, 4, 16 and 64
+ * threads. From the command line, pass -t for each count instead.
+ *
+ * Run with:
+ *   mvn test-compile
+ *   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout -Dmdep.includeScope=test)" \
+ *       com.benchmark.OptimisticReadBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class OptimisticReadBenchmark {
+    /** Reader thread counts main() runs */
+    private static final int[] THREADS = {1, 4, 16, 64};
+
+    /** Optimistic attempts before the read lock, as in MinHeap */
+    private static final int OPTIMISTIC_ATTEMPTS = 3;
+
+    /** Bands in the collection */
+    @Param({"100000"})
+    public int size;
+
+    /** read-write or stamped-optimistic (see class comment) */
+    @Param({"read-write", "stamped-optimistic"})
+    public String locking;
+
+    /** Percentage of operations that are writes */
+    @Param({"1", "10"})
+    public int writePercent;
+
+    private IndexedBandHeap heap;
+    private long[] ids;
+    private MusicBand[] renamed;
+    private boolean optimistic;
+    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    private final StampedLock stampedLock = new StampedLock();
+
+    /**
+     * What one benchmark thread is doing.
+     */
+    @State(Scope.Thread)
+    public static class Worker {
+        SplittableRandom random;
+        int op;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            random = new SplittableRandom(Thread.currentThread().getId());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<MusicBand> bands = new ArrayList<>(size);
+        ids = new long[size];
+        renamed = new MusicBand[size];
+        for (int i = 0; i < size; i++) {
+            long id = random.nextLong() & Long.MAX_VALUE;
+            ids[i] = id;
+            bands.add(band(id, "Band " + random.nextInt(size)));
+            renamed[i] = band(id, "Band " + random.nextInt(size));
+        }
+        heap = new IndexedBandHeap(bands);
+        optimistic = locking.equals("stamped-optimistic");
+    }
+
+    private static MusicBand band(long id, String name) {
+        MusicBand band = new MusicBand();
+        band.setId(id);
+        band.setName(name);
+        band.setNumberOfParticipants(4);
+        return band;
+    }
+
+    @Benchmark
+    public Object mixed(Worker worker) {
+        int index = worker.random.nextInt(size);
+        if (worker.random.nextInt(100) < writePercent) {
+            return write(renamed[index]);
+        }
+        switch (worker.op++ % 3) {
+            case 0:
+                long id = ids[index];
+                return read(() -> heap.get(id));
+            case 1:
+                return read(() -> heap.size());
+            default:
+                return read(() -> heap.peek());
+        }
+    }
+
+    private MusicBand write(MusicBand band) {
+        if (optimistic) {
+            long stamp = stampedLock.writeLock();
+            try {
+                return heap.put(band);
+            } finally {
+                stampedLock.unlockWrite(stamp);
+            }
+        }
+        rwLock.writeLock().lock();
+        try {
+            return heap.put(band);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        if (!optimistic) {
+            rwLock.readLock().lock();
+            try {
+                return reader.get();
+            } finally {
+                rwLock.readLock().unlock();
+            }
+        }
+        for (int i = 0; i < OPTIMISTIC_ATTEMPTS; i++) {
+            long stamp = stampedLock.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            try {
+                T result = reader.get();
+                if (stampedLock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Saw a write halfway - try again
+            }
+        }
+        long stamp = stampedLock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            stampedLock.unlockRead(stamp);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREADS) {
+            new Runner(new OptionsBuilder()
+                .include(OptimisticReadBenchmark.class.getSimpleName())
+                .threads(threads)
+                .build()).run();
+        }
+    }
+}
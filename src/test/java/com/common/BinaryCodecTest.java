@@ -0,0 +1,215 @@
+package com.common;
+
+import com.model.Album;
+import com.model.Coordinates;
+import com.model.MusicBand;
+import com.model.MusicGenre;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Round-trips the protocol messages through BinaryCodec and checks that
+ * every field comes back as it was sent, including nulls.
+ */
+public class BinaryCodecTest
+    extends TestCase
+{
+    public BinaryCodecTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BinaryCodecTest.class );
+    }
+
+    public void testRequestWithArgs() throws Exception
+    {
+        Map<String, Object> args = new HashMap<>();
+        args.put("id", 42L);
+        args.put("count", -7);
+        args.put("name", "Sigur R\u00f3s");
+        args.put("force", Boolean.TRUE);
+        args.put("ratio", 0.25);
+        args.put("missing", null);
+        Request request = new Request(Request.RequestType.COMMAND, "update", args);
+        request.setData(band(42));
+        request.setLogin("alice");
+        request.setPassword("secret");
+        request.setRequestId(123456789L);
+        request.setIfNoneMatch(17);
+
+        Request read = (Request) roundTrip(request);
+        assertEquals(Request.RequestType.COMMAND, read.getType());
+        assertEquals("update", read.getCommand());
+        assertEquals(args, read.getArgs());
+        assertBandEquals(band(42), (MusicBand) read.getData());
+        assertEquals("alice", read.getLogin());
+        assertEquals("secret", read.getPassword());
+        assertEquals(123456789L, read.getRequestId());
+        assertEquals(17, read.getIfNoneMatch());
+    }
+
+    public void testEmptyRequest() throws Exception
+    {
+        Request read = (Request) roundTrip(new Request());
+        assertNull(read.getType());
+        assertNull(read.getCommand());
+        assertNull(read.getData());
+        assertNull(read.getLogin());
+        assertNull(read.getPassword());
+    }
+
+    public void testResponseWithBand() throws Exception
+    {
+        Response response = Response.withData(band(-5));
+        response.setResult("done");
+        response.setRequestId(9);
+        response.setVersion(Long.MAX_VALUE);
+
+        Response read = (Response) roundTrip(response);
+        assertTrue(read.isSuccess());
+        assertEquals("done", read.getResult());
+        assertNull(read.getError());
+        assertNull(read.getNotification());
+        assertEquals(9, read.getRequestId());
+        assertEquals(Long.MAX_VALUE, read.getVersion());
+        assertFalse(read.isNotModified());
+        assertBandEquals(band(-5), (MusicBand) read.getData());
+    }
+
+    public void testBandWithNullFields() throws Exception
+    {
+        MusicBand band = new MusicBand();
+        band.setId(1);
+        band.setName("Tool");
+        MusicBand read = (MusicBand) roundTrip(band);
+        assertBandEquals(band, read);
+        assertNull(read.getCoordinates());
+        assertNull(read.getBestAlbum());
+        assertNull(read.getGenre());
+    }
+
+    public void testOtherTypesFallBackToJavaSerialization() throws Exception
+    {
+        ArrayList<MusicBand> bands = new ArrayList<>(Arrays.asList(band(1), band(2)));
+        Response read = (Response) roundTrip(Response.withData(bands));
+        List<?> list = (List<?>) read.getData();
+        assertEquals(2, list.size());
+        assertBandEquals(band(2), (MusicBand) list.get(1));
+    }
+
+    public void testResponseWithEvent() throws Exception
+    {
+        ChangeEvent event = ChangeEvent.clearedOwner(31, "bob", Arrays.asList(3L, 4L));
+        ChangeEvent read = (ChangeEvent) ((Response) roundTrip(Response.event(event))).getData();
+        assertEquals(ChangeEvent.Kind.CLEARED_OWNER, read.getKind());
+        assertEquals(31, read.getVersion());
+        assertEquals(Arrays.asList(3L, 4L), read.getIds());
+        assertEquals("bob", read.getOwner());
+
+        ChangeEvent snapshot = ChangeEvent.snapshot(32, Arrays.asList(band(1), band(2)));
+        ChangeEvent readSnapshot = (ChangeEvent) roundTrip(snapshot);
+        assertEquals(ChangeEvent.Kind.SNAPSHOT, readSnapshot.getKind());
+        assertEquals(2, readSnapshot.getBands().size());
+        // Events never carry the owner's password hash
+        MusicBand expected = band(2);
+        expected.setOwnerPasswordHash(null);
+        assertBandEquals(expected, readSnapshot.getBands().get(1));
+    }
+
+    public void testResponseWithStats() throws Exception
+    {
+        ServerStats stats = new ServerStats();
+        stats.setUptimeMillis(5000);
+        stats.setActiveConnections(3);
+        stats.setStartTime(LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123456789));
+        stats.setHealthy(true);
+        stats.setSchedulerMode("virtual");
+        stats.setDbBorrowWaitHistogram(new long[] {1, 2, 3, 4, 5, 6});
+        stats.setReconcileMismatches(2);
+
+        ServerStats read = ((Response) roundTrip(Response.health(stats))).getStats();
+        assertEquals(5000, read.getUptimeMillis());
+        assertEquals(3, read.getActiveConnections());
+        assertEquals(stats.getStartTime(), read.getStartTime());
+        assertTrue(read.isHealthy());
+        assertEquals("virtual", read.getSchedulerMode());
+        assertTrue(Arrays.equals(stats.getDbBorrowWaitHistogram(), read.getDbBorrowWaitHistogram()));
+        assertEquals(2, read.getReconcileMismatches());
+    }
+
+    public void testTrailingBytesAreRejected() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryCodec.INSTANCE.encode("hello", out);
+        out.write(0);
+        try {
+            BinaryCodec.INSTANCE.decode(out.toByteArray());
+            fail("trailing bytes should be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Trailing bytes"));
+        }
+    }
+
+    private static Serializable roundTrip(Serializable value) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryCodec.INSTANCE.encode(value, out);
+        return BinaryCodec.INSTANCE.decode(out.toByteArray());
+    }
+
+    private static MusicBand band(long id)
+    {
+        MusicBand band = new MusicBand();
+        band.setId(id);
+        band.setName("Band " + id);
+        band.setCoordinates(new Coordinates(-100L, 7));
+        band.setCreationDate(new Date(1700000000123L));
+        band.setNumberOfParticipants(4);
+        band.setDescription("Description of " + id);
+        band.setGenre(MusicGenre.MATH_ROCK);
+        band.setBestAlbum(new Album("Album " + id, 1500.5));
+        band.setOwnerLogin("alice");
+        band.setOwnerPasswordHash("hash");
+        return band;
+    }
+
+    private static void assertBandEquals(MusicBand expected, MusicBand actual)
+    {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        if (expected.getCoordinates() == null) {
+            assertNull(actual.getCoordinates());
+        } else {
+            assertEquals(expected.getCoordinates().getX(), actual.getCoordinates().getX());
+            assertEquals(expected.getCoordinates().getY(), actual.getCoordinates().getY());
+        }
+        assertEquals(expected.getCreationDate(), actual.getCreationDate());
+        assertEquals(expected.getNumberOfParticipants(), actual.getNumberOfParticipants());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getGenre(), actual.getGenre());
+        if (expected.getBestAlbum() == null) {
+            assertNull(actual.getBestAlbum());
+        } else {
+            assertEquals(expected.getBestAlbum().getName(), actual.getBestAlbum().getName());
+            assertEquals(expected.getBestAlbum().getSales(), actual.getBestAlbum().getSales());
+        }
+        assertEquals(expected.getOwnerLogin(), actual.getOwnerLogin());
+        assertEquals(expected.getOwnerPasswordHash(), actual.getOwnerPasswordHash());
+    }
+}
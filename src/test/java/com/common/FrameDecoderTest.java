@@ -0,0 +1,156 @@
+package com.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that FrameDecoder hands out the same payloads however the bytes
+ * are split across reads, and rejects bad length headers.
+ */
+public class FrameDecoderTest
+    extends TestCase
+{
+    public FrameDecoderTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( FrameDecoderTest.class );
+    }
+
+    public void testSeveralFramesInOneRead() throws IOException
+    {
+        byte[] wire = frames("one", "", "three");
+        FrameDecoder decoder = new FrameDecoder(100);
+        List<String> read = readAll(decoder, ByteBuffer.wrap(wire));
+        assertEquals(3, read.size());
+        assertEquals("one", read.get(0));
+        assertEquals("", read.get(1));
+        assertEquals("three", read.get(2));
+        assertFalse(decoder.isPartial());
+    }
+
+    public void testFramesSplitByteByByte() throws IOException
+    {
+        byte[] wire = frames("first frame", "second");
+        FrameDecoder decoder = new FrameDecoder(100);
+        List<String> read = new ArrayList<>();
+        for (byte b : wire) {
+            read.addAll(readAll(decoder, ByteBuffer.wrap(new byte[] {b})));
+        }
+        assertEquals(2, read.size());
+        assertEquals("first frame", read.get(0));
+        assertEquals("second", read.get(1));
+        assertFalse(decoder.isPartial());
+    }
+
+    public void testEverySplitPoint() throws IOException
+    {
+        byte[] wire = frames("alpha", "beta");
+        for (int cut = 0; cut <= wire.length; cut++) {
+            FrameDecoder decoder = new FrameDecoder(100);
+            ByteBuffer buffer = ByteBuffer.allocate(wire.length);
+            buffer.put(wire, 0, cut).flip();
+            List<String> read = readAll(decoder, buffer);
+            buffer.compact();
+            buffer.put(wire, cut, wire.length - cut).flip();
+            read.addAll(readAll(decoder, buffer));
+            assertEquals("cut at " + cut, 2, read.size());
+            assertEquals("alpha", read.get(0));
+            assertEquals("beta", read.get(1));
+        }
+    }
+
+    public void testIsPartial() throws IOException
+    {
+        byte[] wire = frames("abc");
+        FrameDecoder decoder = new FrameDecoder(100);
+        assertFalse(decoder.isPartial());
+        // Half a header
+        assertNull(decoder.decode(ByteBuffer.wrap(wire, 0, 2)));
+        assertTrue(decoder.isPartial());
+        // Rest of the header and part of the payload
+        assertNull(decoder.decode(ByteBuffer.wrap(wire, 2, 3)));
+        assertTrue(decoder.isPartial());
+        assertEquals("abc", text(decoder.decode(ByteBuffer.wrap(wire, 5, 2))));
+        assertFalse(decoder.isPartial());
+    }
+
+    public void testFrameAtTheLimitIsAccepted() throws IOException
+    {
+        FrameDecoder decoder = new FrameDecoder(5);
+        assertEquals("12345", text(decoder.decode(ByteBuffer.wrap(frames("12345")))));
+    }
+
+    public void testOversizedFrameIsRejected()
+    {
+        FrameDecoder decoder = new FrameDecoder(5);
+        try {
+            decoder.decode(ByteBuffer.wrap(frames("123456")));
+            fail("a frame over the limit should be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("6"));
+        }
+    }
+
+    public void testNegativeLengthIsRejected()
+    {
+        FrameDecoder decoder = new FrameDecoder(100);
+        ByteBuffer wire = ByteBuffer.allocate(FrameDecoder.HEADER_SIZE).putInt(-1);
+        wire.flip();
+        try {
+            decoder.decode(wire);
+            fail("a negative length should be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testMaxFrameSizeMustBePositive()
+    {
+        try {
+            new FrameDecoder(0);
+            fail("a zero limit should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static byte[] frames(String... payloads)
+    {
+        int size = 0;
+        for (String payload : payloads) {
+            size += FrameDecoder.HEADER_SIZE + payload.getBytes(StandardCharsets.UTF_8).length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (String payload : payloads) {
+            byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        return buffer.array();
+    }
+
+    private static List<String> readAll(FrameDecoder decoder, ByteBuffer in) throws IOException
+    {
+        List<String> read = new ArrayList<>();
+        byte[] frame;
+        while ((frame = decoder.decode(in)) != null) {
+            read.add(text(frame));
+        }
+        return read;
+    }
+
+    private static String text(byte[] frame)
+    {
+        return new String(frame, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,328 @@
+package com.utils;
+
+import com.model.Album;
+import com.model.MusicBand;
+import com.model.MusicGenre;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Runs random sequences of MinHeap changes and compares every answer
+ * with a brute-force scan of a plain map (the oracle). After every step
+ * the ID index, the album and owner indexes and the counters must agree
+ * with the heap (MinHeap.checkConsistency).
+ *
+ * IDs, album names and owners come from small sets, so replacing,
+ * removing and matching bands happens often.
+ *
+ * testOptimisticReadsDuringChanges runs the lock-free reads while another
+ * thread keeps changing the collection.
+ */
+public class MinHeapIndexTest
+    extends TestCase
+{
+    private static final String[] ALBUMS = {"Lateralus", "LATERALUS", "\u00c6nima", "\u00e6nima", "Undertow", "Fear Inoculum"};
+    private static final String[] OWNERS = {"alice", "bob", "carol", null};
+
+    public MinHeapIndexTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( MinHeapIndexTest.class );
+    }
+
+    public void testRandomMutationsMatchOracle()
+    {
+        for (long seed = 1; seed <= 20; seed++) {
+            runSequence(new Random(seed), 2000);
+        }
+    }
+
+    public void testStartsConsistentFromExistingBands()
+    {
+        Random random = new Random(99);
+        List<MusicBand> bands = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            bands.add(randomBand(random));
+        }
+        MinHeap heap = new MinHeap(bands);
+        assertEquals(new ArrayList<String>(), heap.checkConsistency());
+    }
+
+    public void testPagesByNameCoverCollectionInOrder()
+    {
+        Random random = new Random(5);
+        Map<Long, MusicBand> oracle = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            MusicBand band = randomBand(random);
+            oracle.put(band.getId(), band);
+        }
+        MinHeap heap = new MinHeap(oracle.values());
+        List<MusicBand> expected = new ArrayList<>(oracle.values());
+        expected.sort((a, b) -> a.getName().equals(b.getName())
+            ? Long.compare(a.getId(), b.getId()) : a.getName().compareTo(b.getName()));
+        assertEquals(expected, heap.getSortedByName(null, null, 0));
+
+        for (int pageSize = 1; pageSize <= 40; pageSize += 13) {
+            List<MusicBand> walked = new ArrayList<>();
+            List<MusicBand> page = heap.getSortedByName(null, null, pageSize);
+            while (!page.isEmpty()) {
+                assertTrue(page.size() <= pageSize);
+                walked.addAll(page);
+                MusicBand last = page.get(page.size() - 1);
+                page = heap.getSortedByName(last.getName(), last.getId(), pageSize);
+            }
+            assertEquals(expected, walked);
+        }
+
+        // Starting at a name includes every band with that name
+        String from = expected.get(100).getName();
+        List<MusicBand> tail = heap.getSortedByName(from, null, 0);
+        assertEquals(from, tail.get(0).getName());
+        assertEquals(expected.subList(expected.indexOf(tail.get(0)), expected.size()), tail);
+    }
+
+    public void testInsertWithExistingIdIsRejected()
+    {
+        Random random = new Random(3);
+        MusicBand existing = band(random, 2);
+        MinHeap heap = new MinHeap(List.of(band(random, 1), existing));
+        MusicBand fresh = band(random, 3);
+        assertTrue(heap.insert(fresh));
+        // ID 2 may belong to someone else - only update may replace it
+        assertFalse(heap.insert(band(random, 2)));
+
+        PendingChanges changes = heap.drainPendingChanges();
+        assertEquals(PendingChanges.Op.INSERT, changes.getOps().get(3L));
+        assertFalse(changes.getOps().containsKey(2L));
+        assertSame(existing, heap.findById(2L));
+        assertEquals(3, heap.getElementCount());
+    }
+
+    public void testOptimisticReadsDuringChanges() throws InterruptedException
+    {
+        // IDs 1..1000 are always there (only renamed), 1001..1100 come and go
+        Random setup = new Random(7);
+        List<MusicBand> bands = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            bands.add(band(setup, id));
+        }
+        MinHeap heap = new MinHeap(bands);
+        AtomicBoolean done = new AtomicBoolean();
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+
+        Thread writer = new Thread(() -> {
+            Random random = new Random(8);
+            for (int i = 0; i < 20000; i++) {
+                heap.updateElement(band(random, random.nextInt(1000) + 1));
+                long churn = 1001 + random.nextInt(100);
+                if (!heap.removeElById(churn)) {
+                    heap.insert(band(random, churn));
+                }
+            }
+            done.set(true);
+        });
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            long seed = r;
+            readers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                while (!done.get()) {
+                    long id = random.nextInt(1000) + 1;
+                    MusicBand band = heap.findById(id);
+                    if (band == null || band.getId() != id) {
+                        failures.add("findById(" + id + ") returned " + band);
+                    }
+                    int count = heap.getElementCount();
+                    if (count < 1000 || count > 1100) {
+                        failures.add("getElementCount() returned " + count);
+                    }
+                    int participants = heap.countByNumberOfParticipants(random.nextInt(6) + 1);
+                    if (participants < 0 || participants > 1100) {
+                        failures.add("countByNumberOfParticipants returned " + participants);
+                    }
+                    if (heap.peek() == null) {
+                        failures.add("peek() returned null");
+                    }
+                    if (random.nextInt(100) == 0) {
+                        int all = heap.getAllElements().size();
+                        if (all < 1000 || all > 1100) {
+                            failures.add("getAllElements() returned " + all + " bands");
+                        }
+                    }
+                }
+            }));
+        }
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(new ArrayList<String>(), heap.checkConsistency());
+    }
+
+    private static MusicBand band(Random random, long id)
+    {
+        MusicBand band = randomBand(random);
+        band.setId(id);
+        return band;
+    }
+
+    private void runSequence(Random random, int steps)
+    {
+        MinHeap heap = new MinHeap(new ArrayList<MusicBand>());
+        Map<Long, MusicBand> oracle = new HashMap<>();
+        for (int step = 0; step < steps; step++) {
+            String what = runStep(random, heap, oracle);
+            List<String> problems = heap.checkConsistency();
+            assertTrue("after " + what + ": " + problems, problems.isEmpty());
+            assertEquals("size after " + what, oracle.size(), heap.getElementCount());
+            for (MusicBand band : oracle.values()) {
+                assertSame("band " + band.getId() + " after " + what, band, heap.findById(band.getId()));
+            }
+        }
+    }
+
+    private String runStep(Random random, MinHeap heap, Map<Long, MusicBand> oracle)
+    {
+        int op = random.nextInt(21);
+        if (op < 7) {
+            MusicBand band = randomBand(random);
+            assertEquals(!oracle.containsKey(band.getId()), heap.insert(band));
+            oracle.putIfAbsent(band.getId(), band);
+            return "insert";
+        }
+        if (op < 10) {
+            MusicBand band = randomBand(random);
+            heap.updateElement(band);
+            oracle.put(band.getId(), band);
+            return "update";
+        }
+        if (op < 12) {
+            long id = randomId(random);
+            assertEquals(oracle.remove(id) != null, heap.removeElById(id));
+            return "remove_by_id";
+        }
+        if (op == 12) {
+            MusicBand min = heap.extractMin();
+            MusicBand expected = oracleMin(oracle);
+            if (expected == null) {
+                assertNull(min);
+            } else {
+                assertEquals(expected.getName(), min.getName());
+                assertSame(min, oracle.remove(min.getId()));
+            }
+            return "extract_min";
+        }
+        if (op == 13) {
+            String album = randomAlbum(random);
+            boolean expected = oracle.values().removeIf(band -> band.getBestAlbum() != null
+                && band.getBestAlbum().getName().equalsIgnoreCase(album));
+            assertEquals(expected, heap.removeElByBestAlbum(album));
+            return "remove_all_by_best_album " + album;
+        }
+        if (op == 14) {
+            String album = randomAlbum(random);
+            String owner = OWNERS[random.nextInt(OWNERS.length - 1)];
+            int before = oracle.size();
+            oracle.values().removeIf(band -> band.getBestAlbum() != null
+                && band.getBestAlbum().getName().equalsIgnoreCase(album) && owner.equals(band.getOwnerLogin()));
+            assertEquals(before - oracle.size(), heap.removeElByBestAlbumOwned(album, owner));
+            return "remove_all_by_best_album " + album + " owned by " + owner;
+        }
+        if (op == 15) {
+            String owner = OWNERS[random.nextInt(OWNERS.length - 1)];
+            int before = oracle.size();
+            oracle.values().removeIf(band -> owner.equals(band.getOwnerLogin()));
+            assertEquals(before - oracle.size(), heap.clearOwned(owner));
+            return "clear owned by " + owner;
+        }
+        if (op == 16) {
+            long id = randomId(random);
+            int before = oracle.size();
+            oracle.values().removeIf(band -> band.getId() > id);
+            assertEquals(before - oracle.size(), heap.removeElementsGreaterThanId(id));
+            return "remove_greater " + id;
+        }
+        if (op == 17) {
+            long low = randomId(random);
+            long high = low + random.nextInt(60);
+            List<MusicBand> expected = new ArrayList<>();
+            for (MusicBand band : oracle.values()) {
+                if (band.getId() >= low && band.getId() <= high) {
+                    expected.add(band);
+                }
+            }
+            expected.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+            assertEquals(expected, heap.getRangeById(low, high));
+            assertTrue(heap.getRangeById(high + 1, low).isEmpty());
+            return "range_by_id " + low + " " + high;
+        }
+        if (op == 18 && random.nextInt(10) == 0) {
+            heap.clear();
+            oracle.clear();
+            return "clear";
+        }
+        int participants = random.nextInt(6) + 1;
+        int expected = 0;
+        for (MusicBand band : oracle.values()) {
+            if (band.getNumberOfParticipants() == participants) {
+                expected++;
+            }
+        }
+        assertEquals(expected, heap.countByNumberOfParticipants(participants));
+        return "count_by_number_of_participants " + participants;
+    }
+
+    private static MusicBand oracleMin(Map<Long, MusicBand> oracle)
+    {
+        MusicBand min = null;
+        for (MusicBand band : oracle.values()) {
+            if (min == null || band.compareTo(min) < 0) {
+                min = band;
+            }
+        }
+        return min;
+    }
+
+    private static MusicBand randomBand(Random random)
+    {
+        MusicBand band = new MusicBand();
+        band.setId(randomId(random));
+        band.setName("Band " + random.nextInt(50));
+        band.setNumberOfParticipants(random.nextInt(6) + 1);
+        band.setGenre(random.nextInt(5) == 0 ? null : MusicGenre.values()[random.nextInt(MusicGenre.values().length)]);
+        if (random.nextInt(4) > 0) {
+            band.setBestAlbum(new Album(randomAlbum(random), 1000.0));
+        }
+        band.setOwnerLogin(OWNERS[random.nextInt(OWNERS.length)]);
+        return band;
+    }
+
+    private static long randomId(Random random)
+    {
+        return random.nextInt(200) + 1;
+    }
+
+    private static String randomAlbum(Random random)
+    {
+        return ALBUMS[random.nextInt(ALBUMS.length)];
+    }
+}
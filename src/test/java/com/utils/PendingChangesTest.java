@@ -0,0 +1,199 @@
+package com.utils;
+
+import com.model.MusicBand;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks how PendingChanges folds several changes of the same row into the
+ * one statement the write-behind flush sends, and that failed flushes and
+ * journal replays keep the changes in the right order.
+ */
+public class PendingChangesTest
+    extends TestCase
+{
+    public PendingChangesTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( PendingChangesTest.class );
+    }
+
+    public void testInsertThenDeleteCancels()
+    {
+        PendingChanges changes = new PendingChanges();
+        changes.inserted(band(1, "Tool", "alice"));
+        changes.removed(1);
+        assertTrue(changes.isEmpty());
+        assertNull(changes.getBand(1));
+    }
+
+    public void testDeleteThenInsertBecomesUpdate()
+    {
+        PendingChanges changes = new PendingChanges();
+        changes.removed(1);
+        changes.inserted(band(1, "Tool", "alice"));
+        assertEquals(PendingChanges.Op.UPDATE, changes.getOps().get(1L));
+        assertEquals("Tool", changes.getBand(1).getName());
+    }
+
+    public void testInsertThenUpdateStaysInsert()
+    {
+        PendingChanges changes = new PendingChanges();
+        changes.inserted(band(1, "Tool", "alice"));
+        changes.updated(band(1, "Opeth", "alice"));
+        assertEquals(PendingChanges.Op.INSERT, changes.getOps().get(1L));
+        assertEquals("Opeth", changes.getBand(1).getName());
+        assertEquals(1, changes.size());
+    }
+
+    public void testUpdateThenDeleteIsDelete()
+    {
+        PendingChanges changes = new PendingChanges();
+        changes.updated(band(1, "Tool", "alice"));
+        changes.removed(1);
+        assertEquals(PendingChanges.Op.DELETE, changes.getOps().get(1L));
+        assertNull(changes.getBand(1));
+    }
+
+    public void testOpsKeepTheOrderIdsWereFirstChanged()
+    {
+        PendingChanges changes = new PendingChanges();
+        changes.inserted(band(3, "Tool", "alice"));
+        changes.updated(band(1, "Opeth", "bob"));
+        changes.removed(2);
+        changes.updated(band(3, "Tool", "alice"));
+        assertEquals(Arrays.asList(3L, 1L, 2L), new ArrayList<>(changes.getOps().keySet()));
+    }
+
+    public void testClearedOwnerDropsInsertsAndDeletesTheRest()
+    {
+        PendingChanges changes = new PendingChanges();
+        changes.inserted(band(1, "Tool", "alice"));
+        changes.updated(band(2, "Opeth", "alice"));
+        changes.updated(band(3, "Gojira", "bob"));
+        changes.clearedOwner("alice");
+
+        assertFalse(changes.getOps().containsKey(1L));
+        assertEquals(PendingChanges.Op.DELETE, changes.getOps().get(2L));
+        assertEquals(PendingChanges.Op.UPDATE, changes.getOps().get(3L));
+        assertNull(changes.getBand(2));
+        assertTrue(changes.getClearedOwners().contains("alice"));
+
+        // Added after the owner's rows were cleared - must survive
+        changes.inserted(band(4, "Mastodon", "alice"));
+        assertEquals(PendingChanges.Op.INSERT, changes.getOps().get(4L));
+    }
+
+    public void testTruncateForgetsEarlierChanges()
+    {
+        PendingChanges changes = new PendingChanges();
+        changes.updated(band(1, "Tool", "alice"));
+        changes.clearedOwner("bob");
+        changes.truncated();
+        assertTrue(changes.isTruncate());
+        assertEquals(0, changes.size());
+        assertTrue(changes.getClearedOwners().isEmpty());
+        assertFalse(changes.isEmpty());
+
+        // The table is emptied anyway, no need to delete by owner
+        changes.clearedOwner("carol");
+        assertTrue(changes.getClearedOwners().isEmpty());
+    }
+
+    public void testDrainLeavesEmpty()
+    {
+        PendingChanges changes = new PendingChanges();
+        changes.truncated();
+        changes.inserted(band(1, "Tool", "alice"));
+        PendingChanges drained = changes.drain();
+        assertTrue(changes.isEmpty());
+        assertFalse(changes.isTruncate());
+        assertTrue(drained.isTruncate());
+        assertEquals(PendingChanges.Op.INSERT, drained.getOps().get(1L));
+    }
+
+    public void testRestorePutsFailedChangesFirst()
+    {
+        PendingChanges changes = new PendingChanges();
+        changes.inserted(band(1, "Tool", "alice"));
+        changes.updated(band(2, "Opeth", "bob"));
+        PendingChanges failed = changes.drain();
+
+        // Made while the failed flush was running
+        changes.removed(1);
+        changes.updated(band(2, "Opeth (live)", "bob"));
+        changes.inserted(band(3, "Gojira", "carol"));
+        changes.restore(failed);
+
+        assertFalse(changes.getOps().containsKey(1L));
+        assertEquals(PendingChanges.Op.UPDATE, changes.getOps().get(2L));
+        assertEquals("Opeth (live)", changes.getBand(2).getName());
+        assertEquals(PendingChanges.Op.INSERT, changes.getOps().get(3L));
+        assertEquals(Arrays.asList(2L, 3L), new ArrayList<>(changes.getOps().keySet()));
+    }
+
+    public void testRestoreAfterNewerTruncateDropsFailedChanges()
+    {
+        PendingChanges changes = new PendingChanges();
+        changes.updated(band(1, "Tool", "alice"));
+        PendingChanges failed = changes.drain();
+
+        changes.truncated();
+        changes.inserted(band(2, "Opeth", "bob"));
+        changes.restore(failed);
+
+        assertTrue(changes.isTruncate());
+        assertFalse(changes.getOps().containsKey(1L));
+        assertEquals(PendingChanges.Op.INSERT, changes.getOps().get(2L));
+    }
+
+    public void testMergeAppliesClearedOwnerBeforeRows()
+    {
+        PendingChanges older = new PendingChanges();
+        older.updated(band(1, "Tool", "alice"));
+        PendingChanges newer = new PendingChanges();
+        newer.clearedOwner("alice");
+        newer.inserted(band(2, "Opeth", "alice"));
+        older.merge(newer);
+
+        assertEquals(PendingChanges.Op.DELETE, older.getOps().get(1L));
+        assertEquals(PendingChanges.Op.INSERT, older.getOps().get(2L));
+        assertTrue(older.getClearedOwners().contains("alice"));
+    }
+
+    public void testMakeRepeatable()
+    {
+        PendingChanges changes = new PendingChanges();
+        changes.inserted(band(1, "Tool", "alice"));
+        changes.removed(2);
+        changes.makeRepeatable();
+        assertEquals(PendingChanges.Op.UPDATE, changes.getOps().get(1L));
+        assertEquals(PendingChanges.Op.DELETE, changes.getOps().get(2L));
+
+        // After a truncate the INSERTs cannot collide and stay as they are
+        PendingChanges truncated = new PendingChanges();
+        truncated.truncated();
+        truncated.inserted(band(1, "Tool", "alice"));
+        truncated.makeRepeatable();
+        assertEquals(PendingChanges.Op.INSERT, truncated.getOps().get(1L));
+    }
+
+    private static MusicBand band(long id, String name, String owner)
+    {
+        MusicBand band = new MusicBand();
+        band.setId(id);
+        band.setName(name);
+        band.setNumberOfParticipants(4);
+        band.setOwnerLogin(owner);
+        return band;
+    }
+}
@@ -0,0 +1,271 @@
+package com.utils;
+
+import com.model.Album;
+import com.model.MusicBand;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks the journal record format without a database: records read back
+ * as written, a record cut short ends the journal, a failed write is cut
+ * off the file so later records stay readable, and after a failed write no
+ * later batch gets into the journal ahead of the failed one.
+ */
+public class WriteBehindJournalTest
+    extends TestCase
+{
+    public WriteBehindJournalTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( WriteBehindJournalTest.class );
+    }
+
+    public void testRecordsReadBackAsWritten() throws IOException
+    {
+        PendingChanges first = new PendingChanges();
+        first.inserted(band(1, "Tool", "alice"));
+        first.updated(band(2, "Opeth", null));
+        first.removed(3);
+        PendingChanges second = new PendingChanges();
+        second.clearedOwner("bob");
+        second.inserted(band(4, "Gojira, \"live\"", "carol"));
+
+        List<PendingChanges> read = readAll(encode(first, second));
+        assertEquals(2, read.size());
+        PendingChanges a = read.get(0);
+        assertEquals(PendingChanges.Op.INSERT, a.getOps().get(1L));
+        assertEquals(PendingChanges.Op.UPDATE, a.getOps().get(2L));
+        assertEquals(PendingChanges.Op.DELETE, a.getOps().get(3L));
+        assertEquals("Tool", a.getBand(1).getName());
+        assertEquals("alice", a.getBand(1).getOwnerLogin());
+        assertEquals("Lateralus", a.getBand(1).getBestAlbum().getName());
+        assertNull(a.getBand(2).getOwnerLogin());
+        PendingChanges b = read.get(1);
+        assertTrue(b.getClearedOwners().contains("bob"));
+        assertEquals("Gojira, \"live\"", b.getBand(4).getName());
+    }
+
+    public void testTornTailIsIgnored() throws IOException
+    {
+        PendingChanges first = new PendingChanges();
+        first.inserted(band(1, "Tool", "alice"));
+        PendingChanges second = new PendingChanges();
+        second.inserted(band(2, "Opeth", "bob"));
+        byte[] bytes = encode(first, second);
+        int firstLength = encode(first).length;
+
+        for (int cut = firstLength; cut < bytes.length; cut++) {
+            List<PendingChanges> read = readAll(Arrays.copyOf(bytes, cut));
+            assertEquals("cut at " + cut, 1, read.size());
+            assertTrue(read.get(0).getOps().containsKey(1L));
+        }
+        // A damaged byte fails the CRC just like a short record
+        byte[] damaged = bytes.clone();
+        damaged[damaged.length - 1] ^= 1;
+        assertEquals(1, readAll(damaged).size());
+    }
+
+    public void testFailedWriteIsCutOffTheFile() throws IOException
+    {
+        Path file = Files.createTempFile("journal", ".log");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            PendingChanges first = new PendingChanges();
+            first.inserted(band(1, "Tool", "alice"));
+            PendingChanges lost = new PendingChanges();
+            lost.inserted(band(2, "Opeth", "bob"));
+            PendingChanges third = new PendingChanges();
+            third.inserted(band(3, "Gojira", "carol"));
+
+            WriteBehindJournal.appendGroup(channel, encode(first));
+            byte[] lostBytes = encode(lost);
+            try {
+                WriteBehindJournal.appendGroup(new FailingChannel(channel, lostBytes.length / 2), lostBytes);
+                fail("the write should have failed");
+            } catch (IOException e) {
+                assertFalse(e instanceof WriteBehindJournal.TornJournalException);
+            }
+            // Acknowledged after the failure - must still be found on replay
+            WriteBehindJournal.appendGroup(channel, encode(third));
+
+            List<PendingChanges> read = readAll(Files.readAllBytes(file));
+            assertEquals(2, read.size());
+            assertTrue(read.get(0).getOps().containsKey(1L));
+            assertTrue(read.get(1).getOps().containsKey(3L));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testAppendAfterFailedWriteFails() throws Exception
+    {
+        Path file = Files.createTempFile("journal", ".log");
+        FileChannel raw = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        WriteBehindJournal journal = new WriteBehindJournal(file, new FailingChannel(raw, 10), 60_000);
+        journal.start();
+        try {
+            PendingChanges failed = new PendingChanges();
+            failed.inserted(band(1, "Tool", "alice"));
+            assertFails(journal.append(failed));
+
+            // The disk works again, but this must not be saved before the failed batch
+            PendingChanges later = new PendingChanges();
+            later.removed(1);
+            assertFails(journal.append(later));
+
+            assertEquals(0, Files.size(file));
+            assertEquals(0, journal.getBatchesWritten());
+            assertTrue(journal.isSettled());
+        } finally {
+            journal.close();
+            Files.delete(file);
+        }
+    }
+
+    private static void assertFails(CompletableFuture<Void> durable) throws Exception
+    {
+        try {
+            durable.get(10, TimeUnit.SECONDS);
+            fail("the append should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    private static byte[] encode(PendingChanges... batches) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (PendingChanges batch : batches) {
+            WriteBehindJournal.writeRecord(out, batch);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<PendingChanges> readAll(byte[] bytes) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        List<PendingChanges> batches = new ArrayList<>();
+        PendingChanges batch;
+        while ((batch = WriteBehindJournal.readRecord(in)) != null) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private static MusicBand band(long id, String name, String owner)
+    {
+        MusicBand band = new MusicBand();
+        band.setId(id);
+        band.setName(name);
+        band.setNumberOfParticipants(4);
+        band.setBestAlbum(new Album("Lateralus", 1000.0));
+        band.setOwnerLogin(owner);
+        band.setOwnerPasswordHash(owner == null ? null : "hash");
+        return band;
+    }
+
+    /**
+     * Writes through to a real file, but fails once after a number of
+     * bytes, like a disk that fills up in the middle of a record and is
+     * cleaned up right after.
+     */
+    private static final class FailingChannel extends FileChannel
+    {
+        private final FileChannel file;
+        private int remaining;
+
+        FailingChannel(FileChannel file, int failAfter)
+        {
+            this.file = file;
+            this.remaining = failAfter;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException
+        {
+            if (remaining == 0) {
+                remaining = Integer.MAX_VALUE;
+                throw new IOException("No space left on device");
+            }
+            ByteBuffer part = src.duplicate();
+            part.limit(part.position() + Math.min(remaining, part.remaining()));
+            int written = file.write(part);
+            src.position(src.position() + written);
+            remaining -= written;
+            return written;
+        }
+
+        @Override
+        public long size() throws IOException { return file.size(); }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException { file.truncate(size); return this; }
+
+        @Override
+        public void force(boolean metaData) throws IOException { file.force(metaData); }
+
+        @Override
+        public int read(ByteBuffer dst) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public long position() throws IOException { return file.position(); }
+
+        @Override
+        public FileChannel position(long newPosition) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public int read(ByteBuffer dst, long position) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public int write(ByteBuffer src, long position) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) { throw new UnsupportedOperationException(); }
+
+        @Override
+        protected void implCloseChannel() throws IOException { file.close(); }
+    }
+}